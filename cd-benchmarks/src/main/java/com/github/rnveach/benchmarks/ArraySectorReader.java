@@ -0,0 +1,47 @@
+package com.github.rnveach.benchmarks;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.SectorReader;
+
+/**
+ * This keeps the sectors in memory, so benchmarks measure the decoding and not
+ * the storage.
+ */
+final class ArraySectorReader implements SectorReader {
+
+	private final byte[] image;
+
+	ArraySectorReader(byte[] image) {
+		this.image = image;
+	}
+
+	@Override
+	public int getSectorCount() {
+		return this.image.length / CD.SECTOR_SIZE;
+	}
+
+	@Override
+	public void read(int sectorNumber, byte[] buffer, int offset) {
+		System.arraycopy(this.image, sectorNumber * CD.SECTOR_SIZE, buffer, offset, CD.SECTOR_SIZE);
+	}
+
+	@Override
+	public void read(int firstSector, int sectorCount, byte[] buffer, int offset) {
+		System.arraycopy(this.image, firstSector * CD.SECTOR_SIZE, buffer, offset, sectorCount * CD.SECTOR_SIZE);
+	}
+
+	@Override
+	public void write(int sectorNumber, byte[] buffer, int offset) {
+		System.arraycopy(buffer, offset, this.image, sectorNumber * CD.SECTOR_SIZE, CD.SECTOR_SIZE);
+	}
+
+	@Override
+	public SectorReader duplicate() {
+		return this;
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
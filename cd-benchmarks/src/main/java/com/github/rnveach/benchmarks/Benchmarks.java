@@ -0,0 +1,34 @@
+package com.github.rnveach.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public final class Benchmarks {
+
+	private Benchmarks() {
+	}
+
+	/**
+	 * Takes the same arguments as JMH's own runner, such as a benchmark name
+	 * pattern or {@code -f 1}, and always adds the GC profiler so allocation rates
+	 * are reported with the times. Options that only list or explain, such as
+	 * {@code -l} or {@code -h}, are left to JMH's runner as there is nothing to
+	 * run.
+	 */
+	public static void main(String... arguments) throws Exception {
+		final CommandLineOptions options = new CommandLineOptions(arguments);
+
+		if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+				|| options.shouldListProfilers() || options.shouldListResultFormats()) {
+			Main.main(arguments);
+
+			return;
+		}
+
+		new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+	}
+
+}
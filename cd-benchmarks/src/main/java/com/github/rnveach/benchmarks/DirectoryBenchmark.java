@@ -0,0 +1,106 @@
+package com.github.rnveach.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.CdDirectoryListing;
+import com.github.rnveach.sector.DiscIndex;
+
+/**
+ * Walks the whole directory tree of an image with small files, both through
+ * {@link DiscIndex} and by reading every directory with
+ * {@link CdDirectoryListing} directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DirectoryBenchmark {
+
+	@Param({ "2", "4" })
+	public int depth;
+
+	@Param({ "4" })
+	public int directoriesPerLevel;
+
+	@Param({ "32" })
+	public int filesPerDirectory;
+
+	private File folder;
+
+	private CD cd;
+
+	private int rootSector;
+
+	private int rootSize;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.folder = Files.createTempDirectory("cd-benchmark").toFile();
+		this.cd = CD.open(SyntheticImage.create(this.folder, this.depth, this.directoriesPerLevel,
+				this.filesPerDirectory, 100), false);
+
+		final DiscIndex index = DiscIndex.build(this.cd);
+
+		this.rootSector = index.getSector(0);
+		this.rootSize = index.getSize(0);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.cd.close();
+
+		SyntheticImage.delete(this.folder);
+	}
+
+	@Benchmark
+	public DiscIndex buildIndex() throws IOException {
+		return DiscIndex.build(this.cd);
+	}
+
+	@Benchmark
+	public int walkListings() throws IOException {
+		return walk(this.rootSector, this.rootSize);
+	}
+
+	private int walk(int sector, int size) throws IOException {
+		final CdDirectoryListing listing = new CdDirectoryListing(this.cd, sector, size);
+		int result = 0;
+
+		while (listing.hasNext()) {
+			listing.nextEntry();
+
+			// the directory itself and its parent
+			if (listing.getEntryName().isEmpty()) {
+				continue;
+			}
+
+			result++;
+
+			if (listing.isEntryDirectory()) {
+				result += walk(listing.getEntrySector(), listing.getEntryLength());
+			}
+		}
+
+		return result;
+	}
+
+}
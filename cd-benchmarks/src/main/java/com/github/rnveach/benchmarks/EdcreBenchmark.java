@@ -0,0 +1,57 @@
+package com.github.rnveach.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rnveach.sector.Edcre;
+
+/**
+ * Computes and checks the EDC/ECC of a single sector.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EdcreBenchmark {
+
+	@Param({ SyntheticSectors.MODE_1, SyntheticSectors.MODE_2_FORM_1, SyntheticSectors.MODE_2_FORM_2 })
+	public String type;
+
+	private byte[] sector;
+
+	@Setup
+	public void setUp() {
+		this.sector = SyntheticSectors.create(this.type, 1, 1);
+	}
+
+	@Benchmark
+	public byte[] generate() {
+		Edcre.generate(this.sector, 0);
+
+		return this.sector;
+	}
+
+	@Benchmark
+	public boolean isEdcValid() {
+		return Edcre.isEdcValid(this.sector, 0);
+	}
+
+	@Benchmark
+	public boolean isEccValid() {
+		return Edcre.isEccValid(this.sector, 0);
+	}
+
+}
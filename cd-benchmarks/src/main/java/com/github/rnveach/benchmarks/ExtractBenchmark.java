@@ -0,0 +1,86 @@
+package com.github.rnveach.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rnveach.ExtractFiles;
+import com.github.rnveach.sector.DiscIndex;
+
+/**
+ * Runs {@link ExtractFiles} over an image of about 80 MB, with the progress it
+ * prints thrown away. The saved {@link DiscIndex} is removed before each run so
+ * the directory walk is part of what is measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExtractBenchmark {
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	@Param({ "0", "256" })
+	public int readAhead;
+
+	private File folder;
+
+	private File image;
+
+	private File output;
+
+	private PrintStream standardOut;
+
+	@Setup(Level.Trial)
+	public void setUpImage() throws IOException {
+		this.folder = Files.createTempDirectory("cd-benchmark").toFile();
+		// 2 levels of 4 directories with 16 files of 192 KB and a 700 KB stream each
+		this.image = SyntheticImage.create(this.folder, 2, 4, 16, 192 * 1024);
+		this.output = new File(this.folder, "output");
+		this.standardOut = System.out;
+
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpOutput() throws IOException {
+		SyntheticImage.delete(this.output);
+		DiscIndex.invalidate(this.image);
+
+		this.output.mkdir();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		System.setOut(this.standardOut);
+
+		SyntheticImage.delete(this.folder);
+	}
+
+	@Benchmark
+	public void extract() throws Exception {
+		ExtractFiles.main(new String[] { this.image.getPath(), this.output.getPath(), String.valueOf(this.threads),
+				String.valueOf(this.readAhead) });
+	}
+
+}
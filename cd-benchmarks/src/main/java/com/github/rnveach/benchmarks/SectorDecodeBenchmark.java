@@ -0,0 +1,70 @@
+package com.github.rnveach.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.rnveach.sector.CD;
+
+/**
+ * Reads sectors of one kind through {@link CD} from memory, one at a time and
+ * as the bulk data reads the directory and extraction code use.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SectorDecodeBenchmark {
+
+	private static final int SECTOR_COUNT = 64;
+
+	@Param({ SyntheticSectors.MODE_1, SyntheticSectors.MODE_2_FORM_1, SyntheticSectors.MODE_2_FORM_2,
+			SyntheticSectors.EMPTY })
+	public String type;
+
+	private CD cd;
+
+	private byte[] data;
+
+	private int sectorNumber;
+
+	@Setup
+	public void setUp() {
+		this.cd = new CD(new ArraySectorReader(SyntheticSectors.create(this.type, SECTOR_COUNT, 1)));
+		this.data = new byte[SECTOR_COUNT * 2048];
+	}
+
+	@Benchmark
+	public int readSector() throws IOException {
+		this.cd.seek(this.sectorNumber);
+		this.cd.readSector();
+
+		this.sectorNumber = (this.sectorNumber + 1) % SECTOR_COUNT;
+
+		return this.cd.getSector().getUserDataLength();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SECTOR_COUNT)
+	public byte[] readSectorData() throws IOException {
+		this.cd.seek(0);
+		this.cd.readSectorData(SECTOR_COUNT, this.data, 0);
+
+		return this.data;
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.github.rnveach.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.github.rnveach.sector.ImageGenerator;
+
+/**
+ * Creates the images the benchmarks read with {@link ImageGenerator}. Each
+ * directory has the number of data files given, and a stream file of
+ * interleaved audio and video, and above the depth given, the number of sub
+ * directories given.
+ */
+final class SyntheticImage {
+
+	private SyntheticImage() {
+	}
+
+	static File create(File folder, int depth, int directoriesPerLevel, int filesPerDirectory, int fileSize)
+			throws IOException {
+		final ImageGenerator generator = new ImageGenerator();
+		final File result = new File(folder, "image.bin");
+
+		generator.setDepth(depth);
+		generator.setDirectoriesPerLevel(directoriesPerLevel);
+		generator.setFilesPerDirectory(filesPerDirectory);
+		generator.setFileSize(fileSize);
+		generator.setStreamsPerDirectory(1);
+		generator.setChannels(4);
+		generator.setAudioInterval(8);
+		generator.write(result, Runtime.getRuntime().availableProcessors());
+
+		return result;
+	}
+
+	static void delete(File file) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+
+		try (Stream<Path> walk = Files.walk(file.toPath())) {
+			walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.github.rnveach.benchmarks;
+
+import java.util.Random;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.Edcre;
+import com.github.rnveach.sector.Sector;
+import com.github.rnveach.utils.Util;
+
+/**
+ * Creates runs of sectors of one kind filled with random data, with valid
+ * headers and EDC/ECC.
+ */
+final class SyntheticSectors {
+
+	static final String MODE_1 = "MODE_1";
+	static final String MODE_2_FORM_1 = "MODE_2_FORM_1";
+	static final String MODE_2_FORM_2 = "MODE_2_FORM_2";
+	static final String EMPTY = "EMPTY";
+
+	private static final int SUB_MODE_DATA = 0x08;
+	private static final int SUB_MODE_FORM_2 = 0x20;
+
+	private SyntheticSectors() {
+	}
+
+	static byte[] create(String type, int sectorCount, long seed) {
+		final byte[] result = new byte[sectorCount * CD.SECTOR_SIZE];
+		final Random random = new Random(seed);
+
+		if (EMPTY.equals(type)) {
+			return result;
+		}
+
+		random.nextBytes(result);
+
+		for (int i = 0; i < sectorCount; i++) {
+			final int offset = i * CD.SECTOR_SIZE;
+			// sector addresses start after the 2 second lead in
+			final int address = i + 150;
+
+			System.arraycopy(CD.SYNC, 0, result, offset, CD.SYNC.length);
+
+			result[offset + 12] = Util.toBcd(address / 75 / 60);
+			result[offset + 13] = Util.toBcd((address / 75) % 60);
+			result[offset + 14] = Util.toBcd(address % 75);
+
+			switch (type) {
+			case MODE_1:
+				result[offset + 15] = 1;
+				break;
+			case MODE_2_FORM_1:
+				setMode2(result, offset, SUB_MODE_DATA);
+				break;
+			case MODE_2_FORM_2:
+				setMode2(result, offset, SUB_MODE_FORM_2);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown sector type: " + type);
+			}
+
+			Edcre.generate(result, offset);
+		}
+
+		return result;
+	}
+
+	private static void setMode2(byte[] image, int offset, int subMode) {
+		image[offset + 15] = 2;
+
+		for (int i = 0; i < 8; i += 4) {
+			image[offset + Sector.SUB_HEADER_OFFSET + i] = 0;
+			image[offset + Sector.SUB_HEADER_OFFSET + i + 1] = 0;
+			image[offset + Sector.SUB_HEADER_OFFSET + i + 2] = (byte) subMode;
+			image[offset + Sector.SUB_HEADER_OFFSET + i + 3] = 0;
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.github.rnveach;
+
+import java.io.File;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.ImageBuilder;
+
+public final class BuildImage {
+
+	private BuildImage() {
+	}
+
+	/**
+	 * Arguments are the folder written by {@link ExtractFiles} and the image to
+	 * create, optionally followed by {@code -template <image>} to take the system
+	 * area and volume identifiers from, usually the original image, and
+	 * {@code -threads <count>}.
+	 */
+	public static void main(String... arguments) throws Exception {
+		if ((arguments == null) || (arguments.length < 2)) {
+			throw new IllegalArgumentException("Missing folder and file names");
+		}
+
+		final File inputFolder = new File(arguments[0]);
+		final File outputFile = new File(arguments[1]);
+		File templateFile = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for (int i = 2; i < arguments.length; i++) {
+			switch (arguments[i]) {
+			case "-template":
+				if (++i == arguments.length) {
+					throw new IllegalArgumentException("Missing template file name");
+				}
+
+				templateFile = new File(arguments[i]);
+				break;
+			case "-threads":
+				if (++i == arguments.length) {
+					throw new IllegalArgumentException("Missing thread count");
+				}
+
+				threads = Integer.parseInt(arguments[i]);
+
+				if (threads < 1) {
+					throw new IllegalArgumentException("Thread count must be at least 1");
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown argument: " + arguments[i]);
+			}
+		}
+
+		final long startTime = System.nanoTime();
+		final ImageBuilder builder = ImageBuilder.load(inputFolder);
+
+		if (templateFile != null) {
+			try (CD template = CD.open(templateFile, false)) {
+				builder.setTemplate(template);
+			}
+		}
+
+		builder.layout();
+
+		for (final String path : builder.getMovedPaths()) {
+			System.out.println("Moved " + path);
+		}
+
+		builder.write(outputFile, threads);
+
+		final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+		final long bytes = (long) builder.getSectorCount() * CD.SECTOR_SIZE;
+
+		System.out.println(String.format("Built %d sectors in %.2f seconds, %.2f MB/s", builder.getSectorCount(),
+				seconds, (bytes / (1024.0 * 1024.0)) / seconds));
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.github.rnveach;
+
+import java.io.File;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.CompressedSectorReader;
+import com.github.rnveach.sector.SectorReader;
+
+public final class CompressImage {
+
+	private CompressImage() {
+	}
+
+	public static void main(String... arguments) throws Exception {
+		if ((arguments == null) || (arguments.length < 2)) {
+			throw new IllegalArgumentException("Missing CD file and compressed file names");
+		}
+
+		final File inputFile = new File(arguments[0]);
+		final File outputFile = new File(arguments[1]);
+		final int sectorsPerBlock;
+
+		if (arguments.length > 2) {
+			sectorsPerBlock = Integer.parseInt(arguments[2]);
+
+			if (sectorsPerBlock < 1) {
+				throw new IllegalArgumentException("Sectors per block must be at least 1");
+			}
+		} else {
+			sectorsPerBlock = CompressedSectorReader.DEFAULT_SECTORS_PER_BLOCK;
+		}
+
+		if (!outputFile.getName().toLowerCase().endsWith(CompressedSectorReader.EXTENSION)) {
+			System.err.println("Compressed images are only recognized with the " + CompressedSectorReader.EXTENSION
+					+ " extension");
+		}
+
+		final long startTime = System.nanoTime();
+		final long inputSize;
+
+		try (SectorReader reader = CD.openReader(inputFile, false)) {
+			inputSize = (long) reader.getSectorCount() * CD.SECTOR_SIZE;
+
+			CompressedSectorReader.compress(reader, outputFile, sectorsPerBlock);
+		}
+
+		final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+		System.out.println(String.format("Compressed %d bytes to %d bytes (%.1f%%) in %.2f seconds", inputSize,
+				outputFile.length(), (outputFile.length() * 100.0) / inputSize, seconds));
+	}
+
+}
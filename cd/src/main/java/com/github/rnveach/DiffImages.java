@@ -0,0 +1,345 @@
+package com.github.rnveach;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.DiscIndex;
+import com.github.rnveach.sector.Sector;
+import com.github.rnveach.sector.SectorReader;
+
+public final class DiffImages {
+
+	private static final int SECTORS_PER_TASK = 1024;
+
+	private static final int SECTORS_PER_READ = 64;
+
+	private static final int DATA = 0x01;
+	private static final int HEADER = 0x02;
+	private static final int EDC_ECC = 0x04;
+	private static final int MISSING = 0x08;
+
+	private static final String[] CHANGE_NAMES = { "data", "header", "EDC/ECC", "only in one image" };
+
+	private DiffImages() {
+	}
+
+	public static void main(String... arguments) throws Exception {
+		if ((arguments == null) || (arguments.length < 2)) {
+			throw new IllegalArgumentException("Missing original and changed CD files");
+		}
+
+		final File originalFile = new File(arguments[0]);
+		final File changedFile = new File(arguments[1]);
+
+		try (SectorReader original = CD.openReader(originalFile, false);
+				SectorReader changed = CD.openReader(changedFile, false)) {
+			final long startTime = System.nanoTime();
+			final byte[] changes = diff(original, changed);
+			final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+			final DiscIndex originalIndex = readIndex(new CD(original.duplicate()), originalFile);
+			final DiscIndex changedIndex = readIndex(new CD(changed.duplicate()), changedFile);
+
+			printEntries(originalIndex, changedIndex);
+			printChangedFiles(changes, original.getSectorCount(), originalIndex, changedIndex);
+
+			final int[] counts = printSectors(changes, original.getSectorCount(), originalIndex, changedIndex);
+
+			System.out.println(String.format(
+					"Compared %d sectors in %.2f seconds (%.2f MB/s), %d changed (%d data, %d header only,"
+							+ " %d EDC/ECC only, %d header and EDC/ECC only, %d only in one image)",
+					changes.length, seconds,
+					(((long) changes.length * CD.SECTOR_SIZE) / (1024.0 * 1024.0)) / seconds, counts[0], counts[1],
+					counts[2], counts[3], counts[4], counts[5]));
+		}
+	}
+
+	/**
+	 * Compares the images sector by sector and returns what changed in each,
+	 * indexed by sector number and covering the larger image. A sector with no
+	 * changes has a value of 0.
+	 */
+	public static byte[] diff(SectorReader original, SectorReader changed) throws IOException {
+		final byte[] results = new byte[Math.max(original.getSectorCount(), changed.getSectorCount())];
+		final int common = Math.min(original.getSectorCount(), changed.getSectorCount());
+
+		Arrays.fill(results, common, results.length, (byte) MISSING);
+
+		try {
+			ForkJoinPool.commonPool().invoke(new DiffTask(original, changed, results, 0, common));
+		} catch (final UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+
+		return results;
+	}
+
+	private static void diffRange(SectorReader original, SectorReader changed, byte[] results, int startSector,
+			int endSector) throws IOException {
+		final byte[] originalSectors = new byte[SECTORS_PER_READ * CD.SECTOR_SIZE];
+		final byte[] changedSectors = new byte[SECTORS_PER_READ * CD.SECTOR_SIZE];
+		final Sector originalSector = new Sector();
+		final Sector changedSector = new Sector();
+
+		for (int readStart = startSector; readStart < endSector; readStart += SECTORS_PER_READ) {
+			final int sectors = Math.min(SECTORS_PER_READ, endSector - readStart);
+			final int length = sectors * CD.SECTOR_SIZE;
+
+			original.read(readStart, sectors, originalSectors, 0);
+			changed.read(readStart, sectors, changedSectors, 0);
+
+			// most of an image doesn't change, so look for the next difference
+			int position = Arrays.mismatch(originalSectors, 0, length, changedSectors, 0, length);
+
+			while (position != -1) {
+				final int i = position / CD.SECTOR_SIZE;
+				final int offset = i * CD.SECTOR_SIZE;
+				final int sectorNumber = readStart + i;
+
+				System.arraycopy(originalSectors, offset, originalSector.getBuffer(), 0, CD.SECTOR_SIZE);
+				System.arraycopy(changedSectors, offset, changedSector.getBuffer(), 0, CD.SECTOR_SIZE);
+
+				results[sectorNumber] = (byte) classify(originalSector, original.isAudio(sectorNumber),
+						changedSector, changed.isAudio(sectorNumber));
+
+				final int next = offset + CD.SECTOR_SIZE;
+				final int mismatch = Arrays.mismatch(originalSectors, next, length, changedSectors, next, length);
+
+				position = (mismatch == -1) ? -1 : (next + mismatch);
+			}
+		}
+	}
+
+	private static int classify(Sector original, boolean originalAudio, Sector changed, boolean changedAudio) {
+		if (originalAudio || changedAudio || !decode(original) || !decode(changed)
+				|| (original.getMode() != changed.getMode()) || (original.getForm() != changed.getForm())) {
+			return DATA;
+		}
+
+		final byte[] originalBuffer = original.getBuffer();
+		final byte[] changedBuffer = changed.getBuffer();
+		final int dataStart = original.getUserDataOffset();
+		final int dataEnd = dataStart + original.getUserDataLength();
+		int result = 0;
+
+		if (Arrays.mismatch(originalBuffer, 0, dataStart, changedBuffer, 0, dataStart) != -1) {
+			result |= HEADER;
+		}
+		if (Arrays.mismatch(originalBuffer, dataStart, dataEnd, changedBuffer, dataStart, dataEnd) != -1) {
+			result |= DATA;
+		}
+		if (Arrays.mismatch(originalBuffer, dataEnd, CD.SECTOR_SIZE, changedBuffer, dataEnd,
+				CD.SECTOR_SIZE) != -1) {
+			result |= EDC_ECC;
+		}
+
+		return result;
+	}
+
+	private static boolean decode(Sector sector) {
+		try {
+			sector.decode();
+
+			return true;
+		} catch (final IllegalStateException ex) {
+			return false;
+		}
+	}
+
+	private static DiscIndex readIndex(CD cd, File file) throws IOException {
+		try {
+			return DiscIndex.build(cd);
+		} catch (final IllegalStateException ex) {
+			System.err.println("Unable to read the directory tree of " + file + ", files will not be listed: "
+					+ ex.getMessage());
+
+			return null;
+		}
+	}
+
+	private static void printEntries(DiscIndex originalIndex, DiscIndex changedIndex) {
+		if ((originalIndex == null) || (changedIndex == null)) {
+			return;
+		}
+
+		for (int entry = 0; entry < changedIndex.getEntryCount(); entry++) {
+			final int originalEntry = originalIndex.find(changedIndex.getPath(entry));
+
+			if (originalEntry == -1) {
+				System.out.println("Added " + changedIndex.getDisplayPath(entry) + " at "
+						+ changedIndex.getSector(entry) + ", " + changedIndex.getSize(entry) + " bytes");
+			} else if ((originalIndex.getSector(originalEntry) != changedIndex.getSector(entry))
+					|| (originalIndex.getSize(originalEntry) != changedIndex.getSize(entry))) {
+				System.out.println("Moved or resized " + changedIndex.getDisplayPath(entry) + " from "
+						+ originalIndex.getSector(originalEntry) + ", " + originalIndex.getSize(originalEntry)
+						+ " bytes to " + changedIndex.getSector(entry) + ", " + changedIndex.getSize(entry) + " bytes");
+			}
+		}
+
+		for (int entry = 0; entry < originalIndex.getEntryCount(); entry++) {
+			if (changedIndex.find(originalIndex.getPath(entry)) == -1) {
+				System.out.println("Removed " + originalIndex.getDisplayPath(entry));
+			}
+		}
+	}
+
+	private static void printChangedFiles(byte[] changes, int originalSectorCount, DiscIndex originalIndex,
+			DiscIndex changedIndex) {
+		final Map<String, Integer> files = new LinkedHashMap<>();
+
+		for (int sector = 0; sector < changes.length; sector++) {
+			if ((changes[sector] & (DATA | MISSING)) == 0) {
+				continue;
+			}
+
+			final DiscIndex index = getIndex(sector, originalSectorCount, originalIndex, changedIndex);
+
+			if (index != null) {
+				final int entry = index.findBySector(sector);
+
+				if (entry != -1) {
+					files.merge(index.getDisplayPath(entry), 1, Integer::sum);
+				}
+			}
+		}
+
+		if (!files.isEmpty()) {
+			System.out.println("Changed files:");
+
+			for (final Map.Entry<String, Integer> file : files.entrySet()) {
+				System.out.println("\t" + file.getKey() + " (" + file.getValue() + " sectors)");
+			}
+		}
+	}
+
+	private static int[] printSectors(byte[] changes, int originalSectorCount, DiscIndex originalIndex,
+			DiscIndex changedIndex) {
+		// changed, data, header only, EDC/ECC only, header and EDC/ECC only, only in one image
+		final int[] result = new int[6];
+		int start = 0;
+
+		while (start < changes.length) {
+			int end = start + 1;
+
+			while ((end < changes.length) && (changes[end] == changes[start])) {
+				end++;
+			}
+
+			final int change = changes[start];
+
+			if (change != 0) {
+				final int count = end - start;
+				final DiscIndex index = getIndex(start, originalSectorCount, originalIndex, changedIndex);
+
+				result[0] += count;
+
+				if ((change & DATA) != 0) {
+					result[1] += count;
+				} else if (change == HEADER) {
+					result[2] += count;
+				} else if (change == EDC_ECC) {
+					result[3] += count;
+				} else if (change == (HEADER | EDC_ECC)) {
+					result[4] += count;
+				} else if (change == MISSING) {
+					result[5] += count;
+				}
+
+				System.out.println("Sectors " + start + "-" + (end - 1) + " (" + count + "): " + getChangeNames(change)
+						+ getOwners(index, start, end));
+			}
+
+			start = end;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Sectors are named from the changed image when it has them, since that is the
+	 * layout being checked.
+	 */
+	private static DiscIndex getIndex(int sector, int originalSectorCount, DiscIndex originalIndex,
+			DiscIndex changedIndex) {
+		if ((changedIndex != null) && ((sector >= originalSectorCount) || (changedIndex.findBySector(sector) != -1))) {
+			return changedIndex;
+		}
+
+		return (originalIndex == null) ? changedIndex : originalIndex;
+	}
+
+	private static String getOwners(DiscIndex index, int startSector, int endSector) {
+		final StringBuilder result = new StringBuilder();
+
+		if (index != null) {
+			for (final int entry : index.findBySectors(startSector, endSector)) {
+				result.append((result.length() == 0) ? " in " : ", ");
+				result.append(index.getDisplayPath(entry));
+			}
+		}
+
+		return result.toString();
+	}
+
+	private static String getChangeNames(int change) {
+		final StringBuilder result = new StringBuilder();
+
+		for (int i = 0; i < CHANGE_NAMES.length; i++) {
+			if ((change & (1 << i)) != 0) {
+				if (result.length() > 0) {
+					result.append(", ");
+				}
+
+				result.append(CHANGE_NAMES[i]);
+			}
+		}
+
+		return result.toString();
+	}
+
+	private static final class DiffTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient SectorReader original;
+		private final transient SectorReader changed;
+		private final byte[] results;
+		private final int startSector;
+		private final int endSector;
+
+		private DiffTask(SectorReader original, SectorReader changed, byte[] results, int startSector,
+				int endSector) {
+			this.original = original;
+			this.changed = changed;
+			this.results = results;
+			this.startSector = startSector;
+			this.endSector = endSector;
+		}
+
+		@Override
+		protected void compute() {
+			if ((this.endSector - this.startSector) <= SECTORS_PER_TASK) {
+				try {
+					diffRange(this.original.duplicate(), this.changed.duplicate(), this.results, this.startSector,
+							this.endSector);
+				} catch (final IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			} else {
+				final int middle = (this.startSector + this.endSector) >>> 1;
+
+				invokeAll(new DiffTask(this.original, this.changed, this.results, this.startSector, middle),
+						new DiffTask(this.original, this.changed, this.results, middle, this.endSector));
+			}
+		}
+
+	}
+
+}
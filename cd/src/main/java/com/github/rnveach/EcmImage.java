@@ -0,0 +1,59 @@
+package com.github.rnveach;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.EcmCodec;
+import com.github.rnveach.sector.SectorReader;
+
+public final class EcmImage {
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private EcmImage() {
+	}
+
+	public static void main(String... arguments) throws Exception {
+		if ((arguments == null) || (arguments.length < 3)) {
+			throw new IllegalArgumentException("Missing encode or decode, and the input and output file names");
+		}
+
+		final File inputFile = new File(arguments[1]);
+		final File outputFile = new File(arguments[2]);
+		final long startTime = System.nanoTime();
+		final long imageSize;
+
+		switch (arguments[0]) {
+		case "encode":
+			try (SectorReader reader = CD.openReader(inputFile, false);
+					OutputStream output = new BufferedOutputStream(new FileOutputStream(outputFile), BUFFER_SIZE)) {
+				imageSize = (long) reader.getSectorCount() * CD.SECTOR_SIZE;
+
+				EcmCodec.encode(reader, output);
+			}
+			break;
+		case "decode":
+			try (InputStream input = new BufferedInputStream(new FileInputStream(inputFile), BUFFER_SIZE);
+					OutputStream output = new FileOutputStream(outputFile)) {
+				imageSize = (long) EcmCodec.decode(input, output) * CD.SECTOR_SIZE;
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown action: " + arguments[0]);
+		}
+
+		final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+		final long encodedSize = arguments[0].equals("encode") ? outputFile.length() : inputFile.length();
+
+		System.out.println(String.format("Image of %d bytes is %d bytes encoded (%.1f%%), %.2f seconds, %.2f MB/s",
+				imageSize, encodedSize, (encodedSize * 100.0) / imageSize, seconds,
+				(imageSize / (1024.0 * 1024.0)) / seconds));
+	}
+
+}
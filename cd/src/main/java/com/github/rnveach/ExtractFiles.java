@@ -7,124 +7,249 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.github.rnveach.metrics.Metrics;
 import com.github.rnveach.sector.CD;
-import com.github.rnveach.sector.CdDirectoryListing;
-import com.github.rnveach.utils.Util;
+import com.github.rnveach.sector.DiscIndex;
+import com.github.rnveach.sector.ReadAheadSectorReader;
+import com.github.rnveach.sector.Sector;
 
 public final class ExtractFiles {
 
 	private ExtractFiles() {
 	}
 
+	/**
+	 * Arguments are the CD file and the folder to extract to, optionally followed
+	 * by the thread count and the sectors to read ahead. {@code -metrics} and a
+	 * file name anywhere in them also saves the run's metrics as JSON.
+	 */
 	public static void main(String[] arguments) throws Exception {
 		if ((arguments == null) || (arguments.length < 2)) {
 			throw new IllegalArgumentException("Missing file and folder names");
 		}
 
-		final File inputFile = new File(arguments[0]);
-		final File outputFolder = new File(arguments[1]);
+		final List<String> values = new ArrayList<>();
+		File metricsFile = null;
 
-		extract(inputFile, outputFolder);
-	}
+		for (int i = 0; i < arguments.length; i++) {
+			if ("-metrics".equals(arguments[i])) {
+				if (i == (arguments.length - 1)) {
+					throw new IllegalArgumentException("Missing metrics file name");
+				}
 
-	private static void extract(File inputFile, File outputFolder) throws FileNotFoundException, IOException {
-		try (final RandomAccessFile reader = new RandomAccessFile(inputFile, "r");
-				FileWriter fw = new FileWriter(new File(outputFolder, "cd-info.txt"), StandardCharsets.UTF_8);
-				BufferedWriter writer = new BufferedWriter(fw)) {
-			extract(new CD(reader), writer, outputFolder);
+				i++;
+				metricsFile = new File(arguments[i]);
+			} else {
+				values.add(arguments[i]);
+			}
 		}
-	}
 
-	private static void extract(CD cd, Writer writer, File outputFolder) throws IOException {
-		System.out.println("Reading Sector 16");
+		if (values.size() < 2) {
+			throw new IllegalArgumentException("Missing file and folder names");
+		}
 
-		cd.seek(16);
-		cd.readSector();
+		final File inputFile = new File(values.get(0));
+		final File outputFolder = new File(values.get(1));
+		final int threads;
+		final int readAhead;
 
-		final byte[] data = cd.getCurrentData();
-		final int sector = Util.read32LE(data, 158);
-		final int size = Util.read32LE(data, 166);
+		if (values.size() > 2) {
+			threads = Integer.parseInt(values.get(2));
 
-		extract(cd, writer, sector, size, "", outputFolder);
-	}
+			if (threads < 1) {
+				throw new IllegalArgumentException("Thread count must be at least 1");
+			}
+		} else {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
 
-	private static void extract(CD cd, Writer writer, int sector, int size, String directoryPath, File outputFolder)
-			throws IOException {
-		System.out.println("Reading Directory at " + sector + " (\\" + directoryPath + ")");
+		if (values.size() > 3) {
+			readAhead = Integer.parseInt(values.get(3));
+
+			if (readAhead < 0) {
+				throw new IllegalArgumentException("Read ahead sectors can't be negative");
+			}
+		} else {
+			readAhead = ReadAheadSectorReader.DEFAULT_DEPTH;
+		}
 
-		final CdDirectoryListing listing = new CdDirectoryListing(cd, sector, size);
+		final Metrics metrics = new Metrics();
 
-		writer.write("Directory: " + directoryPath + "\r\n");
-		writer.write("\tSector: " + sector + "\r\n");
-		writer.write("\tSize: " + size + "\r\n");
-		writer.write("\r\n");
+		extract(inputFile, outputFolder, threads, readAhead, metrics);
 
-		final List<DelayDirectory> delays = new ArrayList<>();
-		int position = -1;
+		metrics.printSummary(System.out);
 
-		while (listing.hasNext()) {
-			listing.nextEntry();
+		if (metricsFile != null) {
+			metrics.writeJson(metricsFile);
+		}
+	}
 
-			position++;
+	private static void extract(File inputFile, File outputFolder, int threads, int readAhead, Metrics metrics)
+			throws FileNotFoundException, IOException, InterruptedException {
+		final long startTime = System.nanoTime();
+		final List<ExtractJob> jobs = new ArrayList<>();
 
-			if (listing.getEntryName().isEmpty()) {
-				continue;
+		// each worker's copy of the image reads ahead on its own
+		try (CD cd = CD.open(inputFile, false, readAhead)) {
+			cd.setMetrics(metrics);
+
+			final long walkTime = System.nanoTime();
+
+			try (FileWriter fw = new FileWriter(new File(outputFolder, "cd-info.txt"), StandardCharsets.UTF_8);
+					BufferedWriter writer = new BufferedWriter(fw)) {
+				extract(DiscIndex.load(cd, inputFile), writer, 0, outputFolder, jobs);
 			}
 
-			final String entryName = getNormalFileName(listing.getEntryName());
-			final File entryFile = new File(outputFolder, entryName);
+			metrics.timer("extract.directories").recordSince(walkTime);
 
-			writer.write("Directory Entry #" + position + "\r\n");
-			writer.write("\tName: " + entryName + "\r\n");
-			writer.write("\tSector: " + listing.getEntrySector() + "\r\n");
-			writer.write("\tSize: " + listing.getEntryLength() + "\r\n");
+			final long copyTime = System.nanoTime();
 
-			if (listing.isEntryDirectory()) {
-				delays.add(
-						new DelayDirectory(listing.getEntrySector(), listing.getEntryLength(), entryName, entryFile));
-			} else {
-				extractFile(cd, writer, entryFile, entryName, listing.getEntrySector(), listing.getEntryLength(),
-						directoryPath);
+			extractFiles(cd, jobs, threads);
+
+			metrics.timer("extract.copy").recordSince(copyTime);
+		}
+
+		long totalBytes = 0;
+
+		for (final ExtractJob job : jobs) {
+			totalBytes += job.getOutputSize();
+		}
+
+		final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+		System.out.println(String.format("Extracted %d files (%d bytes) in %.2f seconds, %.2f MB/s", jobs.size(),
+				totalBytes, seconds, (totalBytes / (1024.0 * 1024.0)) / seconds));
+	}
+
+	private static void extract(DiscIndex index, Writer writer, int directory, File outputFolder,
+			List<ExtractJob> jobs) throws IOException {
+		writer.write("Directory: " + index.getPath(directory) + "\r\n");
+		writer.write("\tSector: " + index.getSector(directory) + "\r\n");
+		writer.write("\tSize: " + index.getSize(directory) + "\r\n");
+		writer.write("\r\n");
+
+		final int firstChild = index.getFirstChild(directory);
+		final int lastChild = firstChild + index.getChildCount(directory);
+
+		for (int entry = firstChild; entry < lastChild; entry++) {
+			writer.write("Directory Entry #" + index.getPosition(entry) + "\r\n");
+			writer.write("\tName: " + index.getName(entry) + "\r\n");
+			writer.write("\tSector: " + index.getSector(entry) + "\r\n");
+			writer.write("\tSize: " + index.getSize(entry) + "\r\n");
+
+			if (!index.isDirectory(entry)) {
+				if (index.isSectorMode(entry)) {
+					writer.write("\tSector Mode\r\n");
+				}
+
+				jobs.add(new ExtractJob(new File(outputFolder, index.getName(entry)),
+						index.getPath(entry).substring(1), index.getSector(entry), index.getSize(entry),
+						index.isSectorMode(entry)));
 			}
 
 			writer.write("\r\n");
 		}
 
-		for (final DelayDirectory delay : delays) {
-			delay.entryFile.mkdir();
+		for (int entry = firstChild; entry < lastChild; entry++) {
+			if (index.isDirectory(entry)) {
+				final File entryFile = new File(outputFolder, index.getName(entry));
 
-			extract(cd, writer, delay.entrySector, delay.entryLength, directoryPath + "\\" + delay.entryName,
-					delay.entryFile);
+				entryFile.mkdir();
+
+				extract(index, writer, entry, entryFile, jobs);
+			}
 		}
 	}
 
-	private static void extractFile(CD cd, Writer textWriter, File file, String fileName, int sector, int size,
-			String directoryPath) throws FileNotFoundException, IOException {
-		System.out.println("Extracting File \\" + (directoryPath.isEmpty() ? "" : directoryPath + "\\") + fileName
-				+ " at " + sector);
+	private static void extractFiles(CD cd, List<ExtractJob> jobs, int threads)
+			throws IOException, InterruptedException {
+		// start the biggest files first so no worker is left with a large file at the
+		// end
+		final List<ExtractJob> ordered = new ArrayList<>(jobs);
+
+		ordered.sort(Comparator.comparingLong(ExtractJob::getOutputSize).reversed());
+
+		final AtomicInteger nextJob = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		// each worker reads through its own duplicate, which may have a read ahead
+		// thread of its own
+		final List<CD> workerCds = new ArrayList<>();
+
+		try {
+			final List<Future<Void>> workers = new ArrayList<>();
+
+			for (int i = 0; i < threads; i++) {
+				final CD workerCd = cd.duplicate();
+
+				workerCds.add(workerCd);
+				workers.add(executor.submit(() -> {
+					int index;
+
+					while ((index = nextJob.getAndIncrement()) < ordered.size()) {
+						extractFile(workerCd, ordered.get(index));
+					}
+
+					return null;
+				}));
+			}
+
+			for (final Future<Void> worker : workers) {
+				worker.get();
+			}
+		} catch (final ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+
+			throw new IllegalStateException("Failed to extract files", ex.getCause());
+		} finally {
+			executor.shutdownNow();
 
-		cd.seek(sector);
+			for (final CD workerCd : workerCds) {
+				workerCd.close();
+			}
+		}
+	}
+
+	private static void extractFile(CD cd, ExtractJob job) throws FileNotFoundException, IOException {
+		final long startTime = System.nanoTime();
+
+		System.out.println("Extracting File \\" + job.displayName + " at " + job.sector);
+
+		cd.seek(job.sector);
 		cd.readSector();
 
-		try (FileOutputStream fos = new FileOutputStream(file);
+		try (FileOutputStream fos = new FileOutputStream(job.file);
 				BufferedOutputStream writer = new BufferedOutputStream(fos)) {
-			// audio/video/real time
-			if ((cd.getCurrentMode() == 2) && (cd.getCurrentModeForm() > 0) && ((cd.getCurrentSh()[2] & 0x46) > 0)) {
-				textWriter.write("\tSector Mode\r\n");
-
+			if (job.sectorMode) {
 				// not sure I understand why we assume 2048, but we don't get the whole file if
 				// it is larger
-				extractFileSectors(writer, cd, size / 2048);
+				extractFileSectors(writer, cd, job.size / 2048);
 			} else {
-				extractFileData(writer, cd, size);
+				extractFileData(writer, cd, job.size);
 			}
 		}
+
+		final Metrics metrics = cd.getMetrics();
+
+		if (metrics != null) {
+			final long nanos = metrics.timer("extract.file").recordSince(startTime);
+
+			metrics.ranking("extract.slowest").record("\\" + job.displayName, nanos);
+			metrics.histogram("extract.file.bytes").record(job.getOutputSize());
+			metrics.counter("extract.bytes.written").add(job.getOutputSize());
+		}
 	}
 
 	private static void extractFileSectors(BufferedOutputStream writer, CD cd, int sectors) throws IOException {
@@ -153,35 +278,36 @@ public final class ExtractFiles {
 				cd.readSector();
 			}
 
-			final byte[] data = cd.getCurrentData();
-			final int toWrite = Math.min(data.length, size);
+			final Sector sector = cd.getSector();
+			final int toWrite = Math.min(sector.getUserDataLength(), size);
 
-			writer.write(data, 0, toWrite);
+			writer.write(sector.getBuffer(), sector.getUserDataOffset(), toWrite);
 			size -= toWrite;
 		}
 	}
 
-	private static String getNormalFileName(String name) {
-		final int semicolon = name.lastIndexOf(';');
-		if (semicolon != -1) {
-			return name.substring(0, semicolon);
-		}
+	private static final class ExtractJob {
 
-		return name;
-	}
+		private final File file;
+		private final String displayName;
+		private final int sector;
+		private final int size;
+		private final boolean sectorMode;
 
-	private static final class DelayDirectory {
+		private ExtractJob(File file, String displayName, int sector, int size, boolean sectorMode) {
+			this.file = file;
+			this.displayName = displayName;
+			this.sector = sector;
+			this.size = size;
+			this.sectorMode = sectorMode;
+		}
 
-		private final int entrySector;
-		private final int entryLength;
-		private final String entryName;
-		private final File entryFile;
+		private long getOutputSize() {
+			if (this.sectorMode) {
+				return (long) (this.size / 2048) * CD.SECTOR_SIZE;
+			}
 
-		private DelayDirectory(int entrySector, int entryLength, String entryName, File entryFile) {
-			this.entrySector = entrySector;
-			this.entryLength = entryLength;
-			this.entryName = entryName;
-			this.entryFile = entryFile;
+			return this.size;
 		}
 
 	}
@@ -0,0 +1,52 @@
+package com.github.rnveach;
+
+import java.io.File;
+import java.util.List;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.SectorReader;
+import com.github.rnveach.xa.XaAudioExtractor;
+
+public final class ExtractXaAudio {
+
+	private ExtractXaAudio() {
+	}
+
+	public static void main(String... arguments) throws Exception {
+		if ((arguments == null) || (arguments.length < 2)) {
+			throw new IllegalArgumentException("Missing CD file and folder names");
+		}
+		if (arguments.length == 3) {
+			throw new IllegalArgumentException("Missing last sector");
+		}
+
+		final File file = new File(arguments[0]);
+		final File outputFolder = new File(arguments[1]);
+
+		outputFolder.mkdirs();
+
+		try (SectorReader sectorReader = CD.openReader(file, false)) {
+			final int firstSector;
+			final int lastSector;
+
+			if (arguments.length > 3) {
+				firstSector = Integer.parseInt(arguments[2]);
+				lastSector = Integer.parseInt(arguments[3]);
+			} else {
+				firstSector = 0;
+				lastSector = sectorReader.getSectorCount() - 1;
+			}
+
+			final long startTime = System.nanoTime();
+			final List<File> files = XaAudioExtractor.extract(sectorReader, firstSector, lastSector, outputFolder);
+			final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+			for (final File wav : files) {
+				System.out.println("Wrote " + wav.getName() + " (" + wav.length() + " bytes)");
+			}
+
+			System.out.println(String.format("Decoded %d streams in %.2f seconds", files.size(), seconds));
+		}
+	}
+
+}
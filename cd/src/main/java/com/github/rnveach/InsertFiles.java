@@ -1,14 +1,22 @@
 package com.github.rnveach;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
+import com.github.rnveach.metrics.Metrics;
 import com.github.rnveach.sector.CD;
 import com.github.rnveach.sector.CdDirectoryListing;
+import com.github.rnveach.sector.CompressedSectorReader;
+import com.github.rnveach.sector.DiscIndex;
+import com.github.rnveach.sector.Edcre;
+import com.github.rnveach.sector.SectorAllocator;
+import com.github.rnveach.sector.SectorReader;
 import com.github.rnveach.utils.Util;
 
 public final class InsertFiles {
@@ -16,6 +24,12 @@ public final class InsertFiles {
 	private InsertFiles() {
 	}
 
+	/**
+	 * Arguments are the folder to insert from and the CD file, optionally
+	 * followed by {@code -incremental} to only write the sectors whose data
+	 * changed and {@code -metrics} with a file name to save the run's metrics as
+	 * JSON.
+	 */
 	public static void main(String[] arguments) throws Exception {
 		if ((arguments == null) || (arguments.length < 2)) {
 			throw new IllegalArgumentException("Missing file and folder names");
@@ -23,112 +37,338 @@ public final class InsertFiles {
 
 		final File inputFolder = new File(arguments[0]);
 		final File outputFile = new File(arguments[1]);
+		boolean incremental = false;
+		File metricsFile = null;
 
-		insert(inputFolder, outputFile);
-	}
+		for (int i = 2; i < arguments.length; i++) {
+			if ("-incremental".equals(arguments[i])) {
+				incremental = true;
+			} else if ("-metrics".equals(arguments[i])) {
+				if (i == (arguments.length - 1)) {
+					throw new IllegalArgumentException("Missing metrics file name");
+				}
 
-	private static void insert(File inputFolder, File outputFile) throws FileNotFoundException, IOException {
-		try (final BufferedReader reader = new BufferedReader(new FileReader(new File(inputFolder, "cd-info.txt")));
-				final RandomAccessFile writer = new RandomAccessFile(outputFile, "rw")) {
-			insert(reader, new CD(writer), inputFolder);
+				i++;
+				metricsFile = new File(arguments[i]);
+			} else {
+				throw new IllegalArgumentException("Unknown argument: " + arguments[i]);
+			}
 		}
-	}
 
-	private static void insert(BufferedReader reader, CD cd, File inputFolder) throws IOException {
-		final String startLine = reader.readLine();
+		final Metrics metrics = new Metrics();
+		final long startTime = System.nanoTime();
+		final int written = insert(inputFolder, outputFile, incremental, metrics);
+		final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
 
-		if (!startLine.startsWith("Directory: ")) {
-			throw new IllegalStateException("Failed to find the first directory, but found: " + startLine);
-		}
+		System.out.println(String.format("Wrote %d sectors in %.2f seconds", written, seconds));
 
-		insertDirectory(reader, cd, startLine, inputFolder);
-	}
+		metrics.printSummary(System.out);
 
-	private static void insertDirectory(BufferedReader reader, CD cd, String startDirectoryLine, File inputFolder)
-			throws IOException {
-		final String directoryPath = Util.readStringDataFromInput(startDirectoryLine.trim(), "Directory");
-		final int directorySector = Integer.parseInt(Util.readStringDataFromInput(reader.readLine().trim(), "Sector"));
-		final int directorySize = Integer.parseInt(Util.readStringDataFromInput(reader.readLine().trim(), "Size"));
-
-		if (!"".equals(reader.readLine())) {
-			throw new IllegalStateException("Did not find an empty line before next entry");
+		if (metricsFile != null) {
+			metrics.writeJson(metricsFile);
 		}
+	}
 
-		final File inputDirectory = new File(inputFolder, directoryPath);
+	private static int insert(File inputFolder, File outputFile, boolean incremental, Metrics metrics)
+			throws FileNotFoundException, IOException {
+		try {
+			final DiscIndex index;
+			final SectorAllocator allocator;
+			final Map<Integer, Integer> moves = new HashMap<>();
+			final int imageSectorCount;
 
-		final CdDirectoryListing listing = new CdDirectoryListing(cd, directorySector, directorySize);
-		int lastEntryPosition = 0;
-		boolean writeDirectoryBack = false;
+			// files are placed before the image is opened for writing, as it may need
+			// to grow to hold them
+			final long placeTime = System.nanoTime();
 
-		String line;
+			try (CD cd = CD.open(outputFile, false)) {
+				cd.setCacheSize(CD.DEFAULT_CACHE_SIZE);
+				cd.setMetrics(metrics);
 
-		while ((line = reader.readLine()) != null) {
-			if (line.startsWith("Directory: ")) {
-				insertDirectory(reader, cd, startDirectoryLine, inputFolder);
-				break;
+				index = DiscIndex.load(cd, outputFile);
+				allocator = SectorAllocator.build(cd, index);
+				imageSectorCount = cd.getSectorCount();
+
+				placeDirectory(index, allocator, moves, 0, inputFolder);
 			}
 
-			if (!line.startsWith("Directory Entry #")) {
-				throw new IllegalStateException("Failed to find a Directory Entry, but found: " + line);
+			metrics.timer("insert.place").recordSince(placeTime);
+			metrics.counter("insert.files.moved").add(moves.size());
+
+			if (allocator.getRequiredSectorCount() > imageSectorCount) {
+				grow(outputFile, allocator.getRequiredSectorCount());
 			}
 
-			final int entryNumber = Integer.parseInt(line.substring(17));
-			final String entryName = Util.readStringDataFromInput(reader.readLine().trim(), "Name");
-			final int entrySector = Integer.parseInt(Util.readStringDataFromInput(reader.readLine().trim(), "Sector"));
-			final int entrySize = Integer.parseInt(Util.readStringDataFromInput(reader.readLine().trim(), "Size"));
-			boolean entrySectorMode = false;
+			try (CD cd = CD.open(outputFile, true)) {
+				cd.setCacheSize(CD.DEFAULT_CACHE_SIZE);
+				cd.setMetrics(metrics);
+
+				final long writeTime = System.nanoTime();
+				final Map<Integer, CdDirectoryListing> listings = new TreeMap<>();
+				int result = insertDirectory(index, cd, moves, listings, 0, inputFolder, incremental);
 
-			final String nextLine = reader.readLine().trim();
+				metrics.timer("insert.write").recordSince(writeTime);
 
-			if ("Sector Mode".equals(nextLine)) {
-				entrySectorMode = true;
+				final long directoryTime = System.nanoTime();
 
-				if (!"".equals(reader.readLine())) {
-					throw new IllegalStateException("Did not find an empty line before next entry");
+				// directories are written back together once every file is in place
+				for (final Map.Entry<Integer, CdDirectoryListing> listing : listings.entrySet()) {
+					final byte[] data = listing.getValue().getData();
+
+					cd.seek(index.getSector(listing.getKey()));
+					cd.writeSectorData(data.length / 2048, data, 0);
+
+					result += data.length / 2048;
+				}
+
+				metrics.timer("insert.directories").recordSince(directoryTime);
+
+				if (allocator.isVolumeGrown()) {
+					updateVolumeSize(cd, allocator.getVolumeSize());
+
+					result++;
 				}
-			} else if (!"".equals(nextLine)) {
-				throw new IllegalStateException("Did not find an empty line before next entry");
+
+				return result;
+			}
+		} finally {
+			// sizes written back to the directories are not in the saved index
+			DiscIndex.invalidate(outputFile);
+		}
+	}
+
+	/**
+	 * Finds new places for the files that no longer fit in their sectors. A file's
+	 * old sectors are free for the files placed after it, so files are visited in
+	 * the same order {@link #insertDirectory} writes them, which relocates each
+	 * file from its old sectors before anything is moved into them.
+	 */
+	private static void placeDirectory(DiscIndex index, SectorAllocator allocator, Map<Integer, Integer> moves,
+			int directory, File inputDirectory) {
+		final int firstChild = index.getFirstChild(directory);
+		final int lastChild = firstChild + index.getChildCount(directory);
+
+		for (int entry = firstChild; entry < lastChild; entry++) {
+			if (index.isDirectory(entry)) {
+				continue;
 			}
 
-			for (; lastEntryPosition < (entryNumber - 1); lastEntryPosition++) {
-				listing.nextEntry();
+			final File insertFile = new File(inputDirectory, index.getName(entry));
+
+			if (!insertFile.exists()) {
+				continue;
+			}
+
+			final int sectorCount = getInsertSectorCount(insertFile, index.isSectorMode(entry));
+
+			if (sectorCount > index.getSectorCount(entry)) {
+				moves.put(entry, allocator.allocate(sectorCount));
+
+				allocator.free(index.getSector(entry), index.getSectorCount(entry));
+			}
+		}
+
+		for (int entry = firstChild; entry < lastChild; entry++) {
+			if (index.isDirectory(entry)) {
+				placeDirectory(index, allocator, moves, entry, new File(inputDirectory, index.getName(entry)));
+			}
+		}
+	}
+
+	private static void grow(File outputFile, int sectorCount) throws IOException {
+		final String name = outputFile.getName().toLowerCase();
+
+		if (name.endsWith(".cue") || name.endsWith(CompressedSectorReader.EXTENSION)) {
+			throw new IllegalStateException("Only single track images can grow to hold bigger files: " + outputFile);
+		}
+
+		try (RandomAccessFile file = new RandomAccessFile(outputFile, "rw")) {
+			file.setLength((long) sectorCount * CD.SECTOR_SIZE);
+		}
+	}
+
+	private static long getInsertSize(File insertFile, boolean sectorMode) {
+		if (sectorMode) {
+			return (insertFile.length() / CD.SECTOR_SIZE) * 2048;
+		} else {
+			return insertFile.length();
+		}
+	}
+
+	private static int getInsertSectorCount(File insertFile, boolean sectorMode) {
+		return (int) ((getInsertSize(insertFile, sectorMode) + 2047) / 2048);
+	}
+
+	private static int insertDirectory(DiscIndex index, CD cd, Map<Integer, Integer> moves,
+			Map<Integer, CdDirectoryListing> listings, int directory, File inputDirectory, boolean incremental)
+			throws IOException {
+		final String directoryPath = index.getPath(directory);
+		final int directorySector = index.getSector(directory);
+		final int firstChild = index.getFirstChild(directory);
+		final int lastChild = firstChild + index.getChildCount(directory);
+
+		int result = 0;
+
+		for (int entry = firstChild; entry < lastChild; entry++) {
+			if (index.isDirectory(entry)) {
+				continue;
 			}
 
+			final String entryName = index.getName(entry);
+			final int entrySector = index.getSector(entry);
+			final int entrySize = index.getSize(entry);
+			final boolean entrySectorMode = index.isSectorMode(entry);
+
 			final File insertFile = new File(inputDirectory, entryName);
 
 			if (insertFile.exists()) {
-				final long insertFileLength = insertFile.length();
-				final long insertSize;
+				final long startTime = System.nanoTime();
+				final long insertSize = getInsertSize(insertFile, entrySectorMode);
+				final int insertSectorCount = getInsertSectorCount(insertFile, entrySectorMode);
+				final int insertSector = moves.getOrDefault(entry, entrySector);
+
+				if (insertSector != entrySector) {
+					final int templateSector = (index.getSectorCount(entry) == 0) ? directorySector : entrySector;
 
-				if (entrySectorMode) {
-					insertSize = (long) (Math.floor(insertFileLength / CD.SECTOR_SIZE)) * 2048;
-				} else {
-					insertSize = insertFileLength;
+					relocate(cd.getReader(), templateSector, index.getSectorCount(entry), insertSector,
+							insertSectorCount);
+					cd.invalidateCache(insertSector, insertSectorCount);
+
+					System.out.println("Moved " + directoryPath + "\\" + entryName + " from sector " + entrySector
+							+ " to " + insertSector);
 				}
 
-				if ((insertSize / 2048) > (entrySize / 2048)) {
-					System.err.println("File " + directoryPath + "\\" + entryName
-							+ " wants to insert a file bigger than the original but can't");
-				} else {
-					if (insertSize != entrySize) {
-						if (listing.updateNextEntrySimple(entryName, entrySector, (int) insertSize)) {
-							writeDirectoryBack = true;
-						}
+				if ((insertSize != entrySize) || (insertSector != entrySector)) {
+					CdDirectoryListing listing = listings.get(directory);
+
+					if (listing == null) {
+						listing = new CdDirectoryListing(cd, directorySector, index.getSize(directory));
+
+						listings.put(directory, listing);
 					}
 
-					cd.seek(entrySector);
-					cd.overlayWithFile(insertFile, entrySectorMode);
+					listing.updateEntry(index.getRecordPosition(entry), entryName, entrySector, insertSector,
+							(int) insertSize);
+				}
+
+				cd.seek(insertSector);
+
+				final int written = cd.overlayWithFile(insertFile, entrySectorMode, incremental);
+
+				result += written;
+
+				// raw sectors are written as given, so their EDC/ECC may be stale
+				if (entrySectorMode && (written > 0)) {
+					if (insertSector != entrySector) {
+						readdress(cd.getReader(), insertSector, insertSectorCount);
+					}
+
+					RegenerateEdc.regenerate(cd.getReader(), insertSector,
+							(insertSector + (int) (insertSize / 2048)) - 1);
+					cd.invalidateCache(insertSector, insertSectorCount);
+				}
+
+				final Metrics metrics = cd.getMetrics();
+
+				if (metrics != null) {
+					final long nanos = metrics.timer("insert.file").recordSince(startTime);
+
+					metrics.ranking("insert.slowest").record(directoryPath + "\\" + entryName, nanos);
+					metrics.histogram("insert.file.sectors").record(written);
 				}
 			} else {
 				System.err.println("Failed to find file to insert, skipping: " + directoryPath + "\\" + entryName);
 			}
 		}
 
-		if (writeDirectoryBack) {
-			cd.seek(directorySector);
-			// cd.updateSector(listing.getData());
-			throw new IllegalStateException("Not implemented");
+		for (int entry = firstChild; entry < lastChild; entry++) {
+			if (index.isDirectory(entry)) {
+				result += insertDirectory(index, cd, moves, listings, entry,
+						new File(inputDirectory, index.getName(entry)), incremental);
+			}
 		}
+
+		return result;
+	}
+
+	/**
+	 * Formats the sectors a file is moving to from the file's old sectors, so the
+	 * file's data can be overlaid onto them. Old sectors are copied in order, and
+	 * the rest are copies of the first sector with the old last sector moved to
+	 * the end, which keeps the end of file marks on the last sector.
+	 */
+	private static void relocate(SectorReader reader, int oldSector, int oldSectorCount, int newSector,
+			int newSectorCount) throws IOException {
+		final int templateCount = Math.max(1, oldSectorCount);
+		final byte[] old = new byte[templateCount * CD.SECTOR_SIZE];
+		final byte[] sectors = new byte[newSectorCount * CD.SECTOR_SIZE];
+
+		reader.read(oldSector, templateCount, old, 0);
+
+		final byte[] middle = Arrays.copyOf(old, CD.SECTOR_SIZE);
+
+		// a single sector file's only sector is also its last
+		if ((templateCount == 1) && (middle[15] == 2)) {
+			middle[18] &= 0x7E;
+			middle[22] &= 0x7E;
+		}
+
+		for (int i = 0; i < newSectorCount; i++) {
+			final int offset = i * CD.SECTOR_SIZE;
+
+			if (i == (newSectorCount - 1)) {
+				System.arraycopy(old, (templateCount - 1) * CD.SECTOR_SIZE, sectors, offset, CD.SECTOR_SIZE);
+			} else if (i < (templateCount - 1)) {
+				System.arraycopy(old, offset, sectors, offset, CD.SECTOR_SIZE);
+			} else {
+				System.arraycopy(middle, 0, sectors, offset, CD.SECTOR_SIZE);
+			}
+		}
+
+		reader.write(newSector, newSectorCount, sectors, 0);
+
+		readdress(reader, newSector, newSectorCount);
+	}
+
+	/**
+	 * Gives the sectors the header address of where they now are.
+	 */
+	private static void readdress(SectorReader reader, int firstSector, int sectorCount) throws IOException {
+		final byte[] sectors = new byte[sectorCount * CD.SECTOR_SIZE];
+
+		reader.read(firstSector, sectorCount, sectors, 0);
+
+		for (int i = 0; i < sectorCount; i++) {
+			final int offset = i * CD.SECTOR_SIZE;
+
+			if (!Arrays.equals(sectors, offset, offset + CD.SYNC.length, CD.SYNC, 0, CD.SYNC.length)) {
+				continue;
+			}
+
+			// sector addresses start after the 2 second lead in
+			final int address = firstSector + i + 150;
+
+			sectors[offset + 12] = Util.toBcd(address / 75 / 60);
+			sectors[offset + 13] = Util.toBcd((address / 75) % 60);
+			sectors[offset + 14] = Util.toBcd(address % 75);
+
+			Edcre.generate(sectors, offset);
+		}
+
+		reader.write(firstSector, sectorCount, sectors, 0);
+	}
+
+	private static void updateVolumeSize(CD cd, int volumeSize) throws IOException {
+		cd.seek(16);
+		cd.readSector();
+
+		final byte[] data = cd.getCurrentData();
+
+		Util.write32LE(data, 80, volumeSize);
+		Util.write32BE(data, 84, volumeSize);
+
+		cd.seek(16);
+		cd.writeSectorData(1, data, 0);
 	}
 
 }
@@ -0,0 +1,134 @@
+package com.github.rnveach;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.Edcre;
+import com.github.rnveach.sector.SectorReader;
+
+public final class RegenerateEdc {
+
+	private static final int SECTORS_PER_TASK = 1024;
+
+	private RegenerateEdc() {
+	}
+
+	public static void main(String... arguments) throws Exception {
+		if ((arguments == null) || (arguments.length < 1)) {
+			throw new IllegalArgumentException("Missing CD file");
+		}
+		if (arguments.length == 2) {
+			throw new IllegalArgumentException("Missing last sector");
+		}
+
+		final File file = new File(arguments[0]);
+
+		try (SectorReader reader = CD.openReader(file, true)) {
+			final int firstSector;
+			final int lastSector;
+
+			if (arguments.length > 2) {
+				firstSector = Integer.parseInt(arguments[1]);
+				lastSector = Integer.parseInt(arguments[2]);
+			} else {
+				firstSector = 0;
+				lastSector = reader.getSectorCount() - 1;
+			}
+
+			final long startTime = System.nanoTime();
+			final int changed = regenerate(reader, firstSector, lastSector);
+			final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+			System.out.println(String.format("Regenerated %d of %d sectors in %.2f seconds", changed,
+					(lastSector - firstSector) + 1, seconds));
+		}
+	}
+
+	/**
+	 * Recomputes the EDC/ECC of every sector between the first and last sector,
+	 * inclusive, and writes back the ones that were wrong. Returns the number of
+	 * sectors written.
+	 */
+	public static int regenerate(SectorReader reader, int firstSector, int lastSector) throws IOException {
+		if ((firstSector < 0) || (lastSector >= reader.getSectorCount())) {
+			throw new IllegalArgumentException("Sector range " + firstSector + "-" + lastSector
+					+ " is outside the image of " + reader.getSectorCount() + " sectors");
+		}
+		if (lastSector < firstSector) {
+			return 0;
+		}
+
+		try {
+			return ForkJoinPool.commonPool().invoke(new RegenerateTask(reader, firstSector, lastSector + 1));
+		} catch (final UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	private static int regenerateRange(SectorReader reader, int startSector, int endSector) throws IOException {
+		final byte[] buffer = new byte[CD.SECTOR_SIZE];
+		int result = 0;
+
+		for (int sectorNumber = startSector; sectorNumber < endSector; sectorNumber++) {
+			if (reader.isAudio(sectorNumber)) {
+				continue;
+			}
+
+			reader.read(sectorNumber, buffer, 0);
+
+			// empty sectors and sectors without sync have nothing to regenerate
+			if (!Arrays.equals(buffer, 0, CD.SYNC.length, CD.SYNC, 0, CD.SYNC.length)) {
+				continue;
+			}
+
+			if (!Edcre.isEdcValid(buffer, 0) || !Edcre.isEccValid(buffer, 0)) {
+				Edcre.generate(buffer, 0);
+				reader.write(sectorNumber, buffer, 0);
+				result++;
+			}
+		}
+
+		return result;
+	}
+
+	private static final class RegenerateTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient SectorReader reader;
+		private final int startSector;
+		private final int endSector;
+
+		private RegenerateTask(SectorReader reader, int startSector, int endSector) {
+			this.reader = reader;
+			this.startSector = startSector;
+			this.endSector = endSector;
+		}
+
+		@Override
+		protected Integer compute() {
+			if ((this.endSector - this.startSector) <= SECTORS_PER_TASK) {
+				try {
+					return regenerateRange(this.reader.duplicate(), this.startSector, this.endSector);
+				} catch (final IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+
+			final int middle = (this.startSector + this.endSector) >>> 1;
+			final RegenerateTask left = new RegenerateTask(this.reader, this.startSector, middle);
+			final RegenerateTask right = new RegenerateTask(this.reader, middle, this.endSector);
+
+			left.fork();
+
+			return right.compute() + left.join();
+		}
+
+	}
+
+}
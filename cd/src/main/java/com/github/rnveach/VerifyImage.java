@@ -0,0 +1,227 @@
+package com.github.rnveach;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.DiscIndex;
+import com.github.rnveach.sector.Edcre;
+import com.github.rnveach.sector.SectorReader;
+import com.github.rnveach.utils.Util;
+
+public final class VerifyImage {
+
+	private static final int SECTORS_PER_TASK = 1024;
+
+	private static final int NO_SYNC = 0x01;
+	private static final int BAD_MSF = 0x02;
+	private static final int BAD_MODE = 0x04;
+	private static final int BAD_SUB_HEADER = 0x08;
+	private static final int BAD_EDC = 0x10;
+	private static final int BAD_ECC = 0x20;
+	private static final int EMPTY_NOT_ZERO = 0x40;
+
+	private static final String[] PROBLEM_NAMES = { "no sync", "wrong MSF", "unknown mode",
+			"sub header copies differ", "bad EDC", "bad ECC", "empty sector has data" };
+
+	private VerifyImage() {
+	}
+
+	public static void main(String... arguments) throws Exception {
+		if ((arguments == null) || (arguments.length < 1)) {
+			throw new IllegalArgumentException("Missing CD file");
+		}
+
+		final File file = new File(arguments[0]);
+
+		try (SectorReader sectorReader = CD.openReader(file, false)) {
+			final long startTime = System.nanoTime();
+			final byte[] problems = verify(sectorReader);
+			final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+			final int badSectors = print(new CD(sectorReader.duplicate()), problems);
+
+			System.out.println(String.format("Checked %d sectors in %.2f seconds (%.2f MB/s), %d bad",
+					problems.length, seconds,
+					(((long) problems.length * CD.SECTOR_SIZE) / (1024.0 * 1024.0)) / seconds, badSectors));
+		}
+	}
+
+	/**
+	 * Checks every sector of the image and returns the problems found with each,
+	 * indexed by sector number. A sector with no problems has a value of 0.
+	 */
+	public static byte[] verify(SectorReader reader) throws IOException {
+		final byte[] results = new byte[reader.getSectorCount()];
+
+		try {
+			ForkJoinPool.commonPool().invoke(new VerifyTask(reader, results, 0, results.length));
+		} catch (final UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+
+		return results;
+	}
+
+	private static void verifyRange(SectorReader reader, byte[] results, int startSector, int endSector)
+			throws IOException {
+		final byte[] buffer = new byte[CD.SECTOR_SIZE];
+
+		for (int sectorNumber = startSector; sectorNumber < endSector; sectorNumber++) {
+			// audio has no structure to check
+			if (reader.isAudio(sectorNumber)) {
+				continue;
+			}
+
+			reader.read(sectorNumber, buffer, 0);
+
+			results[sectorNumber] = (byte) verifySector(buffer, sectorNumber);
+		}
+	}
+
+	private static int verifySector(byte[] buffer, int sectorNumber) {
+		if (Arrays.equals(buffer, 0, CD.EMPTY_SYNC.length, CD.EMPTY_SYNC, 0, CD.EMPTY_SYNC.length)) {
+			for (int i = CD.EMPTY_SYNC.length; i < CD.SECTOR_SIZE; i++) {
+				if (buffer[i] != 0) {
+					return EMPTY_NOT_ZERO;
+				}
+			}
+
+			return 0;
+		}
+		if (!Arrays.equals(buffer, 0, CD.SYNC.length, CD.SYNC, 0, CD.SYNC.length)) {
+			return NO_SYNC;
+		}
+
+		int result = 0;
+
+		// sector addresses start after the 2 second lead in
+		final int address = sectorNumber + 150;
+
+		if ((buffer[12] != Util.toBcd(address / 75 / 60)) || (buffer[13] != Util.toBcd((address / 75) % 60))
+				|| (buffer[14] != Util.toBcd(address % 75))) {
+			result |= BAD_MSF;
+		}
+
+		if (buffer[15] == 2) {
+			if ((buffer[16] != buffer[20]) || (buffer[17] != buffer[21]) || (buffer[18] != buffer[22])
+					|| (buffer[19] != buffer[23])) {
+				result |= BAD_SUB_HEADER;
+			}
+		} else if (buffer[15] != 1) {
+			result |= BAD_MODE;
+		}
+
+		if (!Edcre.isEdcValid(buffer, 0)) {
+			result |= BAD_EDC;
+		}
+		if (!Edcre.isEccValid(buffer, 0)) {
+			result |= BAD_ECC;
+		}
+
+		return result;
+	}
+
+	private static int print(CD cd, byte[] problems) throws IOException {
+		final DiscIndex index = readIndex(cd);
+		int result = 0;
+		int start = 0;
+
+		while (start < problems.length) {
+			int end = start + 1;
+
+			while ((end < problems.length) && (problems[end] == problems[start])) {
+				end++;
+			}
+
+			if (problems[start] != 0) {
+				result += end - start;
+
+				System.out.println("Sectors " + start + "-" + (end - 1) + " (" + (end - start) + "): "
+						+ getProblemNames(problems[start]) + getOwners(index, start, end));
+			}
+
+			start = end;
+		}
+
+		return result;
+	}
+
+	private static DiscIndex readIndex(CD cd) throws IOException {
+		try {
+			return DiscIndex.build(cd);
+		} catch (final IllegalStateException ex) {
+			System.err.println("Unable to read the directory tree, files will not be listed: " + ex.getMessage());
+
+			return null;
+		}
+	}
+
+	private static String getOwners(DiscIndex index, int startSector, int endSector) {
+		final StringBuilder result = new StringBuilder();
+
+		if (index != null) {
+			for (final int entry : index.findBySectors(startSector, endSector)) {
+				result.append((result.length() == 0) ? " in " : ", ");
+				result.append(index.getDisplayPath(entry));
+			}
+		}
+
+		return result.toString();
+	}
+
+	private static String getProblemNames(int problem) {
+		final StringBuilder result = new StringBuilder();
+
+		for (int i = 0; i < PROBLEM_NAMES.length; i++) {
+			if ((problem & (1 << i)) != 0) {
+				if (result.length() > 0) {
+					result.append(", ");
+				}
+
+				result.append(PROBLEM_NAMES[i]);
+			}
+		}
+
+		return result.toString();
+	}
+
+	private static final class VerifyTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient SectorReader reader;
+		private final byte[] results;
+		private final int startSector;
+		private final int endSector;
+
+		private VerifyTask(SectorReader reader, byte[] results, int startSector, int endSector) {
+			this.reader = reader;
+			this.results = results;
+			this.startSector = startSector;
+			this.endSector = endSector;
+		}
+
+		@Override
+		protected void compute() {
+			if ((this.endSector - this.startSector) <= SECTORS_PER_TASK) {
+				try {
+					verifyRange(this.reader.duplicate(), this.results, this.startSector, this.endSector);
+				} catch (final IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			} else {
+				final int middle = (this.startSector + this.endSector) >>> 1;
+
+				invokeAll(new VerifyTask(this.reader, this.results, this.startSector, middle),
+						new VerifyTask(this.reader, this.results, middle, this.endSector));
+			}
+		}
+
+	}
+
+}
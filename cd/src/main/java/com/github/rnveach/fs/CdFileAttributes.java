@@ -0,0 +1,70 @@
+package com.github.rnveach.fs;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * ISO9660 records only have a recording date, which isn't read into the
+ * {@link com.github.rnveach.sector.DiscIndex}, so every time is the image's
+ * modification time.
+ */
+final class CdFileAttributes implements BasicFileAttributes {
+
+	private final boolean directory;
+
+	private final long size;
+
+	private final FileTime time;
+
+	CdFileAttributes(boolean directory, long size, FileTime time) {
+		this.directory = directory;
+		this.size = size;
+		this.time = time;
+	}
+
+	@Override
+	public FileTime lastModifiedTime() {
+		return this.time;
+	}
+
+	@Override
+	public FileTime lastAccessTime() {
+		return this.time;
+	}
+
+	@Override
+	public FileTime creationTime() {
+		return this.time;
+	}
+
+	@Override
+	public boolean isRegularFile() {
+		return !this.directory;
+	}
+
+	@Override
+	public boolean isDirectory() {
+		return this.directory;
+	}
+
+	@Override
+	public boolean isSymbolicLink() {
+		return false;
+	}
+
+	@Override
+	public boolean isOther() {
+		return false;
+	}
+
+	@Override
+	public long size() {
+		return this.size;
+	}
+
+	@Override
+	public Object fileKey() {
+		return null;
+	}
+
+}
@@ -0,0 +1,363 @@
+package com.github.rnveach.fs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.CdFileChannel;
+import com.github.rnveach.sector.DiscIndex;
+
+/**
+ * This is the ISO9660 tree of a disc image as a read only file system. The
+ * whole tree is read into a {@link DiscIndex} when it is opened, so looking up
+ * and listing paths never touches the image. Files read the same as
+ * {@link com.github.rnveach.ExtractFiles} writes them, so files in sector mode
+ * are whole raw sectors.
+ */
+public final class CdFileSystem extends FileSystem {
+
+	private static final String SEPARATOR = "/";
+
+	private final CdFileSystemProvider provider;
+
+	private final Path image;
+
+	private final CD cd;
+
+	private final DiscIndex index;
+
+	private final FileTime time;
+
+	private final CdPath root;
+
+	private final Set<CdFileChannel> channels = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean open = true;
+
+	CdFileSystem(CdFileSystemProvider provider, Path image, CD cd, DiscIndex index, FileTime time) {
+		this.provider = provider;
+		this.image = image;
+		this.cd = cd;
+		this.index = index;
+		this.time = time;
+		this.root = new CdPath(this, SEPARATOR);
+	}
+
+	/**
+	 * Returns true if the image has an ISO9660 primary volume descriptor. Files
+	 * that aren't disc images at all, whose sectors can't be decoded, aren't.
+	 */
+	static boolean isIsoImage(CD cd) throws IOException {
+		if (cd.getSectorCount() <= 16) {
+			return false;
+		}
+
+		cd.seek(16);
+
+		try {
+			cd.readSector();
+		} catch (final IllegalStateException ex) {
+			return false;
+		}
+
+		final byte[] data = cd.getCurrentData();
+
+		return (data[0] == 1) && "CD001".equals(new String(data, 1, 5, StandardCharsets.US_ASCII));
+	}
+
+	Path getImage() {
+		return this.image;
+	}
+
+	CdPath getRoot() {
+		return this.root;
+	}
+
+	URI toUri(String path) {
+		return URI.create(this.provider.getScheme() + ":" + this.image.toUri() + "!" + path);
+	}
+
+	/**
+	 * Returns the entry of the path in the {@link DiscIndex}, or -1 if there is
+	 * none.
+	 */
+	int find(CdPath path) {
+		ensureOpen();
+
+		return this.index.find(path.getIndexPath());
+	}
+
+	int findExisting(CdPath path) throws NoSuchFileException {
+		final int result = find(path);
+
+		if (result == -1) {
+			throw new NoSuchFileException(path.toString());
+		}
+
+		return result;
+	}
+
+	CdFileAttributes readAttributes(CdPath path) throws NoSuchFileException {
+		final int entry = findExisting(path);
+
+		return new CdFileAttributes(this.index.isDirectory(entry), this.index.getContentSize(entry), this.time);
+	}
+
+	SeekableByteChannel newByteChannel(CdPath path) throws IOException {
+		final int entry = findExisting(path);
+
+		if (this.index.isDirectory(entry)) {
+			throw new IOException("Is a directory: " + path);
+		}
+
+		final CdFileChannel result = CdFileChannel.open(this.cd, this.index, entry);
+
+		// channels closed by their callers are only dropped here
+		this.channels.removeIf(channel -> !channel.isOpen());
+		this.channels.add(result);
+
+		// a close that happened while this was opened wouldn't have seen it
+		if (!this.open) {
+			result.close();
+
+			throw new ClosedFileSystemException();
+		}
+
+		return result;
+	}
+
+	DirectoryStream<Path> newDirectoryStream(CdPath directory, DirectoryStream.Filter<? super Path> filter)
+			throws IOException {
+		final int entry = findExisting(directory);
+
+		if (!this.index.isDirectory(entry)) {
+			throw new NotDirectoryException(directory.toString());
+		}
+
+		final int firstChild = this.index.getFirstChild(entry);
+		final int lastChild = firstChild + this.index.getChildCount(entry);
+		final List<Path> children = new ArrayList<>();
+
+		for (int child = firstChild; child < lastChild; child++) {
+			final Path path = directory.resolve(this.index.getName(child));
+
+			if (filter.accept(path)) {
+				children.add(path);
+			}
+		}
+
+		return new DirectoryStream<Path>() {
+
+			private boolean iterated;
+
+			@Override
+			public Iterator<Path> iterator() {
+				if (this.iterated) {
+					throw new IllegalStateException("Directory stream can only be iterated once");
+				}
+
+				this.iterated = true;
+
+				return children.iterator();
+			}
+
+			@Override
+			public void close() {
+			}
+
+		};
+	}
+
+	private void ensureOpen() {
+		if (!this.open) {
+			throw new ClosedFileSystemException();
+		}
+	}
+
+	@Override
+	public CdFileSystemProvider provider() {
+		return this.provider;
+	}
+
+	/**
+	 * Closes every channel still open on the file system along with the image,
+	 * so their reads fail with a {@link java.nio.channels.ClosedChannelException}
+	 * from then on.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.open) {
+			this.open = false;
+
+			this.provider.remove(this);
+
+			for (final CdFileChannel channel : this.channels) {
+				channel.close();
+			}
+
+			this.channels.clear();
+			this.cd.close();
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.open;
+	}
+
+	@Override
+	public boolean isReadOnly() {
+		return true;
+	}
+
+	@Override
+	public String getSeparator() {
+		return SEPARATOR;
+	}
+
+	@Override
+	public Iterable<Path> getRootDirectories() {
+		return Collections.singletonList(this.root);
+	}
+
+	@Override
+	public Iterable<FileStore> getFileStores() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Set<String> supportedFileAttributeViews() {
+		return Collections.singleton("basic");
+	}
+
+	@Override
+	public CdPath getPath(String first, String... more) {
+		final StringBuilder result = new StringBuilder(first);
+
+		for (final String name : more) {
+			if (!name.isEmpty()) {
+				if (result.length() > 0) {
+					result.append(SEPARATOR);
+				}
+
+				result.append(name);
+			}
+		}
+
+		return new CdPath(this, result.toString());
+	}
+
+	@Override
+	public PathMatcher getPathMatcher(String syntaxAndPattern) {
+		final int split = syntaxAndPattern.indexOf(':');
+
+		if (split < 1) {
+			throw new IllegalArgumentException("Missing syntax: " + syntaxAndPattern);
+		}
+
+		final String syntax = syntaxAndPattern.substring(0, split);
+		final String pattern = syntaxAndPattern.substring(split + 1);
+		final Pattern regex;
+
+		if ("regex".equalsIgnoreCase(syntax)) {
+			regex = Pattern.compile(pattern);
+		} else if ("glob".equalsIgnoreCase(syntax)) {
+			regex = Pattern.compile(toRegex(pattern));
+		} else {
+			throw new UnsupportedOperationException("Unknown syntax: " + syntax);
+		}
+
+		return path -> regex.matcher(path.toString()).matches();
+	}
+
+	/**
+	 * Supports {@code *}, {@code **}, {@code ?}, {@code [...]} and
+	 * {@code {a,b}} without nesting.
+	 */
+	private static String toRegex(String glob) {
+		final StringBuilder result = new StringBuilder();
+		boolean group = false;
+
+		for (int i = 0; i < glob.length(); i++) {
+			final char c = glob.charAt(i);
+
+			switch (c) {
+			case '*':
+				if (((i + 1) < glob.length()) && (glob.charAt(i + 1) == '*')) {
+					result.append(".*");
+					i++;
+				} else {
+					result.append("[^/]*");
+				}
+				break;
+			case '?':
+				result.append("[^/]");
+				break;
+			case '[': {
+				final int end = glob.indexOf(']', i);
+
+				if (end == -1) {
+					throw new IllegalArgumentException("Missing ] in glob: " + glob);
+				}
+
+				String characters = glob.substring(i + 1, end).replace("\\", "\\\\");
+
+				if (characters.startsWith("!")) {
+					characters = "^" + characters.substring(1);
+				}
+
+				result.append('[').append(characters).append(']');
+				i = end;
+				break;
+			}
+			case '{':
+				result.append("(?:");
+				group = true;
+				break;
+			case '}':
+				result.append(')');
+				group = false;
+				break;
+			case ',':
+				result.append(group ? "|" : ",");
+				break;
+			default:
+				result.append(Pattern.quote(String.valueOf(c)));
+				break;
+			}
+		}
+
+		return result.toString();
+	}
+
+	@Override
+	public UserPrincipalLookupService getUserPrincipalLookupService() {
+		throw new UnsupportedOperationException("Disc images have no owners");
+	}
+
+	@Override
+	public WatchService newWatchService() {
+		throw new UnsupportedOperationException("Disc images can't be watched");
+	}
+
+}
@@ -0,0 +1,331 @@
+package com.github.rnveach.fs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.DiscIndex;
+
+/**
+ * This opens disc images as read only {@link CdFileSystem}s. URIs are
+ * {@code cdimage:} followed by the image's URI, and then {@code !} and the path
+ * inside the image, like {@code cdimage:file:///games/disc.bin!/DATA/FILE.BIN}.
+ * An image can also be opened with {@link java.nio.file.FileSystems#newFileSystem(Path, ClassLoader)}.
+ */
+public final class CdFileSystemProvider extends FileSystemProvider {
+
+	public static final String SCHEME = "cdimage";
+
+	private static final String SEPARATOR = "!";
+
+	private final Map<Path, CdFileSystem> fileSystems = new HashMap<>();
+
+	@Override
+	public String getScheme() {
+		return SCHEME;
+	}
+
+	@Override
+	public CdFileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
+		final Path image = getImage(uri);
+
+		synchronized (this.fileSystems) {
+			if (this.fileSystems.containsKey(image)) {
+				throw new FileSystemAlreadyExistsException(uri.toString());
+			}
+
+			final CdFileSystem result = open(image);
+
+			if (result == null) {
+				throw new IllegalArgumentException("Not an ISO9660 disc image: " + image);
+			}
+
+			this.fileSystems.put(image, result);
+
+			return result;
+		}
+	}
+
+	/**
+	 * Opens the image without remembering it, so it can only be reached through
+	 * the file system returned.
+	 */
+	@Override
+	public CdFileSystem newFileSystem(Path path, Map<String, ?> env) throws IOException {
+		final CdFileSystem result = open(path.toRealPath());
+
+		if (result == null) {
+			throw new UnsupportedOperationException("Not an ISO9660 disc image: " + path);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns null if the image has no ISO9660 file system, including when it
+	 * isn't an image that can be opened at all.
+	 */
+	private CdFileSystem open(Path image) throws IOException {
+		final CD cd;
+
+		try {
+			cd = CD.open(image.toFile(), false);
+		} catch (final IllegalStateException ex) {
+			return null;
+		}
+
+		try {
+			if (!CdFileSystem.isIsoImage(cd)) {
+				cd.close();
+
+				return null;
+			}
+
+			return new CdFileSystem(this, image, cd, DiscIndex.build(cd), Files.getLastModifiedTime(image));
+		} catch (final IOException | RuntimeException ex) {
+			cd.close();
+
+			throw ex;
+		}
+	}
+
+	void remove(CdFileSystem fileSystem) {
+		synchronized (this.fileSystems) {
+			this.fileSystems.remove(fileSystem.getImage(), fileSystem);
+		}
+	}
+
+	@Override
+	public CdFileSystem getFileSystem(URI uri) {
+		final Path image;
+
+		try {
+			image = getImage(uri);
+		} catch (final IOException ex) {
+			throw new FileSystemNotFoundException(uri.toString());
+		}
+
+		synchronized (this.fileSystems) {
+			final CdFileSystem result = this.fileSystems.get(image);
+
+			if (result == null) {
+				throw new FileSystemNotFoundException(uri.toString());
+			}
+
+			return result;
+		}
+	}
+
+	@Override
+	public CdPath getPath(URI uri) {
+		final String part = uri.getSchemeSpecificPart();
+		final int split = part.lastIndexOf(SEPARATOR);
+
+		return getFileSystem(uri).getPath((split == -1) ? "/" : part.substring(split + 1));
+	}
+
+	private Path getImage(URI uri) throws IOException {
+		if (!SCHEME.equalsIgnoreCase(uri.getScheme())) {
+			throw new IllegalArgumentException("URI scheme is not " + SCHEME + ": " + uri);
+		}
+
+		final String part = uri.getSchemeSpecificPart();
+		final int split = part.lastIndexOf(SEPARATOR);
+
+		return Paths.get(URI.create((split == -1) ? part : part.substring(0, split))).toRealPath();
+	}
+
+	private static CdPath check(Path path) {
+		if (!(path instanceof CdPath)) {
+			throw new ProviderMismatchException();
+		}
+
+		return (CdPath) path;
+	}
+
+	@Override
+	public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options,
+			FileAttribute<?>... attributes) throws IOException {
+		if (options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND)
+				|| options.contains(StandardOpenOption.CREATE_NEW)
+				|| options.contains(StandardOpenOption.DELETE_ON_CLOSE)) {
+			throw new ReadOnlyFileSystemException();
+		}
+
+		return check(path).getFileSystem().newByteChannel(check(path));
+	}
+
+	@Override
+	public DirectoryStream<Path> newDirectoryStream(Path directory, DirectoryStream.Filter<? super Path> filter)
+			throws IOException {
+		return check(directory).getFileSystem().newDirectoryStream(check(directory), filter);
+	}
+
+	@Override
+	public void createDirectory(Path directory, FileAttribute<?>... attributes) {
+		throw new ReadOnlyFileSystemException();
+	}
+
+	@Override
+	public void delete(Path path) {
+		throw new ReadOnlyFileSystemException();
+	}
+
+	@Override
+	public void copy(Path source, Path target, CopyOption... options) {
+		throw new ReadOnlyFileSystemException();
+	}
+
+	@Override
+	public void move(Path source, Path target, CopyOption... options) {
+		throw new ReadOnlyFileSystemException();
+	}
+
+	@Override
+	public boolean isSameFile(Path path, Path path2) throws IOException {
+		if (path.equals(path2)) {
+			return true;
+		}
+		if (!(path2 instanceof CdPath) || (check(path).getFileSystem() != check(path2).getFileSystem())) {
+			return false;
+		}
+
+		return check(path).toRealPath().equals(check(path2).toRealPath());
+	}
+
+	@Override
+	public boolean isHidden(Path path) {
+		return false;
+	}
+
+	@Override
+	public FileStore getFileStore(Path path) {
+		throw new UnsupportedOperationException("Disc images have no file stores");
+	}
+
+	@Override
+	public void checkAccess(Path path, AccessMode... modes) throws IOException {
+		final CdPath cdPath = check(path);
+
+		cdPath.getFileSystem().findExisting(cdPath);
+
+		for (final AccessMode mode : modes) {
+			if (mode != AccessMode.READ) {
+				throw new AccessDeniedException(path.toString(), null, "Disc images can only be read");
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+		if (type != BasicFileAttributeView.class) {
+			return null;
+		}
+
+		final CdPath cdPath = check(path);
+
+		return (V) new BasicFileAttributeView() {
+
+			@Override
+			public String name() {
+				return "basic";
+			}
+
+			@Override
+			public BasicFileAttributes readAttributes() throws IOException {
+				return cdPath.getFileSystem().readAttributes(cdPath);
+			}
+
+			@Override
+			public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) {
+				throw new ReadOnlyFileSystemException();
+			}
+
+		};
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options)
+			throws IOException {
+		if ((type != BasicFileAttributes.class) && (type != CdFileAttributes.class)) {
+			throw new UnsupportedOperationException("Only basic attributes are supported");
+		}
+
+		return (A) check(path).getFileSystem().readAttributes(check(path));
+	}
+
+	@Override
+	public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options)
+			throws IOException {
+		String names = attributes;
+
+		if (names.startsWith("basic:")) {
+			names = names.substring(6);
+		} else if (names.indexOf(':') != -1) {
+			throw new UnsupportedOperationException("Only basic attributes are supported: " + attributes);
+		}
+
+		final BasicFileAttributes values = check(path).getFileSystem().readAttributes(check(path));
+		final Map<String, Object> all = new LinkedHashMap<>();
+
+		all.put("lastModifiedTime", values.lastModifiedTime());
+		all.put("lastAccessTime", values.lastAccessTime());
+		all.put("creationTime", values.creationTime());
+		all.put("size", values.size());
+		all.put("isRegularFile", values.isRegularFile());
+		all.put("isDirectory", values.isDirectory());
+		all.put("isSymbolicLink", values.isSymbolicLink());
+		all.put("isOther", values.isOther());
+		all.put("fileKey", values.fileKey());
+
+		if ("*".equals(names)) {
+			return all;
+		}
+
+		final Map<String, Object> result = new LinkedHashMap<>();
+
+		for (final String name : names.split(",")) {
+			if (!all.containsKey(name)) {
+				throw new IllegalArgumentException("Unknown attribute: " + name);
+			}
+
+			result.put(name, all.get(name));
+		}
+
+		return result;
+	}
+
+	@Override
+	public void setAttribute(Path path, String attribute, Object value, LinkOption... options) {
+		throw new ReadOnlyFileSystemException();
+	}
+
+}
@@ -0,0 +1,305 @@
+package com.github.rnveach.fs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent.Kind;
+import java.nio.file.WatchEvent.Modifier;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is a path inside a disc image, with {@code /} between names. Paths are
+ * kept as the list of names and whether they start at the root, and are only
+ * checked against the disc when they are used.
+ */
+public final class CdPath implements Path {
+
+	private static final String[] NO_NAMES = new String[0];
+
+	private final CdFileSystem fileSystem;
+
+	private final boolean absolute;
+
+	private final String[] names;
+
+	CdPath(CdFileSystem fileSystem, String path) {
+		this(fileSystem, path.startsWith("/"), split(path));
+	}
+
+	private CdPath(CdFileSystem fileSystem, boolean absolute, String[] names) {
+		this.fileSystem = fileSystem;
+		this.absolute = absolute;
+		this.names = names;
+	}
+
+	private static String[] split(String path) {
+		final List<String> result = new ArrayList<>();
+
+		for (final String name : path.split("/")) {
+			if (!name.isEmpty()) {
+				result.add(name);
+			}
+		}
+
+		return result.toArray(NO_NAMES);
+	}
+
+	/**
+	 * Returns the path as {@link com.github.rnveach.sector.DiscIndex#find(String)}
+	 * expects it, with the root as the empty string.
+	 */
+	String getIndexPath() {
+		final StringBuilder result = new StringBuilder();
+
+		for (final String name : toAbsolutePath().normalize().names) {
+			result.append('\\').append(name);
+		}
+
+		return result.toString();
+	}
+
+	@Override
+	public CdFileSystem getFileSystem() {
+		return this.fileSystem;
+	}
+
+	@Override
+	public boolean isAbsolute() {
+		return this.absolute;
+	}
+
+	@Override
+	public CdPath getRoot() {
+		return this.absolute ? this.fileSystem.getRoot() : null;
+	}
+
+	@Override
+	public CdPath getFileName() {
+		if (this.names.length == 0) {
+			return null;
+		}
+
+		return new CdPath(this.fileSystem, false, new String[] { this.names[this.names.length - 1] });
+	}
+
+	@Override
+	public CdPath getParent() {
+		if ((this.names.length == 0) || ((this.names.length == 1) && !this.absolute)) {
+			return null;
+		}
+
+		return new CdPath(this.fileSystem, this.absolute, Arrays.copyOf(this.names, this.names.length - 1));
+	}
+
+	@Override
+	public int getNameCount() {
+		return this.names.length;
+	}
+
+	@Override
+	public CdPath getName(int index) {
+		if ((index < 0) || (index >= this.names.length)) {
+			throw new IllegalArgumentException("Invalid name index: " + index);
+		}
+
+		return new CdPath(this.fileSystem, false, new String[] { this.names[index] });
+	}
+
+	@Override
+	public CdPath subpath(int beginIndex, int endIndex) {
+		if ((beginIndex < 0) || (beginIndex >= endIndex) || (endIndex > this.names.length)) {
+			throw new IllegalArgumentException("Invalid name range: " + beginIndex + "-" + endIndex);
+		}
+
+		return new CdPath(this.fileSystem, false, Arrays.copyOfRange(this.names, beginIndex, endIndex));
+	}
+
+	@Override
+	public boolean startsWith(Path other) {
+		if (!(other instanceof CdPath)) {
+			return false;
+		}
+
+		final CdPath path = (CdPath) other;
+
+		return (this.fileSystem == path.fileSystem) && (this.absolute == path.absolute)
+				&& (path.names.length <= this.names.length)
+				&& Arrays.equals(this.names, 0, path.names.length, path.names, 0, path.names.length);
+	}
+
+	@Override
+	public boolean startsWith(String other) {
+		return startsWith(this.fileSystem.getPath(other));
+	}
+
+	@Override
+	public boolean endsWith(Path other) {
+		if (!(other instanceof CdPath)) {
+			return false;
+		}
+
+		final CdPath path = (CdPath) other;
+		final int start = this.names.length - path.names.length;
+
+		if ((this.fileSystem != path.fileSystem) || (start < 0)) {
+			return false;
+		}
+		if (path.absolute) {
+			return equals(path);
+		}
+
+		return Arrays.equals(this.names, start, this.names.length, path.names, 0, path.names.length);
+	}
+
+	@Override
+	public boolean endsWith(String other) {
+		return endsWith(this.fileSystem.getPath(other));
+	}
+
+	@Override
+	public CdPath normalize() {
+		final List<String> result = new ArrayList<>();
+
+		for (final String name : this.names) {
+			if (".".equals(name)) {
+				continue;
+			}
+
+			if ("..".equals(name) && !result.isEmpty() && !"..".equals(result.get(result.size() - 1))) {
+				result.remove(result.size() - 1);
+			} else if (!"..".equals(name) || !this.absolute) {
+				result.add(name);
+			}
+		}
+
+		return new CdPath(this.fileSystem, this.absolute, result.toArray(NO_NAMES));
+	}
+
+	@Override
+	public CdPath resolve(Path other) {
+		final CdPath path = check(other);
+
+		if (path.absolute) {
+			return path;
+		}
+
+		final String[] result = Arrays.copyOf(this.names, this.names.length + path.names.length);
+
+		System.arraycopy(path.names, 0, result, this.names.length, path.names.length);
+
+		return new CdPath(this.fileSystem, this.absolute, result);
+	}
+
+	@Override
+	public CdPath resolve(String other) {
+		return resolve(this.fileSystem.getPath(other));
+	}
+
+	@Override
+	public CdPath resolveSibling(String other) {
+		final CdPath parent = getParent();
+
+		return (parent == null) ? this.fileSystem.getPath(other) : parent.resolve(other);
+	}
+
+	@Override
+	public CdPath relativize(Path other) {
+		final CdPath path = check(other);
+
+		if (this.absolute != path.absolute) {
+			throw new IllegalArgumentException("Only paths that are both absolute or both relative can relativize");
+		}
+
+		int common = 0;
+
+		while ((common < this.names.length) && (common < path.names.length)
+				&& this.names[common].equals(path.names[common])) {
+			common++;
+		}
+
+		final List<String> result = new ArrayList<>();
+
+		for (int i = common; i < this.names.length; i++) {
+			result.add("..");
+		}
+		for (int i = common; i < path.names.length; i++) {
+			result.add(path.names[i]);
+		}
+
+		return new CdPath(this.fileSystem, false, result.toArray(NO_NAMES));
+	}
+
+	@Override
+	public URI toUri() {
+		return this.fileSystem.toUri(toAbsolutePath().normalize().toString());
+	}
+
+	@Override
+	public CdPath toAbsolutePath() {
+		return this.absolute ? this : new CdPath(this.fileSystem, true, this.names);
+	}
+
+	@Override
+	public CdPath toRealPath(LinkOption... options) throws IOException {
+		final CdPath result = toAbsolutePath().normalize();
+
+		if (this.fileSystem.find(result) == -1) {
+			throw new NoSuchFileException(toString());
+		}
+
+		return result;
+	}
+
+	@Override
+	public WatchKey register(WatchService watcher, Kind<?>[] events, Modifier... modifiers) {
+		throw new UnsupportedOperationException("Disc images can't be watched");
+	}
+
+	@Override
+	public int compareTo(Path other) {
+		return toString().compareTo(check(other).toString());
+	}
+
+	private CdPath check(Path other) {
+		if (!(other instanceof CdPath) || (((CdPath) other).fileSystem != this.fileSystem)) {
+			throw new ProviderMismatchException();
+		}
+
+		return (CdPath) other;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CdPath)) {
+			return false;
+		}
+
+		final CdPath other = (CdPath) obj;
+
+		return (this.fileSystem == other.fileSystem) && (this.absolute == other.absolute)
+				&& Arrays.equals(this.names, other.names);
+	}
+
+	@Override
+	public int hashCode() {
+		return (Arrays.hashCode(this.names) * 2) + (this.absolute ? 1 : 0);
+	}
+
+	@Override
+	public String toString() {
+		final String result = String.join("/", this.names);
+
+		return this.absolute ? ("/" + result) : result;
+	}
+
+}
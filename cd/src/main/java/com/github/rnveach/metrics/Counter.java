@@ -0,0 +1,28 @@
+package com.github.rnveach.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is a count that any number of threads can add to without contending on
+ * a single value.
+ */
+public final class Counter {
+
+	private final LongAdder value = new LongAdder();
+
+	Counter() {
+	}
+
+	public void increment() {
+		this.value.increment();
+	}
+
+	public void add(long amount) {
+		this.value.add(amount);
+	}
+
+	public long getValue() {
+		return this.value.sum();
+	}
+
+}
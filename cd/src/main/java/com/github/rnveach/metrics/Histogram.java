@@ -0,0 +1,99 @@
+package com.github.rnveach.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This counts values that are not negative in buckets by their highest bit, so
+ * recording never allocates and percentiles are only exact to within a power
+ * of 2. A percentile is given as the top of its bucket, kept within the
+ * smallest and largest values recorded.
+ */
+public final class Histogram {
+
+	private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+	private final AtomicLong max = new AtomicLong();
+
+	Histogram() {
+	}
+
+	public void record(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Histogram values can't be negative");
+		}
+
+		this.buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+		this.count.increment();
+		this.sum.add(value);
+		this.min.accumulateAndGet(value, Math::min);
+		this.max.accumulateAndGet(value, Math::max);
+	}
+
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	public long getSum() {
+		return this.sum.sum();
+	}
+
+	public long getMin() {
+		final long result = this.min.get();
+
+		return (result == Long.MAX_VALUE) ? 0 : result;
+	}
+
+	public long getMax() {
+		return this.max.get();
+	}
+
+	public double getMean() {
+		final long total = getCount();
+
+		return (total == 0) ? 0 : ((double) getSum() / total);
+	}
+
+	/**
+	 * Returns the value that the fraction given, from 0 to 1, of the values are
+	 * at or below.
+	 */
+	public long getPercentile(double fraction) {
+		if ((fraction < 0) || (fraction > 1)) {
+			throw new IllegalArgumentException("Percentile must be from 0 to 1");
+		}
+
+		long total = 0;
+
+		for (int i = 0; i < this.buckets.length(); i++) {
+			total += this.buckets.get(i);
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		final long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+
+		for (int i = 0; i < this.buckets.length(); i++) {
+			seen += this.buckets.get(i);
+
+			if (seen >= rank) {
+				final long top = (i == Long.SIZE) ? Long.MAX_VALUE : ((1L << i) - 1);
+
+				return Math.max(getMin(), Math.min(getMax(), top));
+			}
+		}
+
+		return getMax();
+	}
+
+}
@@ -0,0 +1,198 @@
+package com.github.rnveach.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This holds the counters, timers, histograms and rankings of a run by name,
+ * creating each the first time it is asked for. Everything in it can be used
+ * from any number of threads. Names are dotted, starting with what they
+ * measure, like {@code cd.sectors.read}.
+ *
+ * At the end of a run, {@link #printSummary(PrintStream)} shows everything
+ * with rates per second since the registry was created, and
+ * {@link #writeJson(File)} saves it for comparing with other runs.
+ */
+public final class Metrics {
+
+	public static final int DEFAULT_RANKING_SIZE = 10;
+
+	private final long startTime = System.nanoTime();
+
+	private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+	private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+	private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	private final Map<String, Ranking> rankings = new ConcurrentHashMap<>();
+
+	public Counter counter(String name) {
+		return this.counters.computeIfAbsent(name, key -> new Counter());
+	}
+
+	public Timer timer(String name) {
+		return this.timers.computeIfAbsent(name, key -> new Timer());
+	}
+
+	public Histogram histogram(String name) {
+		return this.histograms.computeIfAbsent(name, key -> new Histogram());
+	}
+
+	public Ranking ranking(String name) {
+		return this.rankings.computeIfAbsent(name, key -> new Ranking(DEFAULT_RANKING_SIZE));
+	}
+
+	public long getElapsedNanos() {
+		return System.nanoTime() - this.startTime;
+	}
+
+	public void printSummary(PrintStream out) {
+		final double seconds = toSeconds(getElapsedNanos());
+
+		out.println(String.format("Metrics after %.3f s", seconds));
+
+		for (final Map.Entry<String, Counter> counter : new TreeMap<>(this.counters).entrySet()) {
+			final long value = counter.getValue().getValue();
+
+			out.println(String.format("\t%s: %d (%.1f/s)", counter.getKey(), value, value / seconds));
+		}
+
+		for (final Map.Entry<String, Timer> timer : new TreeMap<>(this.timers).entrySet()) {
+			final Timer value = timer.getValue();
+
+			out.println(String.format("\t%s: %d in %.3f s, longest %.3f s", timer.getKey(), value.getCount(),
+					toSeconds(value.getTotalNanos()), toSeconds(value.getMaxNanos())));
+		}
+
+		for (final Map.Entry<String, Histogram> histogram : new TreeMap<>(this.histograms).entrySet()) {
+			final Histogram value = histogram.getValue();
+
+			out.println(String.format("\t%s: %d values, min %d, mean %.1f, p50 %d, p90 %d, p99 %d, max %d",
+					histogram.getKey(), value.getCount(), value.getMin(), value.getMean(), value.getPercentile(0.5),
+					value.getPercentile(0.9), value.getPercentile(0.99), value.getMax()));
+		}
+
+		for (final Map.Entry<String, Ranking> ranking : new TreeMap<>(this.rankings).entrySet()) {
+			out.println("\t" + ranking.getKey() + ":");
+
+			for (final Ranking.Entry entry : ranking.getValue().getEntries()) {
+				out.println(String.format("\t\t%.3f s %s", toSeconds(entry.getNanos()), entry.getName()));
+			}
+		}
+	}
+
+	private static double toSeconds(long nanos) {
+		return nanos / 1_000_000_000.0;
+	}
+
+	/**
+	 * Writes everything as one JSON object, with times in nanoseconds and names in
+	 * order so runs can be compared line by line.
+	 */
+	public void writeJson(File file) throws IOException {
+		try (FileWriter fw = new FileWriter(file, StandardCharsets.UTF_8);
+				BufferedWriter writer = new BufferedWriter(fw)) {
+			writeJson(writer);
+		}
+	}
+
+	public void writeJson(Writer writer) throws IOException {
+		writer.write("{\n");
+		writer.write("\t\"elapsedNanos\": " + getElapsedNanos() + ",\n");
+
+		writer.write("\t\"counters\": {");
+
+		String separator = "\n";
+
+		for (final Map.Entry<String, Counter> counter : new TreeMap<>(this.counters).entrySet()) {
+			writer.write(separator + "\t\t" + quote(counter.getKey()) + ": " + counter.getValue().getValue());
+
+			separator = ",\n";
+		}
+
+		writer.write("\n\t},\n");
+		writer.write("\t\"timers\": {");
+
+		separator = "\n";
+
+		for (final Map.Entry<String, Timer> timer : new TreeMap<>(this.timers).entrySet()) {
+			final Timer value = timer.getValue();
+
+			writer.write(separator + "\t\t" + quote(timer.getKey()) + ": { \"count\": " + value.getCount()
+					+ ", \"totalNanos\": " + value.getTotalNanos() + ", \"maxNanos\": " + value.getMaxNanos() + " }");
+
+			separator = ",\n";
+		}
+
+		writer.write("\n\t},\n");
+		writer.write("\t\"histograms\": {");
+
+		separator = "\n";
+
+		for (final Map.Entry<String, Histogram> histogram : new TreeMap<>(this.histograms).entrySet()) {
+			final Histogram value = histogram.getValue();
+
+			writer.write(separator + "\t\t" + quote(histogram.getKey()) + ": { \"count\": " + value.getCount()
+					+ ", \"sum\": " + value.getSum() + ", \"min\": " + value.getMin() + ", \"p50\": "
+					+ value.getPercentile(0.5) + ", \"p90\": " + value.getPercentile(0.9) + ", \"p99\": "
+					+ value.getPercentile(0.99) + ", \"max\": " + value.getMax() + " }");
+
+			separator = ",\n";
+		}
+
+		writer.write("\n\t},\n");
+		writer.write("\t\"rankings\": {");
+
+		separator = "\n";
+
+		for (final Map.Entry<String, Ranking> ranking : new TreeMap<>(this.rankings).entrySet()) {
+			writer.write(separator + "\t\t" + quote(ranking.getKey()) + ": [");
+
+			String entrySeparator = "\n";
+
+			for (final Ranking.Entry entry : ranking.getValue().getEntries()) {
+				writer.write(entrySeparator + "\t\t\t{ \"name\": " + quote(entry.getName()) + ", \"nanos\": "
+						+ entry.getNanos() + " }");
+
+				entrySeparator = ",\n";
+			}
+
+			writer.write("\n\t\t]");
+
+			separator = ",\n";
+		}
+
+		writer.write("\n\t}\n");
+		writer.write("}\n");
+	}
+
+	private static String quote(String text) {
+		final StringBuilder result = new StringBuilder(text.length() + 2);
+
+		result.append('"');
+
+		for (int i = 0; i < text.length(); i++) {
+			final char character = text.charAt(i);
+
+			if ((character == '"') || (character == '\\')) {
+				result.append('\\').append(character);
+			} else if (character < 0x20) {
+				result.append(String.format("\\u%04x", (int) character));
+			} else {
+				result.append(character);
+			}
+		}
+
+		return result.append('"').toString();
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.github.rnveach.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This keeps the names with the longest times recorded, in nanoseconds, like
+ * the slowest files of a run. Only the number of names given are held at once.
+ */
+public final class Ranking {
+
+	private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::getNanos);
+
+	private final int size;
+
+	private final PriorityQueue<Entry> entries;
+
+	Ranking(int size) {
+		this.size = size;
+		this.entries = new PriorityQueue<>(size + 1, ORDER);
+	}
+
+	public synchronized void record(String name, long nanos) {
+		if ((this.entries.size() < this.size) || (nanos > this.entries.peek().nanos)) {
+			this.entries.add(new Entry(name, nanos));
+
+			if (this.entries.size() > this.size) {
+				this.entries.poll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the names held, longest first.
+	 */
+	public synchronized List<Entry> getEntries() {
+		final List<Entry> result = new ArrayList<>(this.entries);
+
+		result.sort(ORDER.reversed());
+
+		return result;
+	}
+
+	public static final class Entry {
+
+		private final String name;
+		private final long nanos;
+
+		private Entry(String name, long nanos) {
+			this.name = name;
+			this.nanos = nanos;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public long getNanos() {
+			return this.nanos;
+		}
+
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.github.rnveach.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This adds up how many times something was done and how long it took, in
+ * nanoseconds, keeping the longest single time.
+ */
+public final class Timer {
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	Timer() {
+	}
+
+	public void record(long nanos) {
+		this.count.increment();
+		this.totalNanos.add(nanos);
+		this.maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * Records the time since the {@link System#nanoTime()} given and returns it.
+	 */
+	public long recordSince(long startTime) {
+		final long result = System.nanoTime() - startTime;
+
+		record(result);
+
+		return result;
+	}
+
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	public long getTotalNanos() {
+		return this.totalNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return this.maxNanos.get();
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.github.rnveach.report;
+
+import java.io.IOException;
+
+import com.github.rnveach.sector.Sector;
+
+/**
+ * This writes fixed size little endian records after a small header, so the
+ * report can be read back with plain offsets.
+ *
+ * <pre>
+ * header:  "SINF", version (2), record size (2)
+ * record:  sector (4), count (4), minute, second, frame, mode, form,
+ *          has sub header, file, channel, sub-mode, coding, reserved (2)
+ * </pre>
+ */
+public final class BinarySectorReport implements SectorReport {
+
+	public static final int MAGIC = 0x464E4953;
+	public static final int VERSION = 1;
+	public static final int RECORD_SIZE = 20;
+
+	private final ReportOutput output;
+
+	public BinarySectorReport(ReportOutput output) {
+		this.output = output;
+	}
+
+	@Override
+	public void start() throws IOException {
+		this.output.writeIntLE(MAGIC).writeShortLE(VERSION).writeShortLE(RECORD_SIZE);
+	}
+
+	@Override
+	public void write(SectorRecord record, Sector sector) throws IOException {
+		this.output.writeIntLE(record.getSectorNumber()).writeIntLE(record.getCount())
+				.writeByte(record.getMinute()).writeByte(record.getSecond()).writeByte(record.getFrame())
+				.writeByte(record.getMode()).writeByte(record.getForm()).writeByte(record.hasSubHeader() ? 1 : 0)
+				.writeByte(record.getFileNumber()).writeByte(record.getChannelNumber())
+				.writeByte(record.getSubMode()).writeByte(record.getCodingInfo()).writeShortLE(0);
+	}
+
+	@Override
+	public void finish() {
+	}
+
+}
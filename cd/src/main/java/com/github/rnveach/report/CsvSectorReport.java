@@ -0,0 +1,45 @@
+package com.github.rnveach.report;
+
+import java.io.IOException;
+
+import com.github.rnveach.sector.Sector;
+
+/**
+ * This writes one comma separated line per sector or run, with a header line
+ * first. Sub header columns are empty for sectors without one.
+ */
+public final class CsvSectorReport implements SectorReport {
+
+	private final ReportOutput output;
+
+	public CsvSectorReport(ReportOutput output) {
+		this.output = output;
+	}
+
+	@Override
+	public void start() throws IOException {
+		this.output.print("sector,count,minute,second,frame,mode,form,file,channel,submode,coding").println();
+	}
+
+	@Override
+	public void write(SectorRecord record, Sector sector) throws IOException {
+		this.output.print(record.getSectorNumber()).print(',').print(record.getCount()).print(',')
+				.printHex(record.getMinute(), 2).print(',').printHex(record.getSecond(), 2).print(',')
+				.printHex(record.getFrame(), 2).print(',').print(record.getMode()).print(',').print(record.getForm())
+				.print(',');
+
+		if (record.hasSubHeader()) {
+			this.output.print(record.getFileNumber()).print(',').print(record.getChannelNumber()).print(',')
+					.printHex(record.getSubMode(), 2).print(',').printHex(record.getCodingInfo(), 2);
+		} else {
+			this.output.print(",,,");
+		}
+
+		this.output.println();
+	}
+
+	@Override
+	public void finish() {
+	}
+
+}
@@ -0,0 +1,184 @@
+package com.github.rnveach.report;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This is a buffered ASCII and little endian writer over a channel. Numbers are
+ * converted with lookup tables into a reused scratch buffer instead of through
+ * {@link String#format}, and nothing reaches the channel until the buffer is
+ * full.
+ */
+public final class ReportOutput implements Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+	private final WritableByteChannel channel;
+
+	private final boolean closeChannel;
+
+	private final ByteBuffer buffer;
+
+	private final byte[] digits = new byte[20];
+
+	public ReportOutput(WritableByteChannel channel, boolean closeChannel) {
+		this(channel, closeChannel, DEFAULT_BUFFER_SIZE);
+	}
+
+	public ReportOutput(WritableByteChannel channel, boolean closeChannel, int bufferSize) {
+		this.channel = channel;
+		this.closeChannel = closeChannel;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+	}
+
+	public ReportOutput print(String text) throws IOException {
+		final int length = text.length();
+
+		for (int i = 0; i < length; i++) {
+			ensure(1);
+
+			this.buffer.put((byte) text.charAt(i));
+		}
+
+		return this;
+	}
+
+	public ReportOutput print(char character) throws IOException {
+		ensure(1);
+
+		this.buffer.put((byte) character);
+
+		return this;
+	}
+
+	public ReportOutput print(long number) throws IOException {
+		long remaining = number;
+		int position = this.digits.length;
+
+		// negative numbers are converted as negative so the minimum value works
+		if (remaining > 0) {
+			remaining = -remaining;
+		}
+
+		do {
+			this.digits[--position] = HEX_DIGITS[(int) -(remaining % 10)];
+			remaining /= 10;
+		} while (remaining != 0);
+
+		if (number < 0) {
+			print('-');
+		}
+
+		return writeDigits(position);
+	}
+
+	/**
+	 * Prints the number as {@code 0x} followed by the fewest upper case hex digits,
+	 * the same as {@code Util.hex}.
+	 */
+	public ReportOutput printHex(long number) throws IOException {
+		long remaining = number;
+		int position = this.digits.length;
+
+		do {
+			this.digits[--position] = HEX_DIGITS[(int) (remaining & 0xF)];
+			remaining >>>= 4;
+		} while (remaining != 0);
+
+		print('0');
+		print('x');
+
+		return writeDigits(position);
+	}
+
+	/**
+	 * Prints the lowest digits of the number as zero padded upper case hex without
+	 * a prefix.
+	 */
+	public ReportOutput printHex(int number, int size) throws IOException {
+		ensure(size);
+
+		for (int shift = (size - 1) * 4; shift >= 0; shift -= 4) {
+			this.buffer.put(HEX_DIGITS[(number >>> shift) & 0xF]);
+		}
+
+		return this;
+	}
+
+	public ReportOutput println() throws IOException {
+		ensure(LINE_SEPARATOR.length);
+
+		this.buffer.put(LINE_SEPARATOR);
+
+		return this;
+	}
+
+	public ReportOutput writeByte(int value) throws IOException {
+		ensure(1);
+
+		this.buffer.put((byte) value);
+
+		return this;
+	}
+
+	public ReportOutput writeShortLE(int value) throws IOException {
+		ensure(2);
+
+		this.buffer.put((byte) value);
+		this.buffer.put((byte) (value >> 8));
+
+		return this;
+	}
+
+	public ReportOutput writeIntLE(int value) throws IOException {
+		ensure(4);
+
+		this.buffer.put((byte) value);
+		this.buffer.put((byte) (value >> 8));
+		this.buffer.put((byte) (value >> 16));
+		this.buffer.put((byte) (value >> 24));
+
+		return this;
+	}
+
+	private ReportOutput writeDigits(int position) throws IOException {
+		ensure(this.digits.length - position);
+
+		this.buffer.put(this.digits, position, this.digits.length - position);
+
+		return this;
+	}
+
+	private void ensure(int length) throws IOException {
+		if (this.buffer.remaining() < length) {
+			flush();
+		}
+	}
+
+	public void flush() throws IOException {
+		this.buffer.flip();
+
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+
+		this.buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+
+		if (this.closeChannel) {
+			this.channel.close();
+		}
+	}
+
+}
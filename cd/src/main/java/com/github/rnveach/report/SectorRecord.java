@@ -0,0 +1,123 @@
+package com.github.rnveach.report;
+
+import com.github.rnveach.sector.Sector;
+
+/**
+ * This is the header information of one sector, or of a run of sectors that
+ * all have the same type. A run keeps the address of its first sector.
+ */
+public final class SectorRecord {
+
+	private int sectorNumber;
+	private int count;
+
+	private int minute;
+	private int second;
+	private int frame;
+	private int mode;
+	private int form;
+	private boolean audio;
+
+	private boolean subHeader;
+	private int fileNumber;
+	private int channelNumber;
+	private int subMode;
+	private int codingInfo;
+
+	public void set(int sectorNumber, Sector sector) {
+		this.sectorNumber = sectorNumber;
+		this.count = 1;
+
+		this.minute = sector.getMinute();
+		this.second = sector.getSecond();
+		this.frame = sector.getFrame();
+		this.mode = sector.getMode();
+		this.form = sector.getForm();
+		this.audio = sector.isAudio();
+
+		this.subHeader = sector.hasSubHeader();
+
+		if (this.subHeader) {
+			this.fileNumber = sector.getFileNumber();
+			this.channelNumber = sector.getChannelNumber();
+			this.subMode = sector.getSubMode();
+			this.codingInfo = sector.getCodingInfo();
+		} else {
+			this.fileNumber = 0;
+			this.channelNumber = 0;
+			this.subMode = 0;
+			this.codingInfo = 0;
+		}
+	}
+
+	/**
+	 * Sectors are the same type when everything but their address matches.
+	 */
+	public boolean isSameType(SectorRecord other) {
+		return (this.mode == other.mode) && (this.form == other.form) && (this.audio == other.audio)
+				&& (this.subHeader == other.subHeader)
+				&& (this.fileNumber == other.fileNumber) && (this.channelNumber == other.channelNumber)
+				&& (this.subMode == other.subMode) && (this.codingInfo == other.codingInfo);
+	}
+
+	public void addToRun() {
+		this.count++;
+	}
+
+	public int getSectorNumber() {
+		return this.sectorNumber;
+	}
+
+	public int getLastSectorNumber() {
+		return this.sectorNumber + this.count - 1;
+	}
+
+	public int getCount() {
+		return this.count;
+	}
+
+	public int getMinute() {
+		return this.minute;
+	}
+
+	public int getSecond() {
+		return this.second;
+	}
+
+	public int getFrame() {
+		return this.frame;
+	}
+
+	public int getMode() {
+		return this.mode;
+	}
+
+	public int getForm() {
+		return this.form;
+	}
+
+	public boolean isAudio() {
+		return this.audio;
+	}
+
+	public boolean hasSubHeader() {
+		return this.subHeader;
+	}
+
+	public int getFileNumber() {
+		return this.fileNumber;
+	}
+
+	public int getChannelNumber() {
+		return this.channelNumber;
+	}
+
+	public int getSubMode() {
+		return this.subMode;
+	}
+
+	public int getCodingInfo() {
+		return this.codingInfo;
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.github.rnveach.report;
+
+import java.io.IOException;
+
+import com.github.rnveach.sector.Sector;
+
+/**
+ * This formats sectors into a {@link ReportOutput}. When runs are collapsed the
+ * sector is {@code null} and the record covers the whole run.
+ */
+public interface SectorReport {
+
+	void start() throws IOException;
+
+	void write(SectorRecord record, Sector sector) throws IOException;
+
+	void finish() throws IOException;
+
+}
@@ -0,0 +1,173 @@
+package com.github.rnveach.report;
+
+import java.io.IOException;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.Sector;
+import com.github.rnveach.utils.Util;
+
+/**
+ * This is the readable report. Each sector is printed in full, or each run of
+ * sectors is printed as a single summary line when collapsed.
+ */
+public final class TextSectorReport implements SectorReport {
+
+	private static final String[] SUB_MODE_NAMES = { //
+			"End of Record", "Video", "Audio", "Data", "Trigger", "Form 2", "Real Time", "End of File" //
+	};
+
+	private final ReportOutput output;
+
+	private final boolean collapse;
+
+	public TextSectorReport(ReportOutput output, boolean collapse) {
+		this.output = output;
+		this.collapse = collapse;
+	}
+
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public void write(SectorRecord record, Sector sector) throws IOException {
+		if (this.collapse) {
+			writeSummary(record);
+		} else {
+			writeSector(record, sector);
+		}
+	}
+
+	private void writeSummary(SectorRecord record) throws IOException {
+		this.output.print("Sectors #").print(record.getSectorNumber()).print("-#").print(record.getLastSectorNumber())
+				.print(" (").print(record.getCount()).print("): ");
+
+		if (record.isAudio()) {
+			this.output.print("Audio");
+		} else {
+			this.output.print("Mode ").print(record.getMode());
+		}
+
+		if (record.getMode() == 2) {
+			this.output.print(" Form ").print(record.getForm());
+		}
+
+		if (record.hasSubHeader()) {
+			this.output.print(", File ").print(record.getFileNumber()).print(", Channel ")
+					.print(record.getChannelNumber()).print(", Sub-Mode ").printHex(record.getSubMode())
+					.print(", Encoding ").printHex(record.getCodingInfo());
+		}
+
+		this.output.println();
+	}
+
+	// https://github.com/libyal/libodraw/blob/main/documentation/Optical%20disc%20RAW%20format.asciidoc
+
+	private void writeSector(SectorRecord record, Sector sector) throws IOException {
+		this.output.print("Sector #").print(record.getSectorNumber()).print(" (")
+				.printHex((long) record.getSectorNumber() * CD.SECTOR_SIZE).print(')').println();
+
+		this.output.print("\tHeader").println();
+
+		this.output.print("\t\tMinute: ").printHex(record.getMinute()).println();
+		this.output.print("\t\tSecond: ").printHex(record.getSecond()).println();
+		this.output.print("\t\tFrame: ").printHex(record.getFrame()).println();
+
+		this.output.print("\t\tMode: ").print(record.getMode()).println();
+
+		if (record.getMode() == 2) {
+			writeMode2(record, sector);
+		}
+
+		this.output.println();
+	}
+
+	private void writeMode2(SectorRecord record, Sector sector) throws IOException {
+		final int form = record.getForm();
+
+		this.output.print("\t\tForm: ").print(form).println();
+		this.output.println();
+
+		if (form == 0) {
+			this.output.println();
+			this.output.print("\t\tUser Data (2336):").println();
+
+			writeHexTable("\t\t\t", sector.getBuffer(), sector.getUserDataOffset(), sector.getUserDataLength());
+		} else {
+			this.output.print("\tSub Header").println();
+			this.output.print("\t\tFile Number: ").print(record.getFileNumber()).println();
+			this.output.print("\t\tChannel Number: ").print(record.getChannelNumber()).println();
+
+			final int subMode = record.getSubMode();
+
+			this.output.print("\t\tSub-Mode: ").printHex(subMode).println();
+
+			for (int i = 0; i < SUB_MODE_NAMES.length; i++) {
+				if ((subMode & (1 << i)) != 0) {
+					this.output.print("\t\t\t").print(SUB_MODE_NAMES[i]).println();
+				}
+			}
+
+			final int encoding = record.getCodingInfo();
+
+			this.output.print("\t\tEncoding: ").printHex(encoding).println();
+
+			switch (encoding) {
+			case 0:
+				this.output.print("\t\t\t16-bit ADPCM").println();
+				break;
+			case 1:
+				this.output.print("\t\t\t8-bit ADPCM").println();
+				break;
+			case 2:
+				this.output.print("\t\t\t12-bit ADPCM").println();
+				break;
+			case 3:
+				this.output.print("\t\t\t16-bit ADPCM").println();
+				break;
+			default:
+				this.output.print("\t\t\tReserved").println();
+				break;
+			}
+
+			// the sub header is written twice
+			this.output.print("\t\tRepeat: ").printHex(
+					Integer.toUnsignedLong(Util.read32LE(sector.getBuffer(), Sector.SUB_HEADER_OFFSET + 4))).println();
+
+			if (form == 1) {
+				this.output.println();
+				this.output.print("\t\tUser Data (2048):").println();
+
+				this.output.println();
+				this.output.print("\t\tEDC:").println();
+
+				this.output.println();
+				this.output.print("\t\tEDC/ECC (276):").println();
+			} else {
+				this.output.println();
+				this.output.print("\t\tUser Data (2324)").println();
+
+				this.output.println();
+				this.output.print("\t\tEDC:").println();
+			}
+		}
+	}
+
+	private void writeHexTable(String lineStart, byte[] data, int offset, int length) throws IOException {
+		for (int i = 0; i < length;) {
+			this.output.print(lineStart);
+
+			for (int j = 0; (j < 16) && (i < length); j++) {
+				this.output.printHex(data[offset + i], 2).print(' ');
+				i++;
+			}
+
+			this.output.println();
+		}
+	}
+
+	@Override
+	public void finish() {
+	}
+
+}
@@ -1,20 +1,26 @@
 package com.github.rnveach.sector;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public final class CD {
+import com.github.rnveach.metrics.Counter;
+import com.github.rnveach.metrics.Metrics;
+
+public final class CD implements Closeable {
 
 	public static final int SECTOR_SIZE = 2352;
 
-	private static final int WRITE_BUFFER_LENGTH = CD.SECTOR_SIZE * 5;
-	private static final byte[] WRITE_BUFFER = new byte[WRITE_BUFFER_LENGTH];
+	/** Enough for the descriptors and the directories of a typical disc. */
+	public static final int DEFAULT_CACHE_SIZE = 64;
 
 	public static final byte[] EMPTY_SYNC = new byte[] { //
 			0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 //
@@ -25,250 +31,451 @@ public final class CD {
 			(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00 //
 	};
 
-	private static final byte[] BUFFER_SYNC = new byte[12];
+	private final byte[] buffer = new byte[SECTOR_SIZE];
+	private final Sector sector = new Sector(this.buffer);
 
 	private final byte[] mode2Sh = new byte[8];
 
-	private final byte[] mode0Data = new byte[2352];
-	private final byte[] mode1Data = new byte[2048];
-	private final byte[] mode2Form0Data = new byte[2336];
-	private final byte[] mode2Form1Data = new byte[2048];
-	private final byte[] mode2Form2Data = new byte[2324];
-
-	private final byte[] edcData = new byte[4];
-	private final byte[] eccData = new byte[276];
+	private final byte[] previous = new byte[SECTOR_SIZE];
 
-	private final RandomAccessFile reader;
+	private final SectorReader reader;
 
 	private int currentSectorNumber;
 
-	private int sectorMode;
-	private int sectorModeForm;
-	private int sectorMinute;
-	private int sectorSecond;
-	private int sectorFrame;
+	private Map<Integer, byte[]> cache;
+
+	private int cacheSize;
+
+	private long cacheHits;
+
+	private long cacheMisses;
+
+	private Metrics metrics;
+
+	private Counter sectorsRead;
+
+	private Counter sectorsWritten;
+
+	private Counter seeks;
 
 	public CD(RandomAccessFile reader) {
+		this(new FileSectorReader(reader));
+	}
+
+	public CD(SectorReader reader) {
 		this.reader = reader;
 	}
 
-	public void seek(int sectorNumber) throws IOException {
-		this.reader.seek(sectorNumber * SECTOR_SIZE);
+	public static CD mapped(RandomAccessFile file, boolean writable) throws IOException {
+		return new CD(new MappedSectorReader(file.getChannel(), writable));
+	}
+
+	public static CD open(File file, boolean writable) throws IOException {
+		return new CD(openReader(file, writable));
+	}
+
+	/**
+	 * Opens the image with a {@link ReadAheadSectorReader} of the depth given in
+	 * front of it, or none if the depth is 0.
+	 */
+	public static CD open(File file, boolean writable, int readAhead) throws IOException {
+		final SectorReader reader = openReader(file, writable);
+
+		if (readAhead == 0) {
+			return new CD(reader);
+		}
+
+		return new CD(new ReadAheadSectorReader(reader, readAhead));
+	}
+
+	/**
+	 * Opens a {@code .cue} sheet as a {@link DiscLayout}, a compressed image as a
+	 * {@link CompressedSectorReader} and anything else as a single track image.
+	 */
+	public static SectorReader openReader(File file, boolean writable) throws IOException {
+		final String name = file.getName().toLowerCase();
+
+		if (name.endsWith(".cue")) {
+			return DiscLayout.open(file, writable);
+		}
+		if (name.endsWith(CompressedSectorReader.EXTENSION)) {
+			if (writable) {
+				throw new IllegalStateException("Compressed images can't be written");
+			}
+
+			return CompressedSectorReader.open(file);
+		}
+
+		final RandomAccessFile image = new RandomAccessFile(file, writable ? "rw" : "r");
+
+		try {
+			return new MappedSectorReader(image.getChannel(), writable);
+		} catch (final IOException | RuntimeException ex) {
+			image.close();
+
+			throw ex;
+		}
+	}
+
+	public CD duplicate() {
+		final CD result = new CD(this.reader.duplicate());
+
+		result.currentSectorNumber = this.currentSectorNumber;
+		result.setCacheSize(this.cacheSize);
+		result.setMetrics(this.metrics);
+
+		return result;
+	}
+
+	/**
+	 * Counts the sectors read and written through this and its duplicates into
+	 * the registry given, or stops counting if null. Only seeks that move away
+	 * from the next sector are counted.
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+
+		if (metrics == null) {
+			this.sectorsRead = null;
+			this.sectorsWritten = null;
+			this.seeks = null;
+		} else {
+			this.sectorsRead = metrics.counter("cd.sectors.read");
+			this.sectorsWritten = metrics.counter("cd.sectors.written");
+			this.seeks = metrics.counter("cd.seeks");
+		}
+	}
+
+	public Metrics getMetrics() {
+		return this.metrics;
+	}
+
+	public void seek(int sectorNumber) {
+		if ((this.seeks != null) && (sectorNumber != this.currentSectorNumber)) {
+			this.seeks.increment();
+		}
+
 		this.currentSectorNumber = sectorNumber;
 	}
 
-	public void readSector() throws IOException {
-		if (this.reader.read(BUFFER_SYNC) != BUFFER_SYNC.length) {
-			throw new IllegalStateException("Failed to fully read sync");
+	private void countRead(int sectorCount) {
+		if (this.sectorsRead != null) {
+			this.sectorsRead.add(sectorCount);
 		}
+	}
 
-		if (Arrays.equals(BUFFER_SYNC, EMPTY_SYNC)) {
-			this.sectorMode = 0;
-			this.sectorModeForm = 0;
-			this.sectorMinute = 0;
-			this.sectorSecond = 0;
-			this.sectorFrame = 0;
-
-			// skip rest
-			this.reader.skipBytes(SECTOR_SIZE - SYNC.length);
-		} else if (Arrays.equals(BUFFER_SYNC, SYNC)) {
-			this.sectorMinute = this.reader.read();
-			this.sectorSecond = this.reader.read();
-			this.sectorFrame = this.reader.read();
-			this.sectorMode = this.reader.read();
-
-			switch (this.sectorMode) {
-			case 1:
-				this.sectorModeForm = 0;
-				this.reader.read(this.mode1Data);
-				this.reader.read(this.edcData);
-				this.reader.skipBytes(8);
-				this.reader.read(this.eccData);
-				break;
-			case 2:
-				this.sectorModeForm = identifyMode2Form();
+	private void countWritten(int sectorCount) {
+		if (this.sectorsWritten != null) {
+			this.sectorsWritten.add(sectorCount);
+		}
+	}
 
-				switch (this.sectorModeForm) {
-				case 0:
-					System.arraycopy(this.mode2Sh, 0, this.mode2Form0Data, 0, this.mode2Form0Data.length);
-					this.reader.read(this.mode2Form0Data, this.mode2Sh.length,
-							this.mode2Form0Data.length - this.mode2Sh.length);
-					break;
-				case 1:
-					this.reader.read(this.mode2Form1Data);
-					this.reader.read(this.edcData);
-					this.reader.read(this.eccData);
-					break;
-				case 2:
-					this.reader.read(this.mode2Form2Data);
-					this.reader.read(this.edcData);
-					break;
-				default:
-					throw new IllegalStateException("Unknown sector mode 2 form: " + this.sectorModeForm);
+	/**
+	 * Keeps up to the number of sectors given that were read with
+	 * {@link #readSector()} or {@link #readSectorData(int, byte[], int)}, dropping
+	 * the least recently used first, or turns it off if 0. Sectors written through
+	 * this are dropped from it, anything written straight to the reader needs
+	 * {@link #invalidateCache(int, int)}. Duplicates get a cache of their own.
+	 */
+	public void setCacheSize(int sectors) {
+		if (sectors < 0) {
+			throw new IllegalArgumentException("Cache size can't be negative");
+		}
+
+		this.cacheSize = sectors;
+
+		if (sectors == 0) {
+			this.cache = null;
+		} else {
+			this.cache = new LinkedHashMap<Integer, byte[]>(Math.min(sectors, 1024) * 2, 0.75f, true) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+					return (size() > CD.this.cacheSize);
 				}
-				break;
-			default:
-				throw new IllegalStateException("Unknown sector mode: " + this.sectorMode);
+
+			};
+		}
+	}
+
+	public void invalidateCache(int firstSector, int sectorCount) {
+		if (this.cache != null) {
+			for (int i = 0; i < sectorCount; i++) {
+				this.cache.remove(firstSector + i);
 			}
+		}
+	}
+
+	public long getCacheHits() {
+		return this.cacheHits;
+	}
+
+	public long getCacheMisses() {
+		return this.cacheMisses;
+	}
+
+	private void readCached(int sectorNumber, byte[] destination, int offset) throws IOException {
+		byte[] cached = this.cache.get(sectorNumber);
+
+		if (cached == null) {
+			this.cacheMisses++;
+
+			cached = new byte[SECTOR_SIZE];
+
+			this.reader.read(sectorNumber, cached, 0);
+			this.cache.put(sectorNumber, cached);
+		} else {
+			this.cacheHits++;
+		}
+
+		System.arraycopy(cached, 0, destination, offset, SECTOR_SIZE);
+	}
+
+	public void readSector() throws IOException {
+		if (this.cache == null) {
+			this.reader.read(this.currentSectorNumber, this.buffer, 0);
 		} else {
-			throw new IllegalStateException("Sector has no sync");
+			readCached(this.currentSectorNumber, this.buffer, 0);
 		}
 
+		decodeSector();
+		countRead(1);
+
 		this.currentSectorNumber++;
 	}
 
-	public void writeSectorTo(OutputStream writer) throws IOException {
-		if (this.sectorMode == 0) {
-			writer.write(getCurrentData());
+	/**
+	 * Reads the next sectors with one call to the reader and copies the first 2048
+	 * bytes of each sector's user data into the destination one after another.
+	 * The last sector read becomes the current one.
+	 */
+	public void readSectorData(int sectorCount, byte[] destination, int offset) throws IOException {
+		final byte[] raw = new byte[sectorCount * SECTOR_SIZE];
+
+		if (this.cache == null) {
+			this.reader.read(this.currentSectorNumber, sectorCount, raw, 0);
 		} else {
-			writer.write(CD.SYNC);
-			writer.write(getCurrentMinute());
-			writer.write(getCurrentSecond());
-			writer.write(getCurrentFrame());
-			writer.write(getCurrentMode());
-			writer.write(getCurrentSh());
-			writer.write(getCurrentData());
-
-			if (this.sectorMode == 1) {
-				writer.write(getCurrentEdc());
-				writer.write(0);
-				writer.write(0);
-				writer.write(0);
-				writer.write(0);
-				writer.write(0);
-				writer.write(0);
-				writer.write(0);
-				writer.write(0);
-				writer.write(getCurrentEcc());
-			} else if (this.sectorModeForm == 1) {
-				writer.write(getCurrentEdc());
-				writer.write(getCurrentEcc());
-			} else if (this.sectorModeForm == 2) {
-				writer.write(getCurrentEdc());
+			for (int i = 0; i < sectorCount; i++) {
+				readCached(this.currentSectorNumber + i, raw, i * SECTOR_SIZE);
 			}
 		}
+
+		countRead(sectorCount);
+
+		for (int i = 0; i < sectorCount; i++) {
+			System.arraycopy(raw, i * SECTOR_SIZE, this.buffer, 0, SECTOR_SIZE);
+
+			decodeSector();
+
+			System.arraycopy(this.buffer, this.sector.getUserDataOffset(), destination, offset + (i * 2048),
+					Math.min(2048, this.sector.getUserDataLength()));
+
+			this.currentSectorNumber++;
+		}
 	}
 
-	public void overlayWithFile(File insertFile, boolean rawSectors) throws IOException {
-		if (rawSectors) {
-			try (InputStream inputStream = new FileInputStream(insertFile)) {
-				int amountRead;
+	/**
+	 * Replaces the first 2048 bytes of user data of the next sectors with the
+	 * source, one sector after another, regenerating their EDC/ECC and writing
+	 * them back with one call to the reader.
+	 */
+	public void writeSectorData(int sectorCount, byte[] source, int offset) throws IOException {
+		final byte[] raw = new byte[sectorCount * SECTOR_SIZE];
+		final int firstSector = this.currentSectorNumber;
 
-				while ((amountRead = inputStream.read(WRITE_BUFFER)) != -1) {
-					this.reader.write(WRITE_BUFFER, 0, amountRead);
-				}
+		this.reader.read(firstSector, sectorCount, raw, 0);
+
+		for (int i = 0; i < sectorCount; i++) {
+			System.arraycopy(raw, i * SECTOR_SIZE, this.buffer, 0, SECTOR_SIZE);
+
+			decodeSector();
+
+			if (this.sector.getUserDataLength() != 2048) {
+				throw new IllegalStateException("Not implemented");
 			}
+
+			System.arraycopy(source, offset + (i * 2048), this.buffer, this.sector.getUserDataOffset(), 2048);
+			Edcre.generate(this.buffer, 0);
+			System.arraycopy(this.buffer, 0, raw, i * SECTOR_SIZE, SECTOR_SIZE);
+
+			this.currentSectorNumber++;
+		}
+
+		this.reader.write(firstSector, sectorCount, raw, 0);
+
+		invalidateCache(firstSector, sectorCount);
+		countWritten(sectorCount);
+	}
+
+	private void decodeSector() {
+		if (this.reader.isAudio(this.currentSectorNumber)) {
+			this.sector.decodeAudio();
 		} else {
-			inspectSectorsAndOverlayWithFile(insertFile);
+			this.sector.decode();
+		}
+
+		if (this.sector.getMode() == 2) {
+			System.arraycopy(this.buffer, Sector.SUB_HEADER_OFFSET, this.mode2Sh, 0, this.mode2Sh.length);
 		}
 	}
 
-	private void inspectSectorsAndOverlayWithFile(File insertFile) throws FileNotFoundException, IOException {
-		int size = (int) insertFile.length();
+	public void writeSectorTo(OutputStream writer) throws IOException {
+		writer.write(this.buffer);
+	}
 
-		try (InputStream inputStream = new FileInputStream(insertFile)) {
-			while (size > 0) {
-				if (this.reader.read(BUFFER_SYNC) != BUFFER_SYNC.length) {
-					throw new IllegalStateException("Failed to fully read sync");
-				}
+	public int overlayWithFile(File insertFile, boolean rawSectors) throws IOException {
+		return overlayWithFile(insertFile, rawSectors, false);
+	}
 
-				if (Arrays.equals(BUFFER_SYNC, EMPTY_SYNC)) {
-					throw new IllegalStateException("Not Implemented");
-				} else if (Arrays.equals(BUFFER_SYNC, SYNC)) {
-					// MSF
-					this.reader.skipBytes(3);
-
-					this.sectorMode = this.reader.read();
-
-					switch (this.sectorMode) {
-					case 1:
-						throw new IllegalStateException("Not implemented");
-					case 2:
-						this.sectorModeForm = identifyMode2Form();
-
-						switch (this.sectorModeForm) {
-						case 0:
-							throw new IllegalStateException("Not implemented");
-						case 1:
-							final int amountRead = inputStream.read(this.mode2Form1Data);
-
-							size -= amountRead;
-
-							if ((size == 0) && (amountRead < this.mode2Form1Data.length)) {
-								this.reader.write(this.mode0Data, amountRead, this.mode2Form1Data.length - amountRead);
-							}
-
-							this.reader.write(this.mode2Form1Data);
-
-							// TODO: calculate edc and ecc
-							this.reader.skipBytes(this.edcData.length);
-							this.reader.skipBytes(this.eccData.length);
-							break;
-						case 2:
-							throw new IllegalStateException("Not implemented");
-						default:
-							throw new IllegalStateException("Unknown sector mode 2 form: " + this.sectorModeForm);
-						}
-						break;
-					default:
-						throw new IllegalStateException("Unknown sector mode: " + this.sectorMode);
-					}
-				} else {
-					throw new IllegalStateException("Sector has no sync");
-				}
+	/**
+	 * Overlays the file onto the sectors starting at the current one. When only
+	 * changed is set, sectors that already hold the same data are left alone
+	 * instead of being rewritten. Returns the number of sectors written.
+	 */
+	public int overlayWithFile(File insertFile, boolean rawSectors, boolean onlyChanged) throws IOException {
+		try (InputStream inputStream = new BufferedInputStream(new FileInputStream(insertFile))) {
+			if (rawSectors) {
+				return overlayWithRawSectors(inputStream, onlyChanged);
+			} else {
+				return inspectSectorsAndOverlayWithFile(inputStream, insertFile.length(), onlyChanged);
 			}
 		}
 	}
 
-	private int identifyMode2Form() throws IOException {
-		this.reader.read(this.mode2Sh);
+	private int overlayWithRawSectors(InputStream inputStream, boolean onlyChanged) throws IOException {
+		int result = 0;
+		int amountRead;
 
-		final int result;
+		while ((amountRead = inputStream.readNBytes(this.buffer, 0, SECTOR_SIZE)) > 0) {
+			if ((amountRead < SECTOR_SIZE) || onlyChanged) {
+				this.reader.read(this.currentSectorNumber, this.previous, 0);
 
-		if ((this.mode2Sh[0] == this.mode2Sh[4]) && ((this.mode2Sh[1] == this.mode2Sh[5]))
-				&& (this.mode2Sh[2] == this.mode2Sh[6]) && (this.mode2Sh[3] == this.mode2Sh[7])) {
-			if (hasBitMask(this.mode2Sh[2], 0x20)) {
-				result = 2;
-			} else {
-				result = 1;
+				// keep the rest of the sector that is not being replaced
+				System.arraycopy(this.previous, amountRead, this.buffer, amountRead, SECTOR_SIZE - amountRead);
 			}
-		} else {
-			result = 0;
+
+			if (!onlyChanged || !Arrays.equals(this.buffer, this.previous)) {
+				this.reader.write(this.currentSectorNumber, this.buffer, 0);
+				invalidateCache(this.currentSectorNumber, 1);
+				countWritten(1);
+				result++;
+			}
+
+			this.currentSectorNumber++;
+		}
+
+		return result;
+	}
+
+	private int inspectSectorsAndOverlayWithFile(InputStream inputStream, long size, boolean onlyChanged)
+			throws IOException {
+		int result = 0;
+
+		while (size > 0) {
+			this.reader.read(this.currentSectorNumber, this.buffer, 0);
+
+			decodeSector();
+
+			if (onlyChanged) {
+				System.arraycopy(this.buffer, 0, this.previous, 0, SECTOR_SIZE);
+			}
+
+			switch (this.sector.getMode()) {
+			case 0:
+				throw new IllegalStateException("Not implemented");
+			case 1:
+				size -= overlaySectorData(inputStream, size);
+				break;
+			case 2:
+				switch (this.sector.getForm()) {
+				case 0:
+					throw new IllegalStateException("Not implemented");
+				case 1:
+					size -= overlaySectorData(inputStream, size);
+					break;
+				case 2:
+					throw new IllegalStateException("Not implemented");
+				default:
+					throw new IllegalStateException("Unknown sector mode 2 form: " + this.sector.getForm());
+				}
+				break;
+			default:
+				throw new IllegalStateException("Unknown sector mode: " + this.sector.getMode());
+			}
+
+			// the EDC/ECC is left as it was when none of the data changed
+			if (!onlyChanged || !Arrays.equals(this.buffer, this.previous)) {
+				Edcre.generate(this.buffer, 0);
+
+				this.reader.write(this.currentSectorNumber, this.buffer, 0);
+				invalidateCache(this.currentSectorNumber, 1);
+				countWritten(1);
+				result++;
+			}
+
+			this.currentSectorNumber++;
 		}
 
 		return result;
 	}
 
-	private static boolean hasBitMask(int bits, int mask) {
-		return (bits & mask) == mask;
+	private int overlaySectorData(InputStream inputStream, long size) throws IOException {
+		final int dataOffset = this.sector.getUserDataOffset();
+		final int dataLength = this.sector.getUserDataLength();
+		final int amountRead = inputStream.readNBytes(this.buffer, dataOffset, dataLength);
+
+		if ((size == amountRead) && (amountRead < dataLength)) {
+			Arrays.fill(this.buffer, dataOffset + amountRead, dataOffset + dataLength, (byte) 0);
+		}
+
+		return amountRead;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.reader.close();
 	}
 
-	public RandomAccessFile getReader() {
+	public SectorReader getReader() {
 		return this.reader;
 	}
 
+	public int getSectorCount() throws IOException {
+		return this.reader.getSectorCount();
+	}
+
 	public int getCurrentSectorNumber() {
 		return this.currentSectorNumber;
 	}
 
+	/**
+	 * Returns the view of the last sector read. It is reused, and so only valid,
+	 * until the next read.
+	 */
+	public Sector getSector() {
+		return this.sector;
+	}
+
 	public int getCurrentMode() {
-		return this.sectorMode;
+		return this.sector.getMode();
 	}
 
 	public int getCurrentModeForm() {
-		return this.sectorModeForm;
+		return this.sector.getForm();
 	}
 
 	public int getCurrentMinute() {
-		return this.sectorMinute;
+		return this.sector.getMinute();
 	}
 
 	public int getCurrentSecond() {
-		return this.sectorSecond;
+		return this.sector.getSecond();
 	}
 
 	public int getCurrentFrame() {
-		return this.sectorFrame;
+		return this.sector.getFrame();
 	}
 
 	public byte[] getCurrentSh() {
@@ -276,31 +483,25 @@ public final class CD {
 	}
 
 	public byte[] getCurrentData() {
-		switch (this.sectorMode) {
-		case 0:
-			return this.mode0Data.clone();
-		case 1:
-			return this.mode1Data.clone();
-		case 2:
-			switch (this.sectorModeForm) {
-			case 0:
-				return this.mode2Form0Data.clone();
-			case 1:
-				return this.mode2Form1Data.clone();
-			case 2:
-				return this.mode2Form2Data.clone();
-			}
-		}
+		final int dataOffset = this.sector.getUserDataOffset();
 
-		return null;
+		return Arrays.copyOfRange(this.buffer, dataOffset, dataOffset + this.sector.getUserDataLength());
 	}
 
 	public byte[] getCurrentEdc() {
-		return this.edcData;
+		if (!this.sector.hasEdc()) {
+			return new byte[0];
+		}
+
+		return Arrays.copyOfRange(this.buffer, this.sector.getEdcOffset(), this.sector.getEdcOffset() + 4);
 	}
 
 	public byte[] getCurrentEcc() {
-		return this.eccData;
+		if (!this.sector.hasEcc()) {
+			return new byte[0];
+		}
+
+		return Arrays.copyOfRange(this.buffer, this.sector.getEccOffset(), CD.SECTOR_SIZE);
 	}
 
 }
@@ -2,19 +2,24 @@ package com.github.rnveach.sector;
 
 import java.io.IOException;
 
+import com.github.rnveach.metrics.Metrics;
 import com.github.rnveach.utils.Util;
 
+/**
+ * This walks the records of an ISO9660 directory. All of the directory's
+ * sectors are read up front with one bulk read, and records continue across
+ * sector boundaries, where the unused end of a sector is zero padded.
+ */
 public final class CdDirectoryListing {
 
-	private final int directorySize;
-
-	private final CD cd;
+	private static final int SECTOR_DATA_SIZE = 2048;
 
-	private int sectorPosition;
+	private final int directorySize;
 
-	private byte[] data;
+	private final byte[] data;
 	private int dataPosition;
 
+	private int entryPosition;
 	private int entrySector;
 	private int entryLength;
 	private int entryFlags;
@@ -22,41 +27,55 @@ public final class CdDirectoryListing {
 	private String entryName;
 
 	public CdDirectoryListing(CD cd, int startSector, int directorySize) throws IOException {
-		this.cd = cd;
-
-		this.sectorPosition = startSector;
+		final int sectorCount = Math.max(1, (directorySize + SECTOR_DATA_SIZE - 1) / SECTOR_DATA_SIZE);
 
 		this.directorySize = directorySize;
+		this.data = new byte[sectorCount * SECTOR_DATA_SIZE];
 
-		readNextSector();
-	}
+		final Metrics metrics = cd.getMetrics();
+		final long startTime = System.nanoTime();
 
-	private void readNextSector() throws IOException {
-		this.cd.seek(this.sectorPosition);
-		this.cd.readSector();
-		this.data = this.cd.getCurrentData();
-		this.dataPosition = 0;
-		this.sectorPosition++;
+		cd.seek(startSector);
+		cd.readSectorData(sectorCount, this.data, 0);
+
+		if (metrics != null) {
+			metrics.timer("directory.read").recordSince(startTime);
+			metrics.counter("directory.sectors").add(sectorCount);
+		}
 	}
 
 	public boolean hasNext() {
-		return ((this.dataPosition < this.directorySize) && (this.data[this.dataPosition] > 0));
+		skipPadding();
+
+		return (this.dataPosition < this.directorySize);
+	}
+
+	/**
+	 * Records never cross a sector boundary, so a zero length byte means the rest
+	 * of the sector is padding and the next record starts in the next sector.
+	 */
+	private void skipPadding() {
+		while ((this.dataPosition < this.directorySize) && (this.data[this.dataPosition] == 0)) {
+			this.dataPosition = ((this.dataPosition / SECTOR_DATA_SIZE) + 1) * SECTOR_DATA_SIZE;
+		}
 	}
 
 	public void nextEntry() {
-		final int entryLength = this.data[this.dataPosition];
+		if (hasNext()) {
+			final int entryLength = this.data[this.dataPosition] & 0xFF;
+
+			this.entryPosition = this.dataPosition;
 
-		if ((entryLength > 0) && hasNext()) {
 			// Extended Attribute Record Length
 			this.entrySector = Util.read32LE(this.data, this.dataPosition + 2);
 			// MSB form
 			this.entryLength = Util.read32LE(this.data, this.dataPosition + 10);
 			// MSB form
 			// date and time
-			this.entryFlags = this.data[this.dataPosition + 25];
+			this.entryFlags = this.data[this.dataPosition + 25] & 0xFF;
 			this.entrySequenceNumber = Util.read16LE(this.data, this.dataPosition + 28);
 
-			final int nameLength = this.data[this.dataPosition + 32];
+			final int nameLength = this.data[this.dataPosition + 32] & 0xFF;
 
 			this.entryName = Util.readString(this.data, this.dataPosition + 33, nameLength);
 
@@ -64,6 +83,7 @@ public final class CdDirectoryListing {
 
 			this.dataPosition += entryLength;
 		} else {
+			this.entryPosition = -1;
 			this.entrySector = 0;
 			this.entryLength = 0;
 			this.entryFlags = 0;
@@ -72,31 +92,45 @@ public final class CdDirectoryListing {
 		}
 	}
 
-	public boolean updateNextEntrySimple(String verifyName, int verifyEntrySector, int newEntrySize) {
-		if (!hasNext()) {
+	/**
+	 * Changes where the entry's data starts and its size, in both byte orders.
+	 * Returns true if anything changed.
+	 */
+	public boolean updateEntry(int entryPosition, String verifyName, int verifyEntrySector, int newEntrySector,
+			int newEntrySize) {
+		if ((entryPosition < 0) || (entryPosition >= this.data.length) || (this.data[entryPosition] == 0)) {
 			throw new IllegalStateException("Could not update " + verifyName + " as it doesn't exist");
 		}
 
-		final int nameLength = this.data[this.dataPosition + 32];
+		final int nameLength = this.data[entryPosition + 32] & 0xFF;
 
 		// verifies only start of name since it can have extra data on it
-		if (!Util.readString(this.data, this.dataPosition + 33, nameLength).startsWith(verifyName)) {
+		if (!Util.readString(this.data, entryPosition + 33, nameLength).startsWith(verifyName)) {
 			throw new IllegalStateException(
 					"Could not update " + verifyName + " as the name wasn't found at the same position");
 		}
 
-		if (Util.read32LE(this.data, this.dataPosition + 2) != verifyEntrySector) {
+		if (Util.read32LE(this.data, entryPosition + 2) != verifyEntrySector) {
 			throw new IllegalStateException("Could not update " + verifyName + " as the sector position didn't match");
 		}
 
-		if (Util.read32LE(this.data, this.dataPosition + 10) != newEntrySize) {
-			Util.write32LE(this.data, this.dataPosition + 10, newEntrySize);
-			Util.write32BE(this.data, this.dataPosition + 14, newEntrySize);
+		boolean result = false;
 
-			return true;
-		} else {
-			return false;
+		if (verifyEntrySector != newEntrySector) {
+			Util.write32LE(this.data, entryPosition + 2, newEntrySector);
+			Util.write32BE(this.data, entryPosition + 6, newEntrySector);
+
+			result = true;
+		}
+
+		if (Util.read32LE(this.data, entryPosition + 10) != newEntrySize) {
+			Util.write32LE(this.data, entryPosition + 10, newEntrySize);
+			Util.write32BE(this.data, entryPosition + 14, newEntrySize);
+
+			result = true;
 		}
+
+		return result;
 	}
 
 	public boolean isEntryDirectory() {
@@ -117,6 +151,10 @@ public final class CdDirectoryListing {
 		return this.dataPosition;
 	}
 
+	public int getEntryPosition() {
+		return this.entryPosition;
+	}
+
 	public int getEntrySector() {
 		return this.entrySector;
 	}
@@ -0,0 +1,199 @@
+package com.github.rnveach.sector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This reads a file on the disc from its first sector and size. Positions in
+ * the file map straight to a sector and an offset in it, 2048 bytes of data per
+ * sector, or whole raw sectors for files in sector mode, and each part is read
+ * directly into the caller's buffer.
+ *
+ * {@link #read(ByteBuffer, long)} can be called from many threads at once. Each
+ * call borrows its own duplicate of the reader, which is kept for later calls
+ * until the channel is closed.
+ */
+public final class CdFileChannel implements SeekableByteChannel {
+
+	private static final int SECTOR_DATA_SIZE = 2048;
+
+	private static final int MODE_OFFSET = 15;
+
+	private final SectorReader reader;
+
+	private final int firstSector;
+
+	private final long size;
+
+	private final int sectorSize;
+
+	private final int dataOffset;
+
+	private final ConcurrentLinkedQueue<SectorReader> readers = new ConcurrentLinkedQueue<>();
+
+	private long position;
+
+	private volatile boolean open = true;
+
+	/**
+	 * The reader given is only duplicated and is left open when this is closed.
+	 * The data offset of every sector is taken from the mode of the first one.
+	 */
+	public CdFileChannel(SectorReader reader, int firstSector, long size, boolean rawSectors) throws IOException {
+		this.reader = reader;
+		this.firstSector = firstSector;
+		this.size = size;
+
+		if (rawSectors) {
+			this.sectorSize = CD.SECTOR_SIZE;
+			this.dataOffset = 0;
+		} else {
+			this.sectorSize = SECTOR_DATA_SIZE;
+			this.dataOffset = (size == 0) ? 0 : getDataOffset(reader, firstSector);
+		}
+	}
+
+	public static CdFileChannel open(CD cd, DiscIndex index, int entry) throws IOException {
+		return new CdFileChannel(cd.getReader(), index.getSector(entry), index.getContentSize(entry),
+				!index.isDirectory(entry) && index.isSectorMode(entry));
+	}
+
+	private static int getDataOffset(SectorReader reader, int sectorNumber) throws IOException {
+		final ByteBuffer mode = ByteBuffer.allocate(1);
+
+		reader.readPart(sectorNumber, MODE_OFFSET, 1, mode);
+
+		// Mode 2 data starts after the sub header
+		return (mode.get(0) == 2) ? 24 : 16;
+	}
+
+	/**
+	 * Reads from the position given without changing this channel's position, or
+	 * returns -1 if it is at or past the end.
+	 */
+	public int read(ByteBuffer destination, long position) throws IOException {
+		if (position < 0) {
+			throw new IllegalArgumentException("Position can't be negative");
+		}
+
+		ensureOpen();
+
+		if (position >= this.size) {
+			return -1;
+		}
+
+		final SectorReader sectors = borrow();
+		long current = position;
+
+		try {
+			while (destination.hasRemaining() && (current < this.size)) {
+				final int sectorOffset = (int) (current % this.sectorSize);
+				final int length = (int) Math.min(Math.min(this.sectorSize - sectorOffset, this.size - current),
+						destination.remaining());
+
+				sectors.readPart(this.firstSector + (int) (current / this.sectorSize), this.dataOffset + sectorOffset,
+						length, destination);
+
+				current += length;
+			}
+		} finally {
+			giveBack(sectors);
+		}
+
+		return (int) (current - position);
+	}
+
+	private SectorReader borrow() {
+		final SectorReader result = this.readers.poll();
+
+		return (result == null) ? this.reader.duplicate() : result;
+	}
+
+	private void giveBack(SectorReader sectors) throws IOException {
+		this.readers.add(sectors);
+
+		// a read that was still going when this was closed
+		if (!this.open) {
+			closeReaders();
+		}
+	}
+
+	@Override
+	public synchronized int read(ByteBuffer destination) throws IOException {
+		final int result = read(destination, this.position);
+
+		if (result > 0) {
+			this.position += result;
+		}
+
+		return result;
+	}
+
+	@Override
+	public int write(ByteBuffer source) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public synchronized long position() throws IOException {
+		ensureOpen();
+
+		return this.position;
+	}
+
+	@Override
+	public synchronized CdFileChannel position(long newPosition) throws IOException {
+		if (newPosition < 0) {
+			throw new IllegalArgumentException("Position can't be negative");
+		}
+
+		ensureOpen();
+
+		this.position = newPosition;
+
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+
+		return this.size;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long newSize) {
+		throw new NonWritableChannelException();
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (!this.open) {
+			throw new ClosedChannelException();
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.open = false;
+
+		closeReaders();
+	}
+
+	private void closeReaders() throws IOException {
+		SectorReader sectors;
+
+		while ((sectors = this.readers.poll()) != null) {
+			sectors.close();
+		}
+	}
+
+}
@@ -0,0 +1,351 @@
+package com.github.rnveach.sector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This reads an image stored as blocks of sectors that are each compressed on
+ * their own, so any sector can be read by inflating only its block. The last
+ * blocks inflated are kept in a small cache, which makes sequential reads and
+ * nearby seeks cheap.
+ *
+ * <pre>
+ * header: magic, version, sector count, sectors per block, index position (8)
+ * blocks: method (1), then the block stored or deflated
+ * index:  block positions (8 each, plus the end), audio sector bits
+ * </pre>
+ *
+ * Compressed images can't be written.
+ */
+public final class CompressedSectorReader implements SectorReader {
+
+	public static final String EXTENSION = ".cdz";
+
+	public static final int DEFAULT_SECTORS_PER_BLOCK = 16;
+
+	public static final int DEFAULT_CACHED_BLOCKS = 8;
+
+	private static final int MAGIC = 0x43445A31;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 1;
+
+	private final FileChannel channel;
+
+	private final boolean owner;
+
+	private final int sectorCount;
+
+	private final int sectorsPerBlock;
+
+	private final long[] blockPositions;
+
+	private final BitSet audio;
+
+	private final int cachedBlocks;
+
+	private final Map<Integer, byte[]> cache;
+
+	private final Inflater inflater = new Inflater();
+
+	private byte[] compressed = new byte[0];
+
+	private CompressedSectorReader(FileChannel channel, int sectorCount, int sectorsPerBlock, long[] blockPositions,
+			BitSet audio, int cachedBlocks, boolean owner) {
+		this.channel = channel;
+		this.owner = owner;
+		this.sectorCount = sectorCount;
+		this.sectorsPerBlock = sectorsPerBlock;
+		this.blockPositions = blockPositions;
+		this.audio = audio;
+		this.cachedBlocks = cachedBlocks;
+		this.cache = new LinkedHashMap<Integer, byte[]>(cachedBlocks * 2, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+				return (size() > CompressedSectorReader.this.cachedBlocks);
+			}
+
+		};
+	}
+
+	public static CompressedSectorReader open(File file) throws IOException {
+		return open(file, DEFAULT_CACHED_BLOCKS);
+	}
+
+	public static CompressedSectorReader open(File file, int cachedBlocks) throws IOException {
+		final FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+
+		try {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+			readFully(channel, header, 0);
+
+			if ((header.getInt() != MAGIC) || (header.getInt() != VERSION)) {
+				throw new IllegalStateException("Not a compressed image: " + file);
+			}
+
+			final int sectorCount = header.getInt();
+			final int sectorsPerBlock = header.getInt();
+			final long indexPosition = header.getLong();
+			final int blockCount = getBlockCount(sectorCount, sectorsPerBlock);
+			final int audioWords = (sectorCount + 63) / 64;
+			final ByteBuffer index = ByteBuffer.allocate(((blockCount + 1) + audioWords) * 8);
+
+			readFully(channel, index, indexPosition);
+
+			final long[] blockPositions = new long[blockCount + 1];
+
+			for (int i = 0; i < blockPositions.length; i++) {
+				blockPositions[i] = index.getLong();
+			}
+
+			final long[] audioBits = new long[audioWords];
+
+			for (int i = 0; i < audioBits.length; i++) {
+				audioBits[i] = index.getLong();
+			}
+
+			return new CompressedSectorReader(channel, sectorCount, sectorsPerBlock, blockPositions,
+					BitSet.valueOf(audioBits), cachedBlocks, true);
+		} catch (final IOException | RuntimeException ex) {
+			channel.close();
+
+			throw ex;
+		}
+	}
+
+	/**
+	 * Writes every sector of the source into a new compressed image.
+	 */
+	public static void compress(SectorReader source, File output, int sectorsPerBlock) throws IOException {
+		final int sectorCount = source.getSectorCount();
+		final int blockCount = getBlockCount(sectorCount, sectorsPerBlock);
+		final long[] blockPositions = new long[blockCount + 1];
+		final BitSet audio = new BitSet(sectorCount);
+		final byte[] block = new byte[sectorsPerBlock * CD.SECTOR_SIZE];
+		final byte[] deflated = new byte[block.length + 1];
+		final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+		try (RandomAccessFile file = new RandomAccessFile(output, "rw"); FileChannel channel = file.getChannel()) {
+			channel.truncate(0);
+
+			long position = HEADER_SIZE;
+
+			for (int i = 0; i < blockCount; i++) {
+				final int firstSector = i * sectorsPerBlock;
+				final int sectors = Math.min(sectorsPerBlock, sectorCount - firstSector);
+				final int length = sectors * CD.SECTOR_SIZE;
+
+				source.read(firstSector, sectors, block, 0);
+
+				for (int sector = firstSector; sector < (firstSector + sectors); sector++) {
+					if (source.isAudio(sector)) {
+						audio.set(sector);
+					}
+				}
+
+				deflater.reset();
+				deflater.setInput(block, 0, length);
+				deflater.finish();
+
+				final int deflatedLength = deflater.deflate(deflated, 1, deflated.length - 1);
+				final ByteBuffer data;
+
+				// blocks that don't shrink are kept as they are
+				if (deflater.finished() && (deflatedLength < length)) {
+					deflated[0] = METHOD_DEFLATED;
+					data = ByteBuffer.wrap(deflated, 0, deflatedLength + 1);
+				} else {
+					data = ByteBuffer.allocate(length + 1);
+					data.put((byte) METHOD_STORED).put(block, 0, length).flip();
+				}
+
+				blockPositions[i] = position;
+				position += writeFully(channel, data, position);
+			}
+
+			blockPositions[blockCount] = position;
+
+			final long[] audioBits = Arrays.copyOf(audio.toLongArray(), (sectorCount + 63) / 64);
+			final ByteBuffer index = ByteBuffer.allocate((blockPositions.length + audioBits.length) * 8);
+
+			for (final long blockPosition : blockPositions) {
+				index.putLong(blockPosition);
+			}
+			for (final long bits : audioBits) {
+				index.putLong(bits);
+			}
+
+			index.flip();
+			writeFully(channel, index, position);
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+			header.putInt(MAGIC).putInt(VERSION).putInt(sectorCount).putInt(sectorsPerBlock).putLong(position).flip();
+			writeFully(channel, header, 0);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static int getBlockCount(int sectorCount, int sectorsPerBlock) {
+		return (sectorCount + sectorsPerBlock - 1) / sectorsPerBlock;
+	}
+
+	@Override
+	public int getSectorCount() {
+		return this.sectorCount;
+	}
+
+	@Override
+	public boolean isAudio(int sectorNumber) {
+		return this.audio.get(sectorNumber);
+	}
+
+	@Override
+	public void read(int sectorNumber, byte[] buffer, int offset) throws IOException {
+		if ((sectorNumber < 0) || (sectorNumber >= this.sectorCount)) {
+			throw new IllegalStateException("Failed to fully read sector " + sectorNumber);
+		}
+
+		final byte[] block = getBlock(sectorNumber / this.sectorsPerBlock);
+
+		System.arraycopy(block, (sectorNumber % this.sectorsPerBlock) * CD.SECTOR_SIZE, buffer, offset,
+				CD.SECTOR_SIZE);
+	}
+
+	@Override
+	public void read(int firstSector, int sectorCount, byte[] buffer, int offset) throws IOException {
+		int sectorNumber = firstSector;
+		int position = offset;
+		int remaining = sectorCount;
+
+		if ((remaining > 0) && ((firstSector < 0) || ((firstSector + remaining) > this.sectorCount))) {
+			throw new IllegalStateException(
+					"Failed to fully read sectors " + firstSector + "-" + (firstSector + sectorCount - 1));
+		}
+
+		// one copy per block the run touches
+		while (remaining > 0) {
+			final int blockSector = sectorNumber % this.sectorsPerBlock;
+			final int sectors = Math.min(remaining, this.sectorsPerBlock - blockSector);
+			final byte[] block = getBlock(sectorNumber / this.sectorsPerBlock);
+
+			System.arraycopy(block, blockSector * CD.SECTOR_SIZE, buffer, position, sectors * CD.SECTOR_SIZE);
+
+			sectorNumber += sectors;
+			position += sectors * CD.SECTOR_SIZE;
+			remaining -= sectors;
+		}
+	}
+
+	private byte[] getBlock(int blockNumber) throws IOException {
+		byte[] result = this.cache.get(blockNumber);
+
+		if (result == null) {
+			result = readBlock(blockNumber);
+
+			this.cache.put(blockNumber, result);
+		}
+
+		return result;
+	}
+
+	private byte[] readBlock(int blockNumber) throws IOException {
+		final long position = this.blockPositions[blockNumber];
+		final int length = (int) (this.blockPositions[blockNumber + 1] - position);
+		final int firstSector = blockNumber * this.sectorsPerBlock;
+		final byte[] result = new byte[Math.min(this.sectorsPerBlock, this.sectorCount - firstSector)
+				* CD.SECTOR_SIZE];
+
+		if (this.compressed.length < length) {
+			this.compressed = new byte[length];
+		}
+
+		readFully(this.channel, ByteBuffer.wrap(this.compressed, 0, length), position);
+
+		switch (this.compressed[0]) {
+		case METHOD_STORED:
+			System.arraycopy(this.compressed, 1, result, 0, result.length);
+			break;
+		case METHOD_DEFLATED:
+			this.inflater.reset();
+			this.inflater.setInput(this.compressed, 1, length - 1);
+
+			try {
+				if (this.inflater.inflate(result) != result.length) {
+					throw new IllegalStateException("Block " + blockNumber + " is shorter than expected");
+				}
+			} catch (final DataFormatException ex) {
+				throw new IllegalStateException("Block " + blockNumber + " is corrupt", ex);
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unknown block method: " + this.compressed[0]);
+		}
+
+		return result;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		final int start = buffer.position();
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + (buffer.position() - start)) < 0) {
+				throw new IllegalStateException("Compressed image is truncated");
+			}
+		}
+
+		buffer.flip();
+	}
+
+	private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		final int length = buffer.remaining();
+		int written = 0;
+
+		while (written < length) {
+			written += channel.write(buffer, position + written);
+		}
+
+		return length;
+	}
+
+	@Override
+	public void write(int sectorNumber, byte[] buffer, int offset) {
+		throw new IllegalStateException("Compressed images can't be written");
+	}
+
+	/**
+	 * The copy shares the file and index but has its own cache.
+	 */
+	@Override
+	public SectorReader duplicate() {
+		return new CompressedSectorReader(this.channel, this.sectorCount, this.sectorsPerBlock, this.blockPositions,
+				this.audio, this.cachedBlocks, false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.inflater.end();
+
+		if (this.owner) {
+			this.channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,492 @@
+package com.github.rnveach.sector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.rnveach.utils.Util;
+
+/**
+ * This is every directory and file of the disc's ISO9660 tree, read in a single
+ * walk. Entries are numbered in the order {@code cd-info.txt} lists them, with
+ * the root directory first and the children of each directory next to each
+ * other. It can be saved next to the image and is reused as long as the
+ * image's size and modification time don't change.
+ */
+public final class DiscIndex {
+
+	public static final String SIDECAR_EXTENSION = ".idx";
+
+	private static final int MAGIC = 0x43444958;
+	private static final int VERSION = 1;
+
+	private static final int FLAG_DIRECTORY = 0x02;
+
+	private final int count;
+
+	private final String[] names;
+	private final String[] paths;
+	private final int[] parents;
+	private final int[] positions;
+	private final int[] recordPositions;
+	private final int[] sectors;
+	private final int[] sizes;
+	private final byte[] flags;
+	private final boolean[] sectorModes;
+	private final int[] firstChildren;
+	private final int[] childCounts;
+
+	// entries by ascending start sector
+	private final int[] bySector;
+	private final Map<String, Integer> byPath;
+
+	private DiscIndex(int count) {
+		this.count = count;
+
+		this.names = new String[count];
+		this.paths = new String[count];
+		this.parents = new int[count];
+		this.positions = new int[count];
+		this.recordPositions = new int[count];
+		this.sectors = new int[count];
+		this.sizes = new int[count];
+		this.flags = new byte[count];
+		this.sectorModes = new boolean[count];
+		this.firstChildren = new int[count];
+		this.childCounts = new int[count];
+
+		this.bySector = new int[count];
+		this.byPath = new HashMap<>(count * 2);
+	}
+
+	/**
+	 * Returns the index saved beside the image if it is still current, otherwise
+	 * walks the disc and saves the result for the next run. A saved index that
+	 * can't be read is treated as outdated.
+	 */
+	public static DiscIndex load(CD cd, File image) throws IOException {
+		final File sidecar = getSidecar(image);
+
+		if (sidecar.isFile()) {
+			try {
+				final DiscIndex result = read(sidecar, image);
+
+				if (result != null) {
+					return result;
+				}
+			} catch (final IOException | RuntimeException ex) {
+				System.err.println("Rebuilding unreadable disc index " + sidecar + ": " + ex);
+			}
+		}
+
+		final DiscIndex result = build(cd);
+
+		try {
+			result.save(sidecar, image);
+		} catch (final IOException ex) {
+			System.err.println("Unable to save disc index " + sidecar + ": " + ex.getMessage());
+		}
+
+		return result;
+	}
+
+	public static void invalidate(File image) {
+		final File sidecar = getSidecar(image);
+
+		if (sidecar.isFile() && !sidecar.delete()) {
+			System.err.println("Unable to remove outdated disc index " + sidecar);
+		}
+	}
+
+	public static File getSidecar(File image) {
+		return new File(image.getPath() + SIDECAR_EXTENSION);
+	}
+
+	public static DiscIndex build(CD cd) throws IOException {
+		cd.seek(16);
+		cd.readSector();
+
+		final byte[] data = cd.getCurrentData();
+		final List<Entry> entries = new ArrayList<>();
+		final Entry root = new Entry("", -1, -1, -1, Util.read32LE(data, 158), Util.read32LE(data, 166),
+				FLAG_DIRECTORY);
+
+		entries.add(root);
+
+		walk(cd, entries, 0);
+
+		final DiscIndex result = new DiscIndex(entries.size());
+
+		for (int i = 0; i < result.count; i++) {
+			final Entry entry = entries.get(i);
+
+			result.names[i] = entry.name;
+			result.parents[i] = entry.parent;
+			result.positions[i] = entry.position;
+			result.recordPositions[i] = entry.recordPosition;
+			result.sectors[i] = entry.sector;
+			result.sizes[i] = entry.size;
+			result.flags[i] = (byte) entry.flags;
+			result.sectorModes[i] = entry.sectorMode;
+			result.firstChildren[i] = entry.firstChild;
+			result.childCounts[i] = entry.childCount;
+		}
+
+		result.finish();
+
+		return result;
+	}
+
+	private static void walk(CD cd, List<Entry> entries, int directory) throws IOException {
+		final Entry parent = entries.get(directory);
+		final CdDirectoryListing listing = new CdDirectoryListing(cd, parent.sector, parent.size);
+		final int firstChild = entries.size();
+		int position = -1;
+
+		while (listing.hasNext()) {
+			listing.nextEntry();
+
+			position++;
+
+			if (listing.getEntryName().isEmpty()) {
+				continue;
+			}
+
+			entries.add(new Entry(Util.getNormalFileName(listing.getEntryName()), directory, position,
+					listing.getEntryPosition(), listing.getEntrySector(), listing.getEntryLength(),
+					listing.getEntryFlags()));
+		}
+
+		parent.firstChild = firstChild;
+		parent.childCount = entries.size() - firstChild;
+
+		for (int i = firstChild; i < (firstChild + parent.childCount); i++) {
+			final Entry entry = entries.get(i);
+
+			if (!entry.isDirectory()) {
+				entry.sectorMode = isSectorMode(cd, entry.sector);
+			}
+		}
+
+		for (int i = firstChild; i < (firstChild + parent.childCount); i++) {
+			if (entries.get(i).isDirectory()) {
+				walk(cd, entries, i);
+			}
+		}
+	}
+
+	private static boolean isSectorMode(CD cd, int sector) throws IOException {
+		cd.seek(sector);
+		cd.readSector();
+
+		final Sector firstSector = cd.getSector();
+
+		// audio/video/real time
+		return firstSector.hasSubHeader() && ((firstSector.getSubMode() & 0x46) > 0);
+	}
+
+	private void finish() {
+		for (int i = 0; i < this.count; i++) {
+			if (this.parents[i] == -1) {
+				this.paths[i] = "";
+			} else {
+				this.paths[i] = this.paths[this.parents[i]] + "\\" + this.names[i];
+			}
+
+			this.byPath.put(this.paths[i], i);
+		}
+
+		final Integer[] order = new Integer[this.count];
+
+		for (int i = 0; i < this.count; i++) {
+			order[i] = i;
+		}
+
+		Arrays.sort(order, (left, right) -> Integer.compare(this.sectors[left], this.sectors[right]));
+
+		for (int i = 0; i < this.count; i++) {
+			this.bySector[i] = order[i];
+		}
+	}
+
+	private static DiscIndex read(File sidecar, File image) throws IOException {
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(sidecar)))) {
+			if ((input.readInt() != MAGIC) || (input.readInt() != VERSION) || (input.readLong() != image.length())
+					|| (input.readLong() != image.lastModified())) {
+				return null;
+			}
+
+			final int count = input.readInt();
+
+			// every entry takes more than a byte, so this also stops huge allocations
+			if ((count < 1) || (count > sidecar.length())) {
+				throw new IOException("Invalid entry count: " + count);
+			}
+
+			final DiscIndex result = new DiscIndex(count);
+
+			for (int i = 0; i < result.count; i++) {
+				result.names[i] = input.readUTF();
+				result.parents[i] = input.readInt();
+				result.positions[i] = input.readInt();
+				result.recordPositions[i] = input.readInt();
+				result.sectors[i] = input.readInt();
+				result.sizes[i] = input.readInt();
+				result.flags[i] = input.readByte();
+				result.sectorModes[i] = input.readBoolean();
+				result.firstChildren[i] = input.readInt();
+				result.childCounts[i] = input.readInt();
+			}
+
+			result.finish();
+
+			return result;
+		}
+	}
+
+	/**
+	 * Writes to a temporary file beside the sidecar first and then moves it into
+	 * place, so a failed save never leaves a partial index behind.
+	 */
+	public void save(File sidecar, File image) throws IOException {
+		final File temporary = File.createTempFile(sidecar.getName(), ".tmp",
+				sidecar.getAbsoluteFile().getParentFile());
+
+		try {
+			write(temporary, image);
+
+			try {
+				Files.move(temporary.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (final AtomicMoveNotSupportedException ex) {
+				Files.move(temporary.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	private void write(File sidecar, File image) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(sidecar)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(image.length());
+			output.writeLong(image.lastModified());
+			output.writeInt(this.count);
+
+			for (int i = 0; i < this.count; i++) {
+				output.writeUTF(this.names[i]);
+				output.writeInt(this.parents[i]);
+				output.writeInt(this.positions[i]);
+				output.writeInt(this.recordPositions[i]);
+				output.writeInt(this.sectors[i]);
+				output.writeInt(this.sizes[i]);
+				output.writeByte(this.flags[i]);
+				output.writeBoolean(this.sectorModes[i]);
+				output.writeInt(this.firstChildren[i]);
+				output.writeInt(this.childCounts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the entry for the path, using {@code \} or {@code /} between names,
+	 * or -1 if there is none.
+	 */
+	public int find(String path) {
+		String normalized = path.replace('/', '\\');
+
+		if (normalized.endsWith("\\")) {
+			normalized = normalized.substring(0, normalized.length() - 1);
+		}
+		if (!normalized.isEmpty() && !normalized.startsWith("\\")) {
+			normalized = "\\" + normalized;
+		}
+
+		final Integer result = this.byPath.get(normalized);
+
+		return (result == null) ? -1 : result;
+	}
+
+	/**
+	 * Returns the entry whose data holds the sector, or -1 if it belongs to none.
+	 */
+	public int findBySector(int sector) {
+		int low = 0;
+		int high = this.count - 1;
+
+		// last entry starting at or before the sector
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+
+			if (this.sectors[this.bySector[middle]] <= sector) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		// entries that are empty can share their start with the next entry
+		for (int i = high; (i >= 0) && (this.sectors[this.bySector[i]] == this.sectors[this.bySector[high]]); i--) {
+			final int entry = this.bySector[i];
+
+			if (sector < (this.sectors[entry] + getSectorCount(entry))) {
+				return entry;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the entries whose data holds any of the sectors from the start up to
+	 * but not including the end, in sector order.
+	 */
+	public List<Integer> findBySectors(int startSector, int endSector) {
+		final List<Integer> result = new ArrayList<>();
+		int lastEntry = -1;
+
+		for (int sector = startSector; sector < endSector; sector++) {
+			final int entry = findBySector(sector);
+
+			if (entry == -1) {
+				continue;
+			}
+
+			if (entry != lastEntry) {
+				result.add(entry);
+
+				lastEntry = entry;
+			}
+
+			// skip to the last sector of the entry
+			sector = Math.max(sector, (this.sectors[entry] + getSectorCount(entry)) - 1);
+		}
+
+		return result;
+	}
+
+	public int getEntryCount() {
+		return this.count;
+	}
+
+	public String getName(int entry) {
+		return this.names[entry];
+	}
+
+	public String getPath(int entry) {
+		return this.paths[entry];
+	}
+
+	/**
+	 * Returns the path, with the root shown as {@code \} instead of empty.
+	 */
+	public String getDisplayPath(int entry) {
+		return (this.parents[entry] == -1) ? "\\" : this.paths[entry];
+	}
+
+	public int getParent(int entry) {
+		return this.parents[entry];
+	}
+
+	public int getPosition(int entry) {
+		return this.positions[entry];
+	}
+
+	/**
+	 * Returns where the entry's record starts in the data of its parent directory.
+	 */
+	public int getRecordPosition(int entry) {
+		return this.recordPositions[entry];
+	}
+
+	public int getSector(int entry) {
+		return this.sectors[entry];
+	}
+
+	public int getSize(int entry) {
+		return this.sizes[entry];
+	}
+
+	public int getSectorCount(int entry) {
+		return (this.sizes[entry] + 2047) / 2048;
+	}
+
+	/**
+	 * Returns the size of the entry's data as it is extracted, which for files in
+	 * sector mode is all of their raw sectors.
+	 */
+	public long getContentSize(int entry) {
+		if (!isDirectory(entry) && isSectorMode(entry)) {
+			return (long) (this.sizes[entry] / 2048) * CD.SECTOR_SIZE;
+		}
+
+		return this.sizes[entry];
+	}
+
+	public int getFlags(int entry) {
+		return this.flags[entry];
+	}
+
+	public boolean isDirectory(int entry) {
+		return ((this.flags[entry] & FLAG_DIRECTORY) == FLAG_DIRECTORY);
+	}
+
+	public boolean isSectorMode(int entry) {
+		return this.sectorModes[entry];
+	}
+
+	public int getFirstChild(int entry) {
+		return this.firstChildren[entry];
+	}
+
+	public int getChildCount(int entry) {
+		return this.childCounts[entry];
+	}
+
+	private static final class Entry {
+
+		private final String name;
+		private final int parent;
+		private final int position;
+		private final int recordPosition;
+		private final int sector;
+		private final int size;
+		private final int flags;
+
+		private boolean sectorMode;
+		private int firstChild = -1;
+		private int childCount;
+
+		private Entry(String name, int parent, int position, int recordPosition, int sector, int size, int flags) {
+			this.name = name;
+			this.parent = parent;
+			this.position = position;
+			this.recordPosition = recordPosition;
+			this.sector = sector;
+			this.size = size;
+			this.flags = flags;
+		}
+
+		private boolean isDirectory() {
+			return ((this.flags & FLAG_DIRECTORY) == FLAG_DIRECTORY);
+		}
+
+	}
+
+}
@@ -0,0 +1,512 @@
+package com.github.rnveach.sector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.rnveach.utils.Util;
+
+/**
+ * This is a whole disc described by a CUE sheet, read as one run of raw
+ * sectors no matter how many BIN files hold it. The sheet is turned into
+ * segments of consecutive sectors that each come from one place, either a file
+ * or generated silence for a {@code PREGAP} or {@code POSTGAP}, and a sector is
+ * found with a binary search over the segment starts.
+ *
+ * Tracks stored with less than 2352 bytes a sector are given their sync,
+ * header and EDC/ECC when read. Only sectors stored whole can be written.
+ */
+public final class DiscLayout implements SectorReader {
+
+	private static final int GENERATED = -1;
+
+	private final FileChannel[] channels;
+
+	private final boolean writable;
+
+	private final boolean owner;
+
+	private final List<Track> tracks;
+
+	private final int sectorCount;
+
+	private final int[] segmentStarts;
+	private final int[] segmentCounts;
+	private final int[] segmentFiles;
+	private final long[] segmentPositions;
+	private final Track.Type[] segmentTypes;
+	private final int[] segmentTracks;
+
+	// scans are sequential, so the last segment found is checked first
+	private int lastSegment;
+
+	private DiscLayout(FileChannel[] channels, boolean writable, List<Track> tracks, List<Segment> segments) {
+		this.channels = channels;
+		this.writable = writable;
+		this.owner = true;
+		this.tracks = Collections.unmodifiableList(tracks);
+
+		this.segmentStarts = new int[segments.size()];
+		this.segmentCounts = new int[segments.size()];
+		this.segmentFiles = new int[segments.size()];
+		this.segmentPositions = new long[segments.size()];
+		this.segmentTypes = new Track.Type[segments.size()];
+		this.segmentTracks = new int[segments.size()];
+
+		int sectors = 0;
+
+		for (int i = 0; i < segments.size(); i++) {
+			final Segment segment = segments.get(i);
+
+			this.segmentStarts[i] = sectors;
+			this.segmentCounts[i] = segment.count;
+			this.segmentFiles[i] = segment.file;
+			this.segmentPositions[i] = segment.position;
+			this.segmentTypes[i] = segment.type;
+			this.segmentTracks[i] = segment.track;
+
+			sectors += segment.count;
+		}
+
+		this.sectorCount = sectors;
+	}
+
+	private DiscLayout(DiscLayout original) {
+		this.channels = original.channels;
+		this.writable = original.writable;
+		this.owner = false;
+		this.tracks = original.tracks;
+		this.sectorCount = original.sectorCount;
+		this.segmentStarts = original.segmentStarts;
+		this.segmentCounts = original.segmentCounts;
+		this.segmentFiles = original.segmentFiles;
+		this.segmentPositions = original.segmentPositions;
+		this.segmentTypes = original.segmentTypes;
+		this.segmentTracks = original.segmentTracks;
+	}
+
+	/**
+	 * Reads the CUE sheet and opens every file it names, relative to the sheet.
+	 */
+	public static DiscLayout open(File cue, boolean writable) throws IOException {
+		final List<File> files = new ArrayList<>();
+		final List<CueTrack> cueTracks = new ArrayList<>();
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(cue, StandardCharsets.UTF_8))) {
+			CueTrack current = null;
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				final List<String> tokens = tokenize(line);
+
+				if (tokens.isEmpty()) {
+					continue;
+				}
+
+				switch (tokens.get(0).toUpperCase()) {
+				case "FILE":
+					requireTokens(tokens, 2, line);
+
+					files.add(new File(cue.getAbsoluteFile().getParentFile(), tokens.get(1)));
+					break;
+				case "TRACK":
+					requireTokens(tokens, 3, line);
+
+					if (files.isEmpty()) {
+						throw new IllegalStateException("Track before any file in " + cue);
+					}
+
+					current = new CueTrack(Integer.parseInt(tokens.get(1)), Track.Type.fromCue(tokens.get(2)),
+							files.size() - 1);
+					cueTracks.add(current);
+					break;
+				case "INDEX":
+					requireTokens(tokens, 3, line);
+					requireTrack(current, line);
+
+					final int index = Integer.parseInt(tokens.get(1));
+
+					if (index == 0) {
+						current.index0 = parseMsf(tokens.get(2));
+					} else if (index == 1) {
+						current.index1 = parseMsf(tokens.get(2));
+					}
+					break;
+				case "PREGAP":
+					requireTokens(tokens, 2, line);
+					requireTrack(current, line);
+
+					current.pregap = parseMsf(tokens.get(1));
+					break;
+				case "POSTGAP":
+					requireTokens(tokens, 2, line);
+					requireTrack(current, line);
+
+					current.postgap = parseMsf(tokens.get(1));
+					break;
+				default:
+					// REM, TITLE, FLAGS and the like don't change the layout
+					break;
+				}
+			}
+		}
+
+		if (cueTracks.isEmpty()) {
+			throw new IllegalStateException("No tracks in " + cue);
+		}
+
+		final FileChannel[] channels = new FileChannel[files.size()];
+
+		try {
+			for (int i = 0; i < channels.length; i++) {
+				channels[i] = new RandomAccessFile(files.get(i), writable ? "rw" : "r").getChannel();
+			}
+
+			return build(channels, writable, cueTracks);
+		} catch (final IOException | RuntimeException ex) {
+			for (final FileChannel channel : channels) {
+				if (channel != null) {
+					channel.close();
+				}
+			}
+
+			throw ex;
+		}
+	}
+
+	private static DiscLayout build(FileChannel[] channels, boolean writable, List<CueTrack> cueTracks)
+			throws IOException {
+		// where each track's data starts in its file and how many sectors it has
+		for (int i = 0; i < cueTracks.size(); i++) {
+			final CueTrack track = cueTracks.get(i);
+			final CueTrack previous = (i == 0) ? null : cueTracks.get(i - 1);
+			final CueTrack next = (i == (cueTracks.size() - 1)) ? null : cueTracks.get(i + 1);
+
+			if (track.index1 == -1) {
+				throw new IllegalStateException("Track " + track.number + " has no index 1");
+			}
+
+			if ((previous == null) || (previous.file != track.file)) {
+				track.position = (long) track.getFileStart() * track.type.getSectorSize();
+			} else {
+				track.position = previous.position
+						+ ((long) (track.getFileStart() - previous.getFileStart()) * previous.type.getSectorSize());
+			}
+
+			if ((next != null) && (next.file == track.file)) {
+				track.count = next.getFileStart() - track.getFileStart();
+			} else {
+				track.count = (int) ((channels[track.file].size() - track.position) / track.type.getSectorSize());
+			}
+
+			if (track.count < 0) {
+				throw new IllegalStateException("Track " + track.number + " is out of order");
+			}
+		}
+
+		final List<Track> tracks = new ArrayList<>();
+		final List<Segment> segments = new ArrayList<>();
+		int sector = 0;
+
+		for (final CueTrack track : cueTracks) {
+			final int trackIndex = tracks.size();
+			final int firstSector = sector;
+
+			if (track.pregap > 0) {
+				segments.add(new Segment(track.pregap, GENERATED, 0, track.type, trackIndex));
+				sector += track.pregap;
+			}
+
+			final int startSector = sector + (track.index1 - track.getFileStart());
+
+			if (track.count > 0) {
+				segments.add(new Segment(track.count, track.file, track.position, track.type, trackIndex));
+				sector += track.count;
+			}
+
+			if (track.postgap > 0) {
+				segments.add(new Segment(track.postgap, GENERATED, 0, track.type, trackIndex));
+				sector += track.postgap;
+			}
+
+			tracks.add(new Track(track.number, track.type, firstSector, startSector, sector - firstSector));
+		}
+
+		return new DiscLayout(channels, writable, tracks, segments);
+	}
+
+	private static List<String> tokenize(String line) {
+		final List<String> result = new ArrayList<>();
+		int position = 0;
+
+		while (position < line.length()) {
+			if (Character.isWhitespace(line.charAt(position))) {
+				position++;
+			} else if (line.charAt(position) == '"') {
+				final int end = line.indexOf('"', position + 1);
+
+				if (end == -1) {
+					throw new IllegalStateException("Unclosed quote in: " + line);
+				}
+
+				result.add(line.substring(position + 1, end));
+				position = end + 1;
+			} else {
+				final int start = position;
+
+				while ((position < line.length()) && !Character.isWhitespace(line.charAt(position))) {
+					position++;
+				}
+
+				result.add(line.substring(start, position));
+			}
+		}
+
+		return result;
+	}
+
+	private static void requireTokens(List<String> tokens, int count, String line) {
+		if (tokens.size() < count) {
+			throw new IllegalStateException("Incomplete CUE line: " + line);
+		}
+	}
+
+	private static void requireTrack(CueTrack track, String line) {
+		if (track == null) {
+			throw new IllegalStateException("CUE line outside of a track: " + line);
+		}
+	}
+
+	private static int parseMsf(String msf) {
+		final String[] parts = msf.split(":");
+
+		if (parts.length != 3) {
+			throw new IllegalStateException("Invalid time: " + msf);
+		}
+
+		return (((Integer.parseInt(parts[0]) * 60) + Integer.parseInt(parts[1])) * 75) + Integer.parseInt(parts[2]);
+	}
+
+	@Override
+	public int getSectorCount() {
+		return this.sectorCount;
+	}
+
+	@Override
+	public boolean isAudio(int sectorNumber) {
+		return (this.segmentTypes[findSegment(sectorNumber)] == Track.Type.AUDIO);
+	}
+
+	public List<Track> getTracks() {
+		return this.tracks;
+	}
+
+	public Track getTrack(int sectorNumber) {
+		return this.tracks.get(this.segmentTracks[findSegment(sectorNumber)]);
+	}
+
+	@Override
+	public void read(int sectorNumber, byte[] buffer, int offset) throws IOException {
+		readSegment(findSegment(sectorNumber), sectorNumber, buffer, offset);
+	}
+
+	@Override
+	public void read(int firstSector, int sectorCount, byte[] buffer, int offset) throws IOException {
+		int sectorNumber = firstSector;
+		int position = offset;
+		int remaining = sectorCount;
+
+		while (remaining > 0) {
+			final int segment = findSegment(sectorNumber);
+			final int sectors = Math.min(remaining,
+					(this.segmentStarts[segment] + this.segmentCounts[segment]) - sectorNumber);
+
+			// whole sectors in a file can be read with one call
+			if ((this.segmentFiles[segment] != GENERATED)
+					&& (this.segmentTypes[segment].getSectorSize() == CD.SECTOR_SIZE)) {
+				readFully(segment, sectorNumber, buffer, position, sectors * CD.SECTOR_SIZE);
+			} else {
+				for (int i = 0; i < sectors; i++) {
+					readSegment(segment, sectorNumber + i, buffer, position + (i * CD.SECTOR_SIZE));
+				}
+			}
+
+			sectorNumber += sectors;
+			position += sectors * CD.SECTOR_SIZE;
+			remaining -= sectors;
+		}
+	}
+
+	private void readSegment(int segment, int sectorNumber, byte[] buffer, int offset) throws IOException {
+		final Track.Type type = this.segmentTypes[segment];
+
+		if (type.getSectorSize() == CD.SECTOR_SIZE) {
+			if (this.segmentFiles[segment] == GENERATED) {
+				Arrays.fill(buffer, offset, offset + CD.SECTOR_SIZE, (byte) 0);
+
+				if (type != Track.Type.AUDIO) {
+					writeHeader(buffer, offset, sectorNumber, type.getMode());
+					Edcre.generate(buffer, offset);
+				}
+			} else {
+				readFully(segment, sectorNumber, buffer, offset, CD.SECTOR_SIZE);
+			}
+		} else {
+			Arrays.fill(buffer, offset, offset + CD.SECTOR_SIZE, (byte) 0);
+
+			writeHeader(buffer, offset, sectorNumber, type.getMode());
+
+			if (this.segmentFiles[segment] != GENERATED) {
+				readFully(segment, sectorNumber, buffer, offset + 16, type.getSectorSize());
+			}
+
+			// stored mode 2 sectors keep their own EDC/ECC after the sub header
+			if ((type == Track.Type.MODE1_2048) || (this.segmentFiles[segment] == GENERATED)) {
+				Edcre.generate(buffer, offset);
+			}
+		}
+	}
+
+	private void readFully(int segment, int sectorNumber, byte[] buffer, int offset, int length)
+			throws IOException {
+		final FileChannel channel = this.channels[this.segmentFiles[segment]];
+		final ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+		final long position = getPosition(segment, sectorNumber);
+
+		while (target.hasRemaining()) {
+			if (channel.read(target, position + (target.position() - offset)) < 0) {
+				throw new IllegalStateException("Failed to fully read sector " + sectorNumber);
+			}
+		}
+	}
+
+	private static void writeHeader(byte[] buffer, int offset, int sectorNumber, int mode) {
+		// sector addresses start after the 2 second lead in
+		final int address = sectorNumber + 150;
+
+		System.arraycopy(CD.SYNC, 0, buffer, offset, CD.SYNC.length);
+
+		buffer[offset + 12] = Util.toBcd(address / 75 / 60);
+		buffer[offset + 13] = Util.toBcd((address / 75) % 60);
+		buffer[offset + 14] = Util.toBcd(address % 75);
+		buffer[offset + 15] = (byte) mode;
+	}
+
+	@Override
+	public void write(int sectorNumber, byte[] buffer, int offset) throws IOException {
+		if (!this.writable) {
+			throw new IllegalStateException("Image was not opened for writing");
+		}
+
+		final int segment = findSegment(sectorNumber);
+
+		if ((this.segmentFiles[segment] == GENERATED)
+				|| (this.segmentTypes[segment].getSectorSize() != CD.SECTOR_SIZE)) {
+			throw new IllegalStateException(
+					"Sector " + sectorNumber + " isn't stored whole and can't be written");
+		}
+
+		final FileChannel channel = this.channels[this.segmentFiles[segment]];
+		final ByteBuffer source = ByteBuffer.wrap(buffer, offset, CD.SECTOR_SIZE);
+		final long position = getPosition(segment, sectorNumber);
+
+		while (source.hasRemaining()) {
+			channel.write(source, position + (source.position() - offset));
+		}
+	}
+
+	private long getPosition(int segment, int sectorNumber) {
+		return this.segmentPositions[segment]
+				+ ((long) (sectorNumber - this.segmentStarts[segment]) * this.segmentTypes[segment].getSectorSize());
+	}
+
+	private int findSegment(int sectorNumber) {
+		final int last = this.lastSegment;
+
+		if ((sectorNumber >= this.segmentStarts[last])
+				&& (sectorNumber < (this.segmentStarts[last] + this.segmentCounts[last]))) {
+			return last;
+		}
+		if ((sectorNumber < 0) || (sectorNumber >= this.sectorCount)) {
+			throw new IllegalStateException("Failed to fully read sector " + sectorNumber);
+		}
+
+		int result = Arrays.binarySearch(this.segmentStarts, sectorNumber);
+
+		if (result < 0) {
+			result = -result - 2;
+		}
+
+		this.lastSegment = result;
+
+		return result;
+	}
+
+	@Override
+	public SectorReader duplicate() {
+		return new DiscLayout(this);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.owner) {
+			for (final FileChannel channel : this.channels) {
+				channel.close();
+			}
+		}
+	}
+
+	private static final class CueTrack {
+
+		private final int number;
+		private final Track.Type type;
+		private final int file;
+
+		private int index0 = -1;
+		private int index1 = -1;
+		private int pregap;
+		private int postgap;
+
+		private long position;
+		private int count;
+
+		private CueTrack(int number, Track.Type type, int file) {
+			this.number = number;
+			this.type = type;
+			this.file = file;
+		}
+
+		private int getFileStart() {
+			return (this.index0 == -1) ? this.index1 : this.index0;
+		}
+
+	}
+
+	private static final class Segment {
+
+		private final int count;
+		private final int file;
+		private final long position;
+		private final Track.Type type;
+		private final int track;
+
+		private Segment(int count, int file, long position, Track.Type type, int track) {
+			this.count = count;
+			this.file = file;
+			this.position = position;
+			this.type = type;
+			this.track = track;
+		}
+
+	}
+
+}
@@ -0,0 +1,274 @@
+package com.github.rnveach.sector;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.rnveach.utils.Util;
+
+/**
+ * This removes the parts of each sector that can be rebuilt from the rest of
+ * it, the same idea as ECM. Every sector is written as a type followed by only
+ * what can't be rebuilt for that type. A sector only gets a type if rebuilding
+ * it gives back the exact same bytes, anything else is kept whole, so decoding
+ * always gives back the original image.
+ *
+ * Sectors are handled in batches. Choosing the types when encoding and
+ * rebuilding the sectors when decoding are split over the common fork/join
+ * pool, while reading and writing stay sequential.
+ *
+ * <pre>
+ * header:  magic, version, sector count
+ * sectors: type (1), then the part of the sector that is kept
+ * </pre>
+ */
+public final class EcmCodec {
+
+	public static final String EXTENSION = ".cde";
+
+	/** Kept whole. */
+	public static final int TYPE_RAW = 0;
+	/** Only zeros, with no sync. */
+	public static final int TYPE_EMPTY = 1;
+	/** Mode 1, keeping the 2048 bytes of data. */
+	public static final int TYPE_MODE1 = 2;
+	/** Mode 2 form 1, keeping the sub header once and 2048 bytes of data. */
+	public static final int TYPE_MODE2_FORM1 = 3;
+	/** Mode 2 form 2, keeping the sub header once and 2324 bytes of data. */
+	public static final int TYPE_MODE2_FORM2 = 4;
+	/** Mode 2 form 2 without an EDC, which is allowed to be left as zero. */
+	public static final int TYPE_MODE2_FORM2_NO_EDC = 5;
+
+	private static final int[] KEPT_SIZES = { CD.SECTOR_SIZE, 0, 2048, 4 + 2048, 4 + 2324, 4 + 2324 };
+	private static final int[] KEPT_OFFSETS = { 0, 0, 16, 20, 20, 20 };
+
+	private static final int MAGIC = 0x43444531;
+	private static final int VERSION = 1;
+
+	private static final int SECTORS_PER_BATCH = 4096;
+	private static final int SECTORS_PER_TASK = 256;
+
+	private EcmCodec() {
+	}
+
+	/**
+	 * Writes the sectors of the source to the output and returns how many bytes
+	 * were written.
+	 */
+	public static long encode(SectorReader source, OutputStream output) throws IOException {
+		final int sectorCount = source.getSectorCount();
+		final byte[] sectors = new byte[SECTORS_PER_BATCH * CD.SECTOR_SIZE];
+		final byte[] types = new byte[SECTORS_PER_BATCH];
+		final DataOutputStream writer = new DataOutputStream(output);
+
+		writer.writeInt(MAGIC);
+		writer.writeInt(VERSION);
+		writer.writeInt(sectorCount);
+
+		for (int batchStart = 0; batchStart < sectorCount; batchStart += SECTORS_PER_BATCH) {
+			final int batchSectors = Math.min(SECTORS_PER_BATCH, sectorCount - batchStart);
+
+			source.read(batchStart, batchSectors, sectors, 0);
+
+			ForkJoinPool.commonPool().invoke(new BatchTask(true, sectors, types, batchStart, 0, batchSectors));
+
+			for (int i = 0; i < batchSectors; i++) {
+				final int type = types[i];
+				final int offset = i * CD.SECTOR_SIZE;
+
+				writer.writeByte(type);
+				writer.write(sectors, offset + KEPT_OFFSETS[type], KEPT_SIZES[type]);
+			}
+		}
+
+		writer.flush();
+
+		return writer.size();
+	}
+
+	/**
+	 * Rebuilds the original image from the input into the output and returns the
+	 * number of sectors written.
+	 */
+	public static int decode(InputStream input, OutputStream output) throws IOException {
+		final DataInputStream reader = new DataInputStream(input);
+
+		if ((reader.readInt() != MAGIC) || (reader.readInt() != VERSION)) {
+			throw new IllegalStateException("Not an encoded image");
+		}
+
+		final int sectorCount = reader.readInt();
+		final byte[] sectors = new byte[SECTORS_PER_BATCH * CD.SECTOR_SIZE];
+		final byte[] types = new byte[SECTORS_PER_BATCH];
+
+		for (int batchStart = 0; batchStart < sectorCount; batchStart += SECTORS_PER_BATCH) {
+			final int batchSectors = Math.min(SECTORS_PER_BATCH, sectorCount - batchStart);
+
+			try {
+				for (int i = 0; i < batchSectors; i++) {
+					final int type = reader.readUnsignedByte();
+
+					if (type >= KEPT_SIZES.length) {
+						throw new IllegalStateException(
+								"Unknown type " + type + " for sector " + (batchStart + i));
+					}
+
+					types[i] = (byte) type;
+					reader.readFully(sectors, (i * CD.SECTOR_SIZE) + KEPT_OFFSETS[type], KEPT_SIZES[type]);
+				}
+			} catch (final EOFException ex) {
+				throw new IllegalStateException("Encoded image is truncated", ex);
+			}
+
+			ForkJoinPool.commonPool().invoke(new BatchTask(false, sectors, types, batchStart, 0, batchSectors));
+
+			output.write(sectors, 0, batchSectors * CD.SECTOR_SIZE);
+		}
+
+		output.flush();
+
+		return sectorCount;
+	}
+
+	/**
+	 * Returns the type the sector can be stored as, rebuilding it into the scratch
+	 * buffer to make sure it comes back the same.
+	 */
+	private static int identify(byte[] buffer, int offset, int sectorNumber, byte[] scratch) {
+		final int type;
+
+		if (Arrays.equals(buffer, offset, offset + CD.EMPTY_SYNC.length, CD.EMPTY_SYNC, 0, CD.EMPTY_SYNC.length)) {
+			type = TYPE_EMPTY;
+		} else if (!Arrays.equals(buffer, offset, offset + CD.SYNC.length, CD.SYNC, 0, CD.SYNC.length)) {
+			return TYPE_RAW;
+		} else {
+			switch (Edcre.getType(buffer, offset)) {
+			case 1:
+				type = TYPE_MODE1;
+				break;
+			case 2:
+				type = TYPE_MODE2_FORM1;
+				break;
+			case 3:
+				type = (Util.read32LE(buffer, offset + 2348) == 0) ? TYPE_MODE2_FORM2_NO_EDC : TYPE_MODE2_FORM2;
+				break;
+			default:
+				return TYPE_RAW;
+			}
+		}
+
+		Arrays.fill(scratch, (byte) 0);
+		System.arraycopy(buffer, offset + KEPT_OFFSETS[type], scratch, KEPT_OFFSETS[type], KEPT_SIZES[type]);
+
+		rebuild(scratch, 0, sectorNumber, type);
+
+		if (Arrays.equals(buffer, offset, offset + CD.SECTOR_SIZE, scratch, 0, CD.SECTOR_SIZE)) {
+			return type;
+		}
+
+		return TYPE_RAW;
+	}
+
+	/**
+	 * Fills in everything around the kept part of the sector.
+	 */
+	private static void rebuild(byte[] buffer, int offset, int sectorNumber, int type) {
+		switch (type) {
+		case TYPE_RAW:
+			break;
+		case TYPE_EMPTY:
+			Arrays.fill(buffer, offset, offset + CD.SECTOR_SIZE, (byte) 0);
+			break;
+		case TYPE_MODE1:
+			writeHeader(buffer, offset, sectorNumber, 1);
+			Edcre.generateMode1(buffer, offset);
+			break;
+		case TYPE_MODE2_FORM1:
+			writeHeader(buffer, offset, sectorNumber, 2);
+			copySubHeader(buffer, offset);
+			Edcre.generateMode2Form1(buffer, offset);
+			break;
+		case TYPE_MODE2_FORM2:
+			writeHeader(buffer, offset, sectorNumber, 2);
+			copySubHeader(buffer, offset);
+			Edcre.generateMode2Form2(buffer, offset);
+			break;
+		case TYPE_MODE2_FORM2_NO_EDC:
+			writeHeader(buffer, offset, sectorNumber, 2);
+			copySubHeader(buffer, offset);
+			Util.write32LE(buffer, offset + 2348, 0);
+			break;
+		default:
+			throw new IllegalStateException("Unknown type " + type + " for sector " + sectorNumber);
+		}
+	}
+
+	private static void writeHeader(byte[] buffer, int offset, int sectorNumber, int mode) {
+		// sector addresses start after the 2 second lead in
+		final int address = sectorNumber + 150;
+
+		System.arraycopy(CD.SYNC, 0, buffer, offset, CD.SYNC.length);
+
+		buffer[offset + 12] = Util.toBcd(address / 75 / 60);
+		buffer[offset + 13] = Util.toBcd((address / 75) % 60);
+		buffer[offset + 14] = Util.toBcd(address % 75);
+		buffer[offset + 15] = (byte) mode;
+	}
+
+	private static void copySubHeader(byte[] buffer, int offset) {
+		System.arraycopy(buffer, offset + Sector.SUB_HEADER_OFFSET + 4, buffer, offset + Sector.SUB_HEADER_OFFSET,
+				4);
+	}
+
+	private static final class BatchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final boolean encode;
+		private final byte[] sectors;
+		private final byte[] types;
+		private final int batchStart;
+		private final int start;
+		private final int end;
+
+		private BatchTask(boolean encode, byte[] sectors, byte[] types, int batchStart, int start, int end) {
+			this.encode = encode;
+			this.sectors = sectors;
+			this.types = types;
+			this.batchStart = batchStart;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if ((this.end - this.start) <= SECTORS_PER_TASK) {
+				final byte[] scratch = this.encode ? new byte[CD.SECTOR_SIZE] : null;
+
+				for (int i = this.start; i < this.end; i++) {
+					if (this.encode) {
+						this.types[i] = (byte) identify(this.sectors, i * CD.SECTOR_SIZE, this.batchStart + i,
+								scratch);
+					} else {
+						rebuild(this.sectors, i * CD.SECTOR_SIZE, this.batchStart + i, this.types[i]);
+					}
+				}
+
+				return;
+			}
+
+			final int middle = (this.start + this.end) >>> 1;
+
+			invokeAll(new BatchTask(this.encode, this.sectors, this.types, this.batchStart, this.start, middle),
+					new BatchTask(this.encode, this.sectors, this.types, this.batchStart, middle, this.end));
+		}
+
+	}
+
+}
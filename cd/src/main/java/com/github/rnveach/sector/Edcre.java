@@ -1,5 +1,12 @@
 package com.github.rnveach.sector;
 
+import com.github.rnveach.utils.Util;
+
+/**
+ * This calculates and checks the EDC and the P/Q parity ECC of Mode 1 and Mode
+ * 2 sectors. Everything works in place on a raw sector inside a buffer and
+ * nothing is allocated, so it can be run over every sector of an image.
+ */
 public final class Edcre {
 
 	private static final int GF8_PRIM_POLY = 0x11d;// x^8 + x^4 + x^3 + x^2 + 1
@@ -16,11 +23,24 @@ public final class Edcre {
 	private static final int LEC_MODE2_FORM2_DATA_LEN = (2324 + 8);
 	private static final int LEC_MODE2_FORM2_EDC_OFFSET = 2348;
 
+	private static final int P_MAJOR_COUNT = 86;
+	private static final int P_MINOR_COUNT = 24;
+	private static final int P_MAJOR_MULTIPLIER = 2;
+	private static final int P_MINOR_INCREMENT = 86;
+
+	private static final int Q_MAJOR_COUNT = 52;
+	private static final int Q_MINOR_COUNT = 43;
+	private static final int Q_MAJOR_MULTIPLIER = 86;
+	private static final int Q_MINOR_INCREMENT = 88;
+
 	private static final int[] CRC_TABLE = new int[256];
 
-	public static void main(String... arguments) {
-		System.out.println("Hello");
-	}
+	// slice by 8, each 256 entry block processes a byte that is one further back
+	private static final int[] CRC_SLICE_TABLE = new int[8 * 256];
+
+	// multiplication by alpha in GF(2^8), and the inverse of (x * (alpha + 1))
+	private static final int[] GF8_FORWARD = new int[256];
+	private static final int[] GF8_BACKWARD = new int[256];
 
 	static {
 		for (int i = 0; i < 256; i++) {
@@ -39,6 +59,26 @@ public final class Edcre {
 			r = mirrorBits(r, 32);
 			CRC_TABLE[i] = r;
 		}
+
+		System.arraycopy(CRC_TABLE, 0, CRC_SLICE_TABLE, 0, 256);
+
+		for (int slice = 1; slice < 8; slice++) {
+			for (int i = 0; i < 256; i++) {
+				final int previous = CRC_SLICE_TABLE[((slice - 1) * 256) + i];
+
+				CRC_SLICE_TABLE[(slice * 256) + i] = (previous >>> 8) ^ CRC_TABLE[previous & 0xFF];
+			}
+		}
+
+		for (int i = 0; i < 256; i++) {
+			final int forward = (i << 1) ^ (((i & 0x80) != 0) ? GF8_PRIM_POLY : 0);
+
+			GF8_FORWARD[i] = forward;
+			GF8_BACKWARD[i ^ forward] = i;
+		}
+	}
+
+	private Edcre() {
 	}
 
 	private static int mirrorBits(int d, int bits) {
@@ -53,42 +93,229 @@ public final class Edcre {
 		return r;
 	}
 
-	public static void calcPParity(byte[] sector) {
-		int i, j;
-		int p01Msb, p01Lsb;
-		int pLsbStart;
-		int p0Offset, p1Offset;
-		byte d0, d1;
+	public static int computeEdc(int edc, byte[] buffer, int offset, int length) {
+		int position = offset;
+		final int end = offset + length;
+
+		while ((end - position) >= 8) {
+			final int low = edc ^ ((buffer[position] & 0xFF) | ((buffer[position + 1] & 0xFF) << 8)
+					| ((buffer[position + 2] & 0xFF) << 16) | ((buffer[position + 3] & 0xFF) << 24));
+
+			edc = CRC_SLICE_TABLE[(7 * 256) + (low & 0xFF)] //
+					^ CRC_SLICE_TABLE[(6 * 256) + ((low >>> 8) & 0xFF)] //
+					^ CRC_SLICE_TABLE[(5 * 256) + ((low >>> 16) & 0xFF)] //
+					^ CRC_SLICE_TABLE[(4 * 256) + (low >>> 24)] //
+					^ CRC_SLICE_TABLE[(3 * 256) + (buffer[position + 4] & 0xFF)] //
+					^ CRC_SLICE_TABLE[(2 * 256) + (buffer[position + 5] & 0xFF)] //
+					^ CRC_SLICE_TABLE[256 + (buffer[position + 6] & 0xFF)] //
+					^ CRC_SLICE_TABLE[buffer[position + 7] & 0xFF];
+
+			position += 8;
+		}
+
+		while (position < end) {
+			edc = (edc >>> 8) ^ CRC_TABLE[(edc ^ buffer[position]) & 0xFF];
+			position++;
+		}
+
+		return edc;
+	}
+
+	/**
+	 * Regenerates the EDC and ECC of the sector at the offset based on the mode
+	 * and form it declares. Sectors without either are left untouched.
+	 */
+	public static void generate(byte[] buffer, int offset) {
+		switch (getType(buffer, offset)) {
+		case 1:
+			generateMode1(buffer, offset);
+			break;
+		case 2:
+			generateMode2Form1(buffer, offset);
+			break;
+		case 3:
+			generateMode2Form2(buffer, offset);
+			break;
+		default:
+			break;
+		}
+	}
+
+	public static void generateMode1(byte[] buffer, int offset) {
+		Util.write32LE(buffer, offset + LEC_MODE1_EDC_OFFSET,
+				computeEdc(0, buffer, offset, LEC_DATA_OFFSET + LEC_MODE1_DATA_LEN));
+
+		for (int i = LEC_MODE1_INTERMEDIATE_OFFSET; i < LEC_MODE1_P_PARITY_OFFSET; i++) {
+			buffer[offset + i] = 0;
+		}
+
+		calcPParity(buffer, offset);
+		calcQParity(buffer, offset);
+	}
+
+	public static void generateMode2Form1(byte[] buffer, int offset) {
+		Util.write32LE(buffer, offset + LEC_MODE2_FORM1_EDC_OFFSET,
+				computeEdc(0, buffer, offset + LEC_DATA_OFFSET, LEC_MODE2_FORM1_DATA_LEN));
+
+		// mode 2 parity is calculated as if the header was all zeros
+		final int header = readHeader(buffer, offset);
+
+		clearHeader(buffer, offset);
+		calcPParity(buffer, offset);
+		calcQParity(buffer, offset);
+		writeHeader(buffer, offset, header);
+	}
+
+	public static void generateMode2Form2(byte[] buffer, int offset) {
+		Util.write32LE(buffer, offset + LEC_MODE2_FORM2_EDC_OFFSET,
+				computeEdc(0, buffer, offset + LEC_DATA_OFFSET, LEC_MODE2_FORM2_DATA_LEN));
+	}
 
-		pLsbStart = LEC_HEADER_OFFSET;
+	public static void calcPParity(byte[] buffer, int offset) {
+		computeParity(buffer, offset, P_MAJOR_COUNT, P_MINOR_COUNT, P_MAJOR_MULTIPLIER, P_MINOR_INCREMENT,
+				LEC_MODE1_P_PARITY_OFFSET, true);
+	}
 
-		p1Offset = LEC_MODE1_P_PARITY_OFFSET;
-		p0Offset = LEC_MODE1_P_PARITY_OFFSET + (2 * 43);
+	public static void calcQParity(byte[] buffer, int offset) {
+		computeParity(buffer, offset, Q_MAJOR_COUNT, Q_MINOR_COUNT, Q_MAJOR_MULTIPLIER, Q_MINOR_INCREMENT,
+				LEC_MODE1_Q_PARITY_OFFSET, true);
+	}
 
-		for (i = 0; i <= 42; i++) {
-			p01Lsb = p01Msb = 0;
+	/**
+	 * Checks the stored EDC of the sector against its contents. Sectors without
+	 * an EDC, and Mode 2 Form 2 sectors which leave it as zero, always pass.
+	 */
+	public static boolean isEdcValid(byte[] buffer, int offset) {
+		switch (getType(buffer, offset)) {
+		case 1:
+			return Util.read32LE(buffer, offset + LEC_MODE1_EDC_OFFSET) == computeEdc(0, buffer, offset,
+					LEC_DATA_OFFSET + LEC_MODE1_DATA_LEN);
+		case 2:
+			return Util.read32LE(buffer, offset + LEC_MODE2_FORM1_EDC_OFFSET) == computeEdc(0, buffer,
+					offset + LEC_DATA_OFFSET, LEC_MODE2_FORM1_DATA_LEN);
+		case 3:
+			final int stored = Util.read32LE(buffer, offset + LEC_MODE2_FORM2_EDC_OFFSET);
+
+			return (stored == 0)
+					|| (stored == computeEdc(0, buffer, offset + LEC_DATA_OFFSET, LEC_MODE2_FORM2_DATA_LEN));
+		default:
+			return true;
+		}
+	}
 
-			for (j = 19; j <= 42; j++) {
-				d0 = sector[pLsbStart];
-				d1 = sector[pLsbStart + 1];
+	/**
+	 * Checks the stored P and Q parity of the sector against its contents. Sectors
+	 * without an ECC always pass. The header of a Mode 2 sector is temporarily
+	 * cleared while checking.
+	 */
+	public static boolean isEccValid(byte[] buffer, int offset) {
+		final int type = getType(buffer, offset);
 
-				p01Lsb ^= CF8_Q_COEFFS_RESULTS_01[j][d0 & 0xFF];
-				p01Msb ^= CF8_Q_COEFFS_RESULTS_01[j][d1 & 0xFF];
+		if ((type != 1) && (type != 2)) {
+			return true;
+		}
 
-				pLsbStart += 2 * 43;
+		if (type == 1) {
+			for (int i = LEC_MODE1_INTERMEDIATE_OFFSET; i < LEC_MODE1_P_PARITY_OFFSET; i++) {
+				if (buffer[offset + i] != 0) {
+					return false;
+				}
 			}
+		}
 
-			sector[p0Offset] = (byte) p01Lsb;
-			sector[p0Offset + 1] = (byte) p01Msb;
+		final int header = readHeader(buffer, offset);
 
-			sector[p1Offset] = (byte) (p01Lsb >> 8);
-			sector[p1Offset + 1] = (byte) (p01Msb >> 8);
+		if (type == 2) {
+			clearHeader(buffer, offset);
+		}
 
-			p0Offset += 2;
-			p1Offset += 2;
+		final boolean result = computeParity(buffer, offset, P_MAJOR_COUNT, P_MINOR_COUNT, P_MAJOR_MULTIPLIER,
+				P_MINOR_INCREMENT, LEC_MODE1_P_PARITY_OFFSET, false)
+				&& computeParity(buffer, offset, Q_MAJOR_COUNT, Q_MINOR_COUNT, Q_MAJOR_MULTIPLIER,
+						Q_MINOR_INCREMENT, LEC_MODE1_Q_PARITY_OFFSET, false);
 
-			pLsbStart += 2;
+		writeHeader(buffer, offset, header);
+
+		return result;
+	}
+
+	/**
+	 * Identifies the sector as 0 for no EDC/ECC, 1 for Mode 1, 2 for Mode 2 Form 1
+	 * and 3 for Mode 2 Form 2. The sync is expected to have already been checked.
+	 */
+	public static int getType(byte[] buffer, int offset) {
+		switch (buffer[offset + 15]) {
+		case 1:
+			return 1;
+		case 2:
+			final int subHeader = offset + LEC_DATA_OFFSET;
+
+			if ((buffer[subHeader] != buffer[subHeader + 4]) || (buffer[subHeader + 1] != buffer[subHeader + 5])
+					|| (buffer[subHeader + 2] != buffer[subHeader + 6])
+					|| (buffer[subHeader + 3] != buffer[subHeader + 7])) {
+				return 0;
+			}
+
+			return ((buffer[subHeader + 2] & 0x20) == 0x20) ? 3 : 2;
+		default:
+			return 0;
 		}
 	}
 
+	// P parity is 86 columns of 24 bytes and Q parity is 52 diagonals of 43 bytes,
+	// both over the 16 bit words starting at the header. The lower and higher bytes
+	// of the words are handled as separate "major" passes.
+	private static boolean computeParity(byte[] buffer, int offset, int majorCount, int minorCount,
+			int majorMultiplier, int minorIncrement, int parityOffset, boolean write) {
+		final int source = offset + LEC_HEADER_OFFSET;
+		final int destination = offset + parityOffset;
+		final int size = majorCount * minorCount;
+
+		for (int major = 0; major < majorCount; major++) {
+			int index = ((major >> 1) * majorMultiplier) + (major & 1);
+			int eccA = 0;
+			int eccB = 0;
+
+			for (int minor = 0; minor < minorCount; minor++) {
+				final int value = buffer[source + index] & 0xFF;
+
+				index += minorIncrement;
+
+				if (index >= size) {
+					index -= size;
+				}
+
+				eccA ^= value;
+				eccB ^= value;
+				eccA = GF8_FORWARD[eccA];
+			}
+
+			eccA = GF8_BACKWARD[GF8_FORWARD[eccA] ^ eccB];
+
+			final byte first = (byte) eccA;
+			final byte second = (byte) (eccA ^ eccB);
+
+			if (write) {
+				buffer[destination + major] = first;
+				buffer[destination + major + majorCount] = second;
+			} else if ((buffer[destination + major] != first) || (buffer[destination + major + majorCount] != second)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int readHeader(byte[] buffer, int offset) {
+		return Util.read32LE(buffer, offset + LEC_HEADER_OFFSET);
+	}
+
+	private static void writeHeader(byte[] buffer, int offset, int header) {
+		Util.write32LE(buffer, offset + LEC_HEADER_OFFSET, header);
+	}
+
+	private static void clearHeader(byte[] buffer, int offset) {
+		writeHeader(buffer, offset, 0);
+	}
+
 }
@@ -0,0 +1,118 @@
+package com.github.rnveach.sector;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This reads and writes whole sectors through a {@link RandomAccessFile}, one
+ * call per sector. Duplicates share the file and lock on it.
+ */
+public final class FileSectorReader implements SectorReader {
+
+	private final RandomAccessFile file;
+
+	private final boolean owner;
+
+	public FileSectorReader(RandomAccessFile file) {
+		this(file, true);
+	}
+
+	private FileSectorReader(RandomAccessFile file, boolean owner) {
+		this.file = file;
+		this.owner = owner;
+	}
+
+	@Override
+	public int getSectorCount() throws IOException {
+		return (int) (this.file.length() / CD.SECTOR_SIZE);
+	}
+
+	@Override
+	public void read(int sectorNumber, byte[] buffer, int offset) throws IOException {
+		synchronized (this.file) {
+			this.file.seek((long) sectorNumber * CD.SECTOR_SIZE);
+
+			try {
+				this.file.readFully(buffer, offset, CD.SECTOR_SIZE);
+			} catch (final EOFException ex) {
+				throw new IllegalStateException("Failed to fully read sector " + sectorNumber, ex);
+			}
+		}
+	}
+
+	@Override
+	public void read(int firstSector, int sectorCount, byte[] buffer, int offset) throws IOException {
+		final int length = sectorCount * CD.SECTOR_SIZE;
+
+		synchronized (this.file) {
+			this.file.seek((long) firstSector * CD.SECTOR_SIZE);
+
+			try {
+				this.file.readFully(buffer, offset, length);
+			} catch (final EOFException ex) {
+				throw new IllegalStateException(
+						"Failed to fully read sectors " + firstSector + "-" + (firstSector + sectorCount - 1), ex);
+			}
+		}
+	}
+
+	/**
+	 * This reads at the position given without moving the file pointer, so it
+	 * doesn't need the lock.
+	 */
+	@Override
+	public void readPart(int sectorNumber, int sectorOffset, int length, ByteBuffer destination)
+			throws IOException {
+		final FileChannel channel = this.file.getChannel();
+		final int limit = destination.limit();
+		long position = ((long) sectorNumber * CD.SECTOR_SIZE) + sectorOffset;
+
+		destination.limit(destination.position() + length);
+
+		try {
+			while (destination.hasRemaining()) {
+				final int read = channel.read(destination, position);
+
+				if (read == -1) {
+					throw new IllegalStateException("Failed to fully read sector " + sectorNumber);
+				}
+
+				position += read;
+			}
+		} finally {
+			destination.limit(limit);
+		}
+	}
+
+	@Override
+	public void write(int sectorNumber, byte[] buffer, int offset) throws IOException {
+		synchronized (this.file) {
+			this.file.seek((long) sectorNumber * CD.SECTOR_SIZE);
+			this.file.write(buffer, offset, CD.SECTOR_SIZE);
+		}
+	}
+
+	@Override
+	public void write(int firstSector, int sectorCount, byte[] buffer, int offset) throws IOException {
+		synchronized (this.file) {
+			this.file.seek((long) firstSector * CD.SECTOR_SIZE);
+			this.file.write(buffer, offset, sectorCount * CD.SECTOR_SIZE);
+		}
+	}
+
+	@Override
+	public SectorReader duplicate() {
+		return new FileSectorReader(this.file, false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.owner) {
+			this.file.close();
+		}
+	}
+
+}
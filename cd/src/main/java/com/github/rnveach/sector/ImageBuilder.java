@@ -0,0 +1,821 @@
+package com.github.rnveach.sector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.github.rnveach.utils.Util;
+
+/**
+ * This builds a new image from a folder written by {@code ExtractFiles} and its
+ * {@code cd-info.txt}. Directories and files keep the sectors the manifest
+ * lists whenever they still fit, so anything that addresses them directly
+ * keeps working, and only what grew is moved to free space or the end of the
+ * volume. "Sector Mode" files are written as the raw sectors they were
+ * extracted as.
+ *
+ * The image is written from start to end in large chunks. Each chunk is filled
+ * with its sectors' headers and data, then its EDC/ECC is computed on a pool
+ * of workers while the next chunks are filled, and the writer takes the
+ * chunks back in order.
+ */
+public final class ImageBuilder {
+
+	public static final String MANIFEST = "cd-info.txt";
+
+	private static final int SYSTEM_AREA_SECTORS = 16;
+	private static final int PRIMARY_DESCRIPTOR = 16;
+	private static final int DESCRIPTOR_TERMINATOR = 17;
+	private static final int FIRST_FREE_SECTOR = 18;
+
+	private static final int SECTORS_PER_CHUNK = 256;
+
+	private static final int SUB_MODE_DATA = 0x08;
+	private static final int SUB_MODE_LAST = 0x89;
+
+	private static final int FLAG_DIRECTORY = 0x02;
+
+	private final File folder;
+
+	private final Node root;
+
+	// every entry in the order of the manifest, with the root first
+	private final List<Node> nodes;
+
+	private final List<Node> directories = new ArrayList<>();
+
+	private final List<String> movedPaths = new ArrayList<>();
+
+	private final Map<String, Node> addedDirectories = new HashMap<>();
+
+	private final List<Extent> extents = new ArrayList<>();
+
+	private int mode = 2;
+
+	private byte[] systemArea;
+
+	private byte[] primaryDescriptor;
+
+	private int volumeSize;
+
+	private int pathTableSize;
+
+	private int lPathTableSector;
+
+	private int mPathTableSector;
+
+	private int extentIndex;
+
+	private InputStream extentInput;
+
+	private ImageBuilder(File folder, Node root, List<Node> nodes) {
+		this.folder = folder;
+		this.root = root;
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Reads the manifest and the sizes of the files in the folder.
+	 */
+	public static ImageBuilder load(File folder) throws IOException {
+		final List<Node> nodes = new ArrayList<>();
+		final Map<String, Node> byPath = new HashMap<>();
+		Node current = null;
+		Node target = null;
+
+		try (BufferedReader reader = Files.newBufferedReader(new File(folder, MANIFEST).toPath(),
+				StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+
+				if (line.isEmpty()) {
+					continue;
+				}
+
+				if (line.startsWith("Directory:")) {
+					final String path = Util.readStringDataFromInput(line, "Directory");
+
+					if (path.isEmpty()) {
+						current = new Node(null, "");
+
+						nodes.add(current);
+					} else {
+						current = byPath.get(path);
+
+						if (current == null) {
+							throw new IllegalStateException("Directory isn't listed in its parent: " + path);
+						}
+					}
+
+					current.directory = true;
+					current.children = new ArrayList<>();
+					target = current;
+				} else if (line.startsWith("Directory Entry #")) {
+					if (current == null) {
+						throw new IllegalStateException("Directory entry outside of a directory: " + line);
+					}
+
+					target = null;
+				} else if (line.startsWith("Name:")) {
+					target = new Node(current, Util.readStringDataFromInput(line, "Name"));
+
+					current.children.add(target);
+					nodes.add(target);
+					byPath.put(target.path, target);
+				} else if (target == null) {
+					throw new IllegalStateException("Unexpected input, expected 'Name' in: " + line);
+				} else if (line.startsWith("Sector:")) {
+					target.originalSector = Integer.parseInt(Util.readStringDataFromInput(line, "Sector"));
+				} else if (line.startsWith("Size:")) {
+					target.originalSize = Integer.parseInt(Util.readStringDataFromInput(line, "Size"));
+				} else if ("Sector Mode".equals(line)) {
+					target.sectorMode = true;
+				} else {
+					throw new IllegalStateException("Unexpected input: " + line);
+				}
+			}
+		}
+
+		if (nodes.isEmpty() || !nodes.get(0).directory) {
+			throw new IllegalStateException("Manifest has no root directory");
+		}
+
+		final ImageBuilder result = new ImageBuilder(folder, nodes.get(0), nodes);
+
+		result.readSizes();
+
+		return result;
+	}
+
+	/**
+	 * Starts an image with only the root directory, for entries added with
+	 * {@link #addDirectory(String)} and {@link #addFile(String, int, boolean, Content)}.
+	 */
+	static ImageBuilder create() {
+		final Node root = new Node(null, "");
+		final List<Node> nodes = new ArrayList<>();
+
+		root.directory = true;
+		root.children = new ArrayList<>();
+		nodes.add(root);
+
+		return new ImageBuilder(null, root, nodes);
+	}
+
+	void addDirectory(String path) {
+		final Node node = addNode(path);
+
+		node.directory = true;
+		node.children = new ArrayList<>();
+
+		this.addedDirectories.put(node.path, node);
+	}
+
+	/**
+	 * Adds a file whose sectors are given by the content instead of a file in the
+	 * folder. The size is in 2048 byte sectors for files in sector mode, like the
+	 * manifest lists it.
+	 */
+	void addFile(String path, int size, boolean sectorMode, Content content) {
+		final Node node = addNode(path);
+
+		node.size = size;
+		node.sectorMode = sectorMode;
+		node.content = content;
+	}
+
+	private Node addNode(String path) {
+		if (!this.directories.isEmpty()) {
+			throw new IllegalStateException("Entries can't be added after the layout");
+		}
+
+		final int split = path.lastIndexOf('\\');
+		final Node parent = (split <= 0) ? this.root : this.addedDirectories.get(path.substring(0, split));
+
+		if (parent == null) {
+			throw new IllegalStateException("Directory isn't added before its entries: " + path);
+		}
+
+		final Node result = new Node(parent, path.substring(split + 1));
+
+		parent.children.add(result);
+		this.nodes.add(result);
+
+		return result;
+	}
+
+	private void readSizes() {
+		final ArrayDeque<Node> queue = new ArrayDeque<>();
+
+		// directories are numbered for the path tables by level, then parent
+		queue.add(this.root);
+
+		while (!queue.isEmpty()) {
+			final Node directory = queue.remove();
+
+			this.directories.add(directory);
+			directory.number = this.directories.size();
+
+			for (final Node child : directory.children) {
+				if (child.directory) {
+					queue.add(child);
+				}
+			}
+		}
+
+		for (final Node directory : this.directories) {
+			int position = 0;
+
+			position = addRecord(position, 1);
+			position = addRecord(position, 1);
+
+			for (final Node child : directory.children) {
+				position = addRecord(position, child.getDiscName().length);
+			}
+
+			// directories don't shrink, so they keep their place
+			directory.size = Math.max(getSectorCount(position), getSectorCount(directory.originalSize)) * 2048;
+
+			this.pathTableSize += getPathRecordLength(Math.max(1, directory.name.length()));
+		}
+
+		for (final Node node : this.nodes) {
+			if (node.directory || (node.content != null)) {
+				continue;
+			}
+
+			node.file = new File(this.folder, node.path.substring(1).replace('\\', File.separatorChar));
+
+			if (!node.file.isFile()) {
+				throw new IllegalStateException("Missing file to build: " + node.file);
+			}
+
+			if (node.sectorMode) {
+				node.size = (int) (node.file.length() / CD.SECTOR_SIZE) * 2048;
+			} else {
+				node.size = (int) node.file.length();
+			}
+		}
+	}
+
+	/**
+	 * Records never cross a sector boundary, so one that doesn't fit starts the
+	 * next sector.
+	 */
+	private static int addRecord(int position, int nameLength) {
+		final int length = getRecordLength(nameLength);
+
+		if (((position % 2048) + length) > 2048) {
+			return (getSectorCount(position) * 2048) + length;
+		}
+
+		return position + length;
+	}
+
+	private static int getRecordLength(int nameLength) {
+		return 33 + nameLength + ((nameLength + 1) % 2);
+	}
+
+	private static int getPathRecordLength(int nameLength) {
+		return 8 + nameLength + (nameLength % 2);
+	}
+
+	private static int getSectorCount(int size) {
+		return (size + 2047) / 2048;
+	}
+
+	/**
+	 * Takes the system area and the identifiers of the volume from an existing
+	 * image, usually the one the folder was extracted from, along with whether
+	 * its sectors are Mode 1 or Mode 2.
+	 */
+	public void setTemplate(CD template) throws IOException {
+		this.systemArea = new byte[SYSTEM_AREA_SECTORS * CD.SECTOR_SIZE];
+
+		template.getReader().read(0, SYSTEM_AREA_SECTORS, this.systemArea, 0);
+
+		template.seek(PRIMARY_DESCRIPTOR);
+		template.readSector();
+
+		this.mode = template.getCurrentMode();
+		this.primaryDescriptor = Arrays.copyOf(template.getCurrentData(), 2048);
+
+		if ((this.mode != 1) && (this.mode != 2)) {
+			throw new IllegalStateException("Template's primary volume descriptor is mode " + this.mode);
+		}
+	}
+
+	/**
+	 * Decides where everything goes. Entries that still fit where the manifest
+	 * lists them are placed first, then the path tables and anything that has to
+	 * move are given the lowest free sectors.
+	 */
+	public void layout() {
+		if (this.directories.isEmpty()) {
+			readSizes();
+		}
+
+		final List<Node> kept = new ArrayList<>();
+		final List<Node> moved = new ArrayList<>();
+		int keptEnd = FIRST_FREE_SECTOR;
+
+		for (final Node node : this.nodes) {
+			final int sectorCount = node.getSectorCount();
+
+			if ((sectorCount == 0) || ((sectorCount <= getSectorCount(node.originalSize))
+					&& (node.originalSector >= FIRST_FREE_SECTOR))) {
+				kept.add(node);
+
+				keptEnd = Math.max(keptEnd, node.originalSector + sectorCount);
+			} else {
+				moved.add(node);
+			}
+		}
+
+		final SectorAllocator allocator = SectorAllocator.create(keptEnd);
+
+		allocator.reserve(0, FIRST_FREE_SECTOR);
+
+		for (final Node node : kept) {
+			if (isFree(allocator, node.originalSector, node.getSectorCount())) {
+				node.sector = node.originalSector;
+
+				allocator.reserve(node.sector, node.getSectorCount());
+			} else {
+				moved.add(node);
+			}
+		}
+
+		final int pathTableSectors = getSectorCount(this.pathTableSize);
+
+		this.lPathTableSector = allocator.allocate(pathTableSectors);
+		this.mPathTableSector = allocator.allocate(pathTableSectors);
+
+		for (final Node node : moved) {
+			node.sector = allocator.allocate(node.getSectorCount());
+
+			this.movedPaths.add(node.getDisplayPath());
+		}
+
+		this.volumeSize = allocator.getVolumeSize();
+	}
+
+	private static boolean isFree(SectorAllocator allocator, int firstSector, int sectorCount) {
+		for (int sector = firstSector; sector < (firstSector + sectorCount); sector++) {
+			if (allocator.isUsed(sector)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Writes the image, computing the EDC/ECC on the number of threads given.
+	 */
+	public void write(File output, int threads) throws IOException {
+		createExtents();
+
+		final int inFlight = threads * 2;
+		final ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+		final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		this.extentIndex = 0;
+
+		try (FileOutputStream stream = new FileOutputStream(output); FileChannel channel = stream.getChannel()) {
+			for (int firstSector = 0; firstSector < this.volumeSize; firstSector += SECTORS_PER_CHUNK) {
+				final Chunk chunk = chunks.isEmpty() ? new Chunk() : chunks.pop();
+
+				chunk.sectorCount = Math.min(SECTORS_PER_CHUNK, this.volumeSize - firstSector);
+
+				fill(chunk, firstSector);
+
+				pending.add(executor.submit(() -> {
+					generateParity(chunk);
+
+					return chunk;
+				}));
+
+				if (pending.size() >= inFlight) {
+					chunks.push(writeNext(channel, pending));
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				writeNext(channel, pending);
+			}
+		} catch (final ExecutionException ex) {
+			throw new IllegalStateException("Failed to generate EDC/ECC", ex.getCause());
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+
+			throw new IllegalStateException("Interrupted while building the image", ex);
+		} finally {
+			executor.shutdownNow();
+
+			closeExtentInput();
+		}
+	}
+
+	private static Chunk writeNext(FileChannel channel, ArrayDeque<Future<Chunk>> pending)
+			throws IOException, InterruptedException, ExecutionException {
+		final Chunk chunk = pending.remove().get();
+		final ByteBuffer buffer = ByteBuffer.wrap(chunk.data, 0, chunk.sectorCount * CD.SECTOR_SIZE);
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+
+		return chunk;
+	}
+
+	/**
+	 * Raw sectors keep their EDC/ECC unless it is wrong, as some are left out on
+	 * purpose.
+	 */
+	private static void generateParity(Chunk chunk) {
+		final byte[] data = chunk.data;
+
+		for (int i = 0; i < chunk.sectorCount; i++) {
+			final int offset = i * CD.SECTOR_SIZE;
+
+			if (!Arrays.equals(data, offset, offset + CD.SYNC.length, CD.SYNC, 0, CD.SYNC.length)) {
+				continue;
+			}
+
+			if (!chunk.raw[i] || !Edcre.isEdcValid(data, offset) || !Edcre.isEccValid(data, offset)) {
+				Edcre.generate(data, offset);
+			}
+		}
+	}
+
+	private void createExtents() {
+		final byte[] pathTables = createPathTables();
+
+		this.extents.clear();
+
+		if (this.systemArea != null) {
+			this.extents.add(new Extent(0, SYSTEM_AREA_SECTORS, this.systemArea, null, null, true));
+		}
+
+		this.extents.add(new Extent(PRIMARY_DESCRIPTOR, 1, createPrimaryDescriptor(), null, null, false));
+		this.extents.add(new Extent(DESCRIPTOR_TERMINATOR, 1, createTerminator(), null, null, false));
+		this.extents.add(new Extent(this.lPathTableSector, getSectorCount(this.pathTableSize),
+				Arrays.copyOfRange(pathTables, 0, this.pathTableSize), null, null, false));
+		this.extents.add(new Extent(this.mPathTableSector, getSectorCount(this.pathTableSize),
+				Arrays.copyOfRange(pathTables, this.pathTableSize, pathTables.length), null, null, false));
+
+		for (final Node node : this.nodes) {
+			if (node.getSectorCount() == 0) {
+				continue;
+			}
+
+			if (node.directory) {
+				this.extents.add(new Extent(node.sector, node.getSectorCount(), createDirectory(node), null, null,
+						false));
+			} else {
+				this.extents.add(new Extent(node.sector, node.getSectorCount(), null, node.content, node.file,
+						node.sectorMode));
+			}
+		}
+
+		this.extents.sort((left, right) -> Integer.compare(left.start, right.start));
+	}
+
+	private byte[] createPrimaryDescriptor() {
+		final byte[] result;
+
+		if (this.primaryDescriptor != null) {
+			result = this.primaryDescriptor.clone();
+		} else {
+			result = new byte[2048];
+
+			result[0] = 1;
+			writeString(result, 1, 5, "CD001");
+			result[6] = 1;
+			// system and volume identifiers
+			writeString(result, 8, 64, "");
+			writeBoth16(result, 120, 1);
+			writeBoth16(result, 124, 1);
+			writeBoth16(result, 128, 2048);
+			// volume set, publisher, preparer, application and file identifiers
+			writeString(result, 190, 813 - 190, "");
+
+			// creation, modification, expiration and effective dates
+			for (int offset = 813; offset < 881; offset += 17) {
+				writeString(result, offset, 16, "0000000000000000");
+			}
+
+			result[881] = 1;
+		}
+
+		writeBoth32(result, 80, this.volumeSize);
+		writeBoth32(result, 132, this.pathTableSize);
+		Util.write32LE(result, 140, this.lPathTableSector);
+		Util.write32LE(result, 144, 0);
+		Util.write32BE(result, 148, this.mPathTableSector);
+		Util.write32BE(result, 152, 0);
+		writeRecord(result, 156, new byte[] { 0 }, this.root);
+
+		return result;
+	}
+
+	private static byte[] createTerminator() {
+		final byte[] result = new byte[2048];
+
+		result[0] = (byte) 0xFF;
+		writeString(result, 1, 5, "CD001");
+		result[6] = 1;
+
+		return result;
+	}
+
+	/**
+	 * Returns the L path table followed by the M path table.
+	 */
+	private byte[] createPathTables() {
+		final byte[] result = new byte[this.pathTableSize * 2];
+		int position = 0;
+
+		for (final Node directory : this.directories) {
+			final byte[] name = (directory == this.root) ? new byte[] { 0 } : directory.getDiscName();
+			final int parent = (directory == this.root) ? 1 : directory.parent.number;
+			final int m = this.pathTableSize + position;
+
+			result[position] = (byte) name.length;
+			Util.write32LE(result, position + 2, directory.sector);
+			Util.write16LE(result, position + 6, parent);
+			System.arraycopy(name, 0, result, position + 8, name.length);
+
+			result[m] = (byte) name.length;
+			Util.write32BE(result, m + 2, directory.sector);
+			result[m + 6] = (byte) (parent >> 8);
+			result[m + 7] = (byte) parent;
+			System.arraycopy(name, 0, result, m + 8, name.length);
+
+			position += getPathRecordLength(name.length);
+		}
+
+		return result;
+	}
+
+	private byte[] createDirectory(Node directory) {
+		final byte[] result = new byte[directory.size];
+		int position = 0;
+
+		position = addRecord(result, position, new byte[] { 0 }, directory);
+		position = addRecord(result, position, new byte[] { 1 },
+				(directory.parent == null) ? directory : directory.parent);
+
+		for (final Node child : directory.children) {
+			position = addRecord(result, position, child.getDiscName(), child);
+		}
+
+		return result;
+	}
+
+	private static int addRecord(byte[] data, int position, byte[] name, Node node) {
+		final int end = addRecord(position, name.length);
+		final int start = end - getRecordLength(name.length);
+
+		writeRecord(data, start, name, node);
+
+		return end;
+	}
+
+	private static void writeRecord(byte[] data, int offset, byte[] name, Node node) {
+		data[offset] = (byte) getRecordLength(name.length);
+		writeBoth32(data, offset + 2, node.sector);
+		writeBoth32(data, offset + 10, node.size);
+		data[offset + 25] = (byte) (node.directory ? FLAG_DIRECTORY : 0);
+		writeBoth16(data, offset + 28, 1);
+		data[offset + 32] = (byte) name.length;
+		System.arraycopy(name, 0, data, offset + 33, name.length);
+	}
+
+	private static void writeBoth16(byte[] data, int offset, int value) {
+		Util.write16LE(data, offset, value);
+		data[offset + 2] = (byte) (value >> 8);
+		data[offset + 3] = (byte) value;
+	}
+
+	private static void writeBoth32(byte[] data, int offset, int value) {
+		Util.write32LE(data, offset, value);
+		Util.write32BE(data, offset + 4, value);
+	}
+
+	private static void writeString(byte[] data, int offset, int length, String value) {
+		for (int i = 0; i < length; i++) {
+			data[offset + i] = (byte) ((i < value.length()) ? value.charAt(i) : ' ');
+		}
+	}
+
+	/**
+	 * Fills the chunk with the sectors' headers and data, leaving the EDC/ECC for
+	 * later. Extents are sorted and never overlap, so they are walked once over
+	 * the whole image.
+	 */
+	private void fill(Chunk chunk, int firstSector) throws IOException {
+		final byte[] data = chunk.data;
+		final int dataOffset = (this.mode == 1) ? 16 : 24;
+
+		Arrays.fill(data, 0, chunk.sectorCount * CD.SECTOR_SIZE, (byte) 0);
+
+		for (int i = 0; i < chunk.sectorCount; i++) {
+			final int sector = firstSector + i;
+			final int offset = i * CD.SECTOR_SIZE;
+
+			while ((this.extentIndex < this.extents.size())
+					&& (this.extents.get(this.extentIndex).getEnd() <= sector)) {
+				closeExtentInput();
+
+				this.extentIndex++;
+			}
+
+			final Extent extent = ((this.extentIndex < this.extents.size())
+					&& (this.extents.get(this.extentIndex).start <= sector)) ? this.extents.get(this.extentIndex) : null;
+
+			chunk.raw[i] = (extent != null) && extent.raw;
+
+			if (extent == null) {
+				writeHeader(data, offset, sector, 0);
+			} else if (extent.raw) {
+				readExtent(extent, sector, data, offset, CD.SECTOR_SIZE);
+
+				if (Arrays.equals(data, offset, offset + CD.SYNC.length, CD.SYNC, 0, CD.SYNC.length)) {
+					writeAddress(data, offset, sector);
+				}
+			} else {
+				writeHeader(data, offset, sector, (sector == (extent.getEnd() - 1)) ? SUB_MODE_LAST : SUB_MODE_DATA);
+				readExtent(extent, sector, data, offset + dataOffset, 2048);
+			}
+		}
+	}
+
+	private void readExtent(Extent extent, int sector, byte[] chunk, int offset, int length) throws IOException {
+		if (extent.content != null) {
+			extent.content.read(sector - extent.start, chunk, offset, length);
+		} else if (extent.data != null) {
+			final int position = (sector - extent.start) * length;
+
+			if (position < extent.data.length) {
+				System.arraycopy(extent.data, position, chunk, offset, Math.min(length, extent.data.length - position));
+			}
+		} else {
+			if (this.extentInput == null) {
+				this.extentInput = new BufferedInputStream(new FileInputStream(extent.file), 1024 * 1024);
+			}
+
+			this.extentInput.readNBytes(chunk, offset, length);
+		}
+	}
+
+	private void closeExtentInput() throws IOException {
+		if (this.extentInput != null) {
+			this.extentInput.close();
+			this.extentInput = null;
+		}
+	}
+
+	private void writeHeader(byte[] chunk, int offset, int sector, int subMode) {
+		System.arraycopy(CD.SYNC, 0, chunk, offset, CD.SYNC.length);
+		writeAddress(chunk, offset, sector);
+		chunk[offset + 15] = (byte) this.mode;
+
+		if (this.mode == 2) {
+			chunk[offset + Sector.SUB_HEADER_OFFSET + 2] = (byte) subMode;
+			chunk[offset + Sector.SUB_HEADER_OFFSET + 6] = (byte) subMode;
+		}
+	}
+
+	private static void writeAddress(byte[] chunk, int offset, int sector) {
+		// sector addresses start after the 2 second lead in
+		final int address = sector + 150;
+
+		chunk[offset + 12] = Util.toBcd(address / 75 / 60);
+		chunk[offset + 13] = Util.toBcd((address / 75) % 60);
+		chunk[offset + 14] = Util.toBcd(address % 75);
+	}
+
+	/**
+	 * Returns the paths of the entries that couldn't stay where the manifest
+	 * lists them.
+	 */
+	public List<String> getMovedPaths() {
+		return this.movedPaths;
+	}
+
+	public int getSectorCount() {
+		return this.volumeSize;
+	}
+
+	/**
+	 * Gives the sectors of a file that is built in memory, one at a time and in
+	 * order.
+	 */
+	interface Content {
+
+		/**
+		 * Fills the length given, the whole raw sector for files in sector mode or
+		 * otherwise its 2048 bytes of data, for the sector at the index in the file.
+		 */
+		void read(int index, byte[] buffer, int offset, int length);
+
+	}
+
+	private static final class Node {
+
+		private final Node parent;
+		private final String name;
+		private final String path;
+
+		private boolean directory;
+		private boolean sectorMode;
+		private int originalSector;
+		private int originalSize;
+		private List<Node> children;
+
+		private File file;
+		private Content content;
+		private int number;
+		private int sector;
+		private int size;
+
+		private Node(Node parent, String name) {
+			this.parent = parent;
+			this.name = name;
+			this.path = (parent == null) ? "" : (parent.path + "\\" + name);
+		}
+
+		/**
+		 * Files get back the version the manifest leaves off.
+		 */
+		private byte[] getDiscName() {
+			return (this.directory ? this.name : (this.name + ";1")).getBytes(StandardCharsets.US_ASCII);
+		}
+
+		private String getDisplayPath() {
+			return (this.parent == null) ? "\\" : this.path;
+		}
+
+		private int getSectorCount() {
+			return ImageBuilder.getSectorCount(this.size);
+		}
+
+	}
+
+	private static final class Chunk {
+
+		private final byte[] data = new byte[SECTORS_PER_CHUNK * CD.SECTOR_SIZE];
+		private final boolean[] raw = new boolean[SECTORS_PER_CHUNK];
+
+		private int sectorCount;
+
+	}
+
+	private static final class Extent {
+
+		private final int start;
+		private final int count;
+		private final byte[] data;
+		private final Content content;
+		private final File file;
+		private final boolean raw;
+
+		private Extent(int start, int count, byte[] data, Content content, File file, boolean raw) {
+			this.start = start;
+			this.count = count;
+			this.data = data;
+			this.content = content;
+			this.file = file;
+			this.raw = raw;
+		}
+
+		private int getEnd() {
+			return this.start + this.count;
+		}
+
+	}
+
+}
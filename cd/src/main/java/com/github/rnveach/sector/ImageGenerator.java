@@ -0,0 +1,239 @@
+package com.github.rnveach.sector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This creates a Mode 2 image of random files for tests and benchmarks. Every
+ * directory has the number of data files given, in Form 1 sectors, and of
+ * stream files, which are raw sectors of Form 2 XA audio with its channels
+ * interleaved, optionally between Form 1 video sectors like a movie. Nothing
+ * is read from disk, so the size is only limited by the time to write it, and
+ * the EDC/ECC is computed on several threads by {@link ImageBuilder}.
+ *
+ * The same settings and seed always give the same image.
+ */
+public final class ImageGenerator {
+
+	private static final int SUB_MODE_END_OF_RECORD = 0x01;
+	private static final int SUB_MODE_AUDIO = 0x04;
+	private static final int SUB_MODE_DATA = 0x08;
+	private static final int SUB_MODE_FORM_2 = 0x20;
+	private static final int SUB_MODE_REAL_TIME = 0x40;
+	private static final int SUB_MODE_END_OF_FILE = 0x80;
+
+	// stereo, 37.8 kHz, 4 bits per sample
+	private static final int CODING_INFO = 0x01;
+
+	private static final int STREAM_FILE_NUMBER = 1;
+
+	private static final int MAXIMUM_NAMES = 1000;
+
+	private int depth = 1;
+
+	private int directoriesPerLevel = 2;
+
+	private int filesPerDirectory = 4;
+
+	private int fileSize = 64 * 1024;
+
+	private int streamsPerDirectory;
+
+	private int streamSectors = 300;
+
+	private int channels = 1;
+
+	private int audioInterval = 1;
+
+	private long seed = 1;
+
+	/**
+	 * Sets how many levels of directories are below the root.
+	 */
+	public void setDepth(int depth) {
+		this.depth = checkNotNegative(depth, "Depth");
+	}
+
+	public void setDirectoriesPerLevel(int directoriesPerLevel) {
+		this.directoriesPerLevel = checkName(directoriesPerLevel, "Directory");
+	}
+
+	public void setFilesPerDirectory(int filesPerDirectory) {
+		this.filesPerDirectory = checkName(filesPerDirectory, "File");
+	}
+
+	public void setFileSize(int fileSize) {
+		this.fileSize = checkNotNegative(fileSize, "File size");
+	}
+
+	public void setStreamsPerDirectory(int streamsPerDirectory) {
+		this.streamsPerDirectory = checkName(streamsPerDirectory, "Stream");
+	}
+
+	public void setStreamSectors(int streamSectors) {
+		this.streamSectors = checkNotNegative(streamSectors, "Stream sector count");
+	}
+
+	/**
+	 * Sets how many XA audio channels take turns in each stream.
+	 */
+	public void setChannels(int channels) {
+		if ((channels < 1) || (channels > 32)) {
+			throw new IllegalArgumentException("Channels must be from 1 to 32");
+		}
+
+		this.channels = channels;
+	}
+
+	/**
+	 * Sets how often a stream sector is audio, with the others being video, so 8
+	 * gives one audio sector followed by 7 video sectors. 1 is only audio.
+	 */
+	public void setAudioInterval(int audioInterval) {
+		if (audioInterval < 1) {
+			throw new IllegalArgumentException("Audio interval must be at least 1");
+		}
+
+		this.audioInterval = audioInterval;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	private static int checkNotNegative(int value, String name) {
+		if (value < 0) {
+			throw new IllegalArgumentException(name + " can't be negative");
+		}
+
+		return value;
+	}
+
+	private static int checkName(int count, String name) {
+		if ((count < 0) || (count > MAXIMUM_NAMES)) {
+			throw new IllegalArgumentException(name + " count must be from 0 to " + MAXIMUM_NAMES);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Writes the image and returns its number of sectors.
+	 */
+	public int write(File output, int threads) throws IOException {
+		final ImageBuilder builder = ImageBuilder.create();
+
+		addDirectory(builder, "", this.depth);
+
+		builder.layout();
+		builder.write(output, threads);
+
+		return builder.getSectorCount();
+	}
+
+	/**
+	 * Entries are added in name order, as ISO9660 lists them.
+	 */
+	private void addDirectory(ImageBuilder builder, String path, int levels) {
+		final int directoryCount = (levels > 0) ? this.directoriesPerLevel : 0;
+
+		for (int i = 0; i < directoryCount; i++) {
+			builder.addDirectory(path + String.format("\\D%03d", i));
+		}
+
+		for (int i = 0; i < this.filesPerDirectory; i++) {
+			final String filePath = path + String.format("\\F%03d.BIN", i);
+			final long fileSeed = this.seed ^ filePath.hashCode();
+			final int size = this.fileSize;
+
+			// the end of the last sector is left empty
+			builder.addFile(filePath, size, false, (index, buffer, offset, length) -> fillRandom(fileSeed, index,
+					buffer, offset, Math.min(length, size - (index * 2048))));
+		}
+
+		for (int i = 0; i < this.streamsPerDirectory; i++) {
+			final String streamPath = path + String.format("\\S%03d.STR", i);
+			final long streamSeed = this.seed ^ streamPath.hashCode();
+
+			builder.addFile(streamPath, this.streamSectors * 2048, true,
+					(index, buffer, offset, length) -> fillStream(streamSeed, index, buffer, offset));
+		}
+
+		for (int i = 0; i < directoryCount; i++) {
+			addDirectory(builder, path + String.format("\\D%03d", i), levels - 1);
+		}
+	}
+
+	/**
+	 * Leaves the address to {@link ImageBuilder}, which fills in the address of
+	 * raw sectors with a sync and regenerates an EDC/ECC that is wrong. A Form 2
+	 * EDC of zero counts as valid, so it is computed here, which works as it
+	 * doesn't cover the address. Form 1 sectors are left empty for the builder.
+	 */
+	private void fillStream(long streamSeed, int index, byte[] buffer, int offset) {
+		final boolean audio = ((index % this.audioInterval) == 0);
+		final int dataOffset = offset + Sector.SUB_HEADER_OFFSET + 8;
+		int subMode;
+		int channel = 0;
+
+		System.arraycopy(CD.SYNC, 0, buffer, offset, CD.SYNC.length);
+		buffer[offset + 15] = 2;
+
+		if (audio) {
+			final int audioIndex = index / this.audioInterval;
+			final int audioCount = ((this.streamSectors - 1) / this.audioInterval) + 1;
+
+			channel = audioIndex % this.channels;
+			subMode = SUB_MODE_FORM_2 | SUB_MODE_REAL_TIME | SUB_MODE_AUDIO;
+
+			if (audioIndex >= (audioCount - this.channels)) {
+				subMode |= SUB_MODE_END_OF_RECORD | SUB_MODE_END_OF_FILE;
+			}
+
+			fillRandom(streamSeed, index, buffer, dataOffset, 2324);
+		} else {
+			subMode = SUB_MODE_REAL_TIME | SUB_MODE_DATA;
+
+			fillRandom(streamSeed, index, buffer, dataOffset, 2048);
+		}
+
+		for (int i = 0; i < 8; i += 4) {
+			buffer[offset + Sector.SUB_HEADER_OFFSET + i] = STREAM_FILE_NUMBER;
+			buffer[offset + Sector.SUB_HEADER_OFFSET + i + 1] = (byte) channel;
+			buffer[offset + Sector.SUB_HEADER_OFFSET + i + 2] = (byte) subMode;
+			buffer[offset + Sector.SUB_HEADER_OFFSET + i + 3] = (byte) (audio ? CODING_INFO : 0);
+		}
+
+		if (audio) {
+			Edcre.generateMode2Form2(buffer, offset);
+		}
+	}
+
+	/**
+	 * Fills with a xorshift generator seeded from the file and the sector, which
+	 * is much faster than {@link java.util.Random} and needs no state between
+	 * sectors.
+	 */
+	private static void fillRandom(long fileSeed, int index, byte[] buffer, int offset, int length) {
+		final ByteBuffer view = ByteBuffer.wrap(buffer, offset, length);
+		long state = ((fileSeed * 31) + index) * 0x9E3779B97F4A7C15L;
+
+		if (state == 0) {
+			state = 1;
+		}
+
+		while (view.hasRemaining()) {
+			state ^= state << 13;
+			state ^= state >>> 7;
+			state ^= state << 17;
+
+			if (view.remaining() >= Long.BYTES) {
+				view.putLong(state);
+			} else {
+				view.put((byte) state);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package com.github.rnveach.sector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * This reads and writes whole sectors from memory mapped windows of the image.
+ * Windows always hold a whole number of sectors so a sector is never split
+ * between two of them, which also lets images larger than 2 GB be mapped.
+ */
+public final class MappedSectorReader implements SectorReader {
+
+	private static final int SECTORS_PER_WINDOW = Integer.MAX_VALUE / CD.SECTOR_SIZE;
+
+	private final FileChannel channel;
+
+	private final boolean writable;
+
+	private final int sectorCount;
+
+	private final ByteBuffer[] windows;
+
+	private final boolean owner;
+
+	public MappedSectorReader(FileChannel channel, boolean writable) throws IOException {
+		this.channel = channel;
+		this.writable = writable;
+		this.sectorCount = (int) (channel.size() / CD.SECTOR_SIZE);
+		this.windows = new ByteBuffer[(this.sectorCount + SECTORS_PER_WINDOW - 1) / SECTORS_PER_WINDOW];
+		this.owner = true;
+
+		final MapMode mode = writable ? MapMode.READ_WRITE : MapMode.READ_ONLY;
+
+		for (int i = 0; i < this.windows.length; i++) {
+			final int firstSector = i * SECTORS_PER_WINDOW;
+			final int sectors = Math.min(SECTORS_PER_WINDOW, this.sectorCount - firstSector);
+
+			this.windows[i] = channel.map(mode, (long) firstSector * CD.SECTOR_SIZE, (long) sectors * CD.SECTOR_SIZE);
+		}
+	}
+
+	private MappedSectorReader(MappedSectorReader original) {
+		this.channel = original.channel;
+		this.writable = original.writable;
+		this.sectorCount = original.sectorCount;
+		this.windows = new ByteBuffer[original.windows.length];
+		this.owner = false;
+
+		// each copy gets its own position and limit over the same mapping
+		for (int i = 0; i < this.windows.length; i++) {
+			this.windows[i] = original.windows[i].duplicate();
+		}
+	}
+
+	@Override
+	public int getSectorCount() {
+		return this.sectorCount;
+	}
+
+	@Override
+	public void read(int sectorNumber, byte[] buffer, int offset) {
+		locate(sectorNumber).get(buffer, offset, CD.SECTOR_SIZE);
+	}
+
+	@Override
+	public void read(int firstSector, int sectorCount, byte[] buffer, int offset) {
+		int sectorNumber = firstSector;
+		int position = offset;
+		int remaining = sectorCount;
+
+		if ((remaining > 0) && ((firstSector + remaining) > this.sectorCount)) {
+			throw new IllegalStateException(
+					"Failed to fully read sectors " + firstSector + "-" + (firstSector + sectorCount - 1));
+		}
+
+		// one copy per window the run touches
+		while (remaining > 0) {
+			final int sectors = Math.min(remaining, SECTORS_PER_WINDOW - (sectorNumber % SECTORS_PER_WINDOW));
+
+			locate(sectorNumber).get(buffer, position, sectors * CD.SECTOR_SIZE);
+
+			sectorNumber += sectors;
+			position += sectors * CD.SECTOR_SIZE;
+			remaining -= sectors;
+		}
+	}
+
+	@Override
+	public void readPart(int sectorNumber, int sectorOffset, int length, ByteBuffer destination) {
+		final ByteBuffer window = locate(sectorNumber);
+		final int start = window.position() + sectorOffset;
+
+		window.position(start).limit(start + length);
+
+		try {
+			destination.put(window);
+		} finally {
+			window.limit(window.capacity());
+		}
+	}
+
+	@Override
+	public void write(int sectorNumber, byte[] buffer, int offset) {
+		if (!this.writable) {
+			throw new IllegalStateException("Image was not mapped for writing");
+		}
+
+		locate(sectorNumber).put(buffer, offset, CD.SECTOR_SIZE);
+	}
+
+	@Override
+	public void write(int firstSector, int sectorCount, byte[] buffer, int offset) {
+		int sectorNumber = firstSector;
+		int position = offset;
+		int remaining = sectorCount;
+
+		if (!this.writable) {
+			throw new IllegalStateException("Image was not mapped for writing");
+		}
+		if ((remaining > 0) && ((firstSector + remaining) > this.sectorCount)) {
+			throw new IllegalStateException(
+					"Failed to fully write sectors " + firstSector + "-" + (firstSector + sectorCount - 1));
+		}
+
+		while (remaining > 0) {
+			final int sectors = Math.min(remaining, SECTORS_PER_WINDOW - (sectorNumber % SECTORS_PER_WINDOW));
+
+			locate(sectorNumber).put(buffer, position, sectors * CD.SECTOR_SIZE);
+
+			sectorNumber += sectors;
+			position += sectors * CD.SECTOR_SIZE;
+			remaining -= sectors;
+		}
+	}
+
+	private ByteBuffer locate(int sectorNumber) {
+		if ((sectorNumber < 0) || (sectorNumber >= this.sectorCount)) {
+			throw new IllegalStateException("Failed to fully read sector " + sectorNumber);
+		}
+
+		final ByteBuffer window = this.windows[sectorNumber / SECTORS_PER_WINDOW];
+
+		window.position((sectorNumber % SECTORS_PER_WINDOW) * CD.SECTOR_SIZE);
+
+		return window;
+	}
+
+	@Override
+	public SectorReader duplicate() {
+		return new MappedSectorReader(this);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.owner) {
+			if (this.writable) {
+				for (final ByteBuffer window : this.windows) {
+					((MappedByteBuffer) window).force();
+				}
+			}
+
+			this.channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,261 @@
+package com.github.rnveach.sector;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This reads sectors ahead of whoever is reading sequentially from another
+ * reader, so waiting on the storage overlaps with decoding and writing what was
+ * already read. Sectors are fetched in blocks on a thread of its own. The
+ * number of blocks kept ahead starts at one and doubles each time a block is
+ * used up in order, up to the depth given, so short reads at scattered places
+ * don't fetch much they won't use. Any read outside of what is ahead starts
+ * over from there.
+ *
+ * Writes go straight through and drop anything that was read ahead.
+ */
+public final class ReadAheadSectorReader implements SectorReader {
+
+	public static final int DEFAULT_DEPTH = 256;
+
+	private static final int SECTORS_PER_BLOCK = 16;
+
+	private final SectorReader reader;
+
+	private final int depth;
+
+	private final int maximumBlocks;
+
+	private final ArrayDeque<Block> blocks = new ArrayDeque<>();
+
+	private final ArrayDeque<byte[]> buffers = new ArrayDeque<>();
+
+	private ExecutorService executor;
+
+	private SectorReader fetcher;
+
+	private int nextSector;
+
+	private int windowBlocks;
+
+	private int sectorCount = -1;
+
+	/**
+	 * Reads up to the depth given in sectors ahead of the reader, which this
+	 * closes when it is closed.
+	 */
+	public ReadAheadSectorReader(SectorReader reader, int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("Read ahead depth must be at least 1");
+		}
+
+		this.reader = reader;
+		this.depth = depth;
+		this.maximumBlocks = (depth + SECTORS_PER_BLOCK - 1) / SECTORS_PER_BLOCK;
+	}
+
+	@Override
+	public int getSectorCount() throws IOException {
+		if (this.sectorCount == -1) {
+			this.sectorCount = this.reader.getSectorCount();
+		}
+
+		return this.sectorCount;
+	}
+
+	@Override
+	public boolean isAudio(int sectorNumber) {
+		return this.reader.isAudio(sectorNumber);
+	}
+
+	@Override
+	public void read(int sectorNumber, byte[] buffer, int offset) throws IOException {
+		read(sectorNumber, 1, buffer, offset);
+	}
+
+	@Override
+	public void read(int firstSector, int sectorCount, byte[] buffer, int offset) throws IOException {
+		int sectorNumber = firstSector;
+		int position = offset;
+		int remaining = sectorCount;
+
+		if ((remaining > 0) && ((firstSector < 0) || ((firstSector + remaining) > getSectorCount()))) {
+			throw new IllegalStateException(
+					"Failed to fully read sectors " + firstSector + "-" + (firstSector + sectorCount - 1));
+		}
+
+		// one copy per block the run touches
+		while (remaining > 0) {
+			final Block block = locate(sectorNumber);
+			final int sectors = Math.min(remaining, block.getEnd() - sectorNumber);
+
+			System.arraycopy(get(block), (sectorNumber - block.first) * CD.SECTOR_SIZE, buffer, position,
+					sectors * CD.SECTOR_SIZE);
+
+			sectorNumber += sectors;
+			position += sectors * CD.SECTOR_SIZE;
+			remaining -= sectors;
+		}
+	}
+
+	/**
+	 * Returns the block holding the sector, dropping the blocks before it and
+	 * topping up the ones ahead.
+	 */
+	private Block locate(int sectorNumber) throws IOException {
+		final Block last = this.blocks.peekLast();
+
+		if ((last == null) || (sectorNumber < this.blocks.peekFirst().first) || (sectorNumber >= last.getEnd())) {
+			restart(sectorNumber);
+		} else {
+			while (this.blocks.peekFirst().getEnd() <= sectorNumber) {
+				this.buffers.push(get(this.blocks.removeFirst()));
+
+				this.windowBlocks = Math.min(this.maximumBlocks, this.windowBlocks * 2);
+			}
+		}
+
+		final int sectorCount = getSectorCount();
+
+		while ((this.blocks.size() < this.windowBlocks) && (this.nextSector < sectorCount)) {
+			submit(Math.min(SECTORS_PER_BLOCK, sectorCount - this.nextSector));
+		}
+
+		return this.blocks.peekFirst();
+	}
+
+	private void restart(int sectorNumber) {
+		clear();
+
+		this.nextSector = sectorNumber;
+		this.windowBlocks = 1;
+	}
+
+	/**
+	 * Blocks still being read can't have their buffers reused, so they are left to
+	 * finish on their own.
+	 */
+	private void clear() {
+		for (final Block block : this.blocks) {
+			block.data.cancel(false);
+		}
+
+		this.blocks.clear();
+	}
+
+	private void submit(int sectorCount) {
+		if (this.executor == null) {
+			this.fetcher = this.reader.duplicate();
+			// the thread goes away while idle, as duplicates aren't always closed
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), runnable -> {
+						final Thread result = new Thread(runnable, "sector-read-ahead");
+
+						result.setDaemon(true);
+
+						return result;
+					});
+
+			executor.allowCoreThreadTimeOut(true);
+
+			this.executor = executor;
+		}
+
+		final int firstSector = this.nextSector;
+		final byte[] buffer = this.buffers.isEmpty() ? new byte[SECTORS_PER_BLOCK * CD.SECTOR_SIZE]
+				: this.buffers.pop();
+		final SectorReader source = this.fetcher;
+
+		this.blocks.add(new Block(firstSector, sectorCount, this.executor.submit(() -> {
+			source.read(firstSector, sectorCount, buffer, 0);
+
+			return buffer;
+		})));
+
+		this.nextSector += sectorCount;
+	}
+
+	private static byte[] get(Block block) throws IOException {
+		try {
+			return block.data.get();
+		} catch (final ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+
+			throw new IllegalStateException("Failed to read ahead", ex.getCause());
+		} catch (final InterruptedException ex) {
+			Thread.currentThread().interrupt();
+
+			throw new IllegalStateException("Interrupted while reading ahead", ex);
+		}
+	}
+
+	@Override
+	public void write(int sectorNumber, byte[] buffer, int offset) throws IOException {
+		clear();
+
+		this.reader.write(sectorNumber, buffer, offset);
+	}
+
+	@Override
+	public void write(int firstSector, int sectorCount, byte[] buffer, int offset) throws IOException {
+		clear();
+
+		this.reader.write(firstSector, sectorCount, buffer, offset);
+	}
+
+	/**
+	 * The copy reads ahead on its own thread.
+	 */
+	@Override
+	public SectorReader duplicate() {
+		return new ReadAheadSectorReader(this.reader.duplicate(), this.depth);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.executor != null) {
+			// interrupting a read can close a channel the reader shares
+			this.executor.shutdown();
+
+			try {
+				this.executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (final InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+
+			this.fetcher.close();
+		}
+
+		this.reader.close();
+	}
+
+	private static final class Block {
+
+		private final int first;
+		private final int count;
+		private final Future<byte[]> data;
+
+		private Block(int first, int count, Future<byte[]> data) {
+			this.first = first;
+			this.count = count;
+			this.data = data;
+		}
+
+		private int getEnd() {
+			return this.first + this.count;
+		}
+
+	}
+
+}
@@ -0,0 +1,236 @@
+package com.github.rnveach.sector;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.github.rnveach.utils.Util;
+
+/**
+ * This is a reusable view over one raw sector. Nothing is copied out of the
+ * buffer when a sector is decoded, the accessors read straight from it, so a
+ * single instance can be used for every sector of a pass.
+ */
+public final class Sector {
+
+	public static final int HEADER_OFFSET = 12;
+	public static final int SUB_HEADER_OFFSET = 16;
+
+	private final byte[] buffer;
+
+	private final ByteBuffer rawView;
+	private final ByteBuffer mode1View;
+	private final ByteBuffer mode2Form0View;
+	private final ByteBuffer mode2Form1View;
+	private final ByteBuffer mode2Form2View;
+
+	private int mode;
+	private int form;
+	private boolean audio;
+
+	private int dataOffset;
+	private int dataLength;
+	private int edcOffset;
+	private int eccOffset;
+
+	public Sector() {
+		this(new byte[CD.SECTOR_SIZE]);
+	}
+
+	public Sector(byte[] buffer) {
+		this.buffer = buffer;
+
+		final ByteBuffer readOnly = ByteBuffer.wrap(buffer).asReadOnlyBuffer();
+
+		this.rawView = view(readOnly, 0, CD.SECTOR_SIZE);
+		this.mode1View = view(readOnly, 16, 2048);
+		this.mode2Form0View = view(readOnly, 16, 2336);
+		this.mode2Form1View = view(readOnly, 24, 2048);
+		this.mode2Form2View = view(readOnly, 24, 2324);
+	}
+
+	private static ByteBuffer view(ByteBuffer buffer, int offset, int length) {
+		return buffer.position(offset).limit(offset + length).slice();
+	}
+
+	public void decode() {
+		this.audio = false;
+
+		if (Arrays.equals(this.buffer, 0, 12, CD.EMPTY_SYNC, 0, 12)) {
+			this.mode = 0;
+			this.form = 0;
+
+			setLayout(0, CD.SECTOR_SIZE, -1, -1);
+		} else if (Arrays.equals(this.buffer, 0, 12, CD.SYNC, 0, 12)) {
+			this.mode = this.buffer[15] & 0xFF;
+
+			switch (this.mode) {
+			case 1:
+				this.form = 0;
+
+				setLayout(16, 2048, 2064, 2076);
+				break;
+			case 2:
+				this.form = identifyMode2Form();
+
+				switch (this.form) {
+				case 0:
+					setLayout(16, 2336, -1, -1);
+					break;
+				case 1:
+					setLayout(24, 2048, 2072, 2076);
+					break;
+				case 2:
+					setLayout(24, 2324, 2348, -1);
+					break;
+				default:
+					throw new IllegalStateException("Unknown sector mode 2 form: " + this.form);
+				}
+				break;
+			default:
+				throw new IllegalStateException("Unknown sector mode: " + this.mode);
+			}
+		} else {
+			throw new IllegalStateException("Sector has no sync");
+		}
+	}
+
+	private void setLayout(int dataOffset, int dataLength, int edcOffset, int eccOffset) {
+		this.dataOffset = dataOffset;
+		this.dataLength = dataLength;
+		this.edcOffset = edcOffset;
+		this.eccOffset = eccOffset;
+	}
+
+	/**
+	 * Decodes the sector as CD-DA audio, where all of it is user data.
+	 */
+	public void decodeAudio() {
+		this.audio = true;
+		this.mode = 0;
+		this.form = 0;
+
+		setLayout(0, CD.SECTOR_SIZE, -1, -1);
+	}
+
+	private int identifyMode2Form() {
+		final int result;
+
+		if ((this.buffer[16] == this.buffer[20]) && (this.buffer[17] == this.buffer[21])
+				&& (this.buffer[18] == this.buffer[22]) && (this.buffer[19] == this.buffer[23])) {
+			if ((this.buffer[18] & 0x20) == 0x20) {
+				result = 2;
+			} else {
+				result = 1;
+			}
+		} else {
+			result = 0;
+		}
+
+		return result;
+	}
+
+	public byte[] getBuffer() {
+		return this.buffer;
+	}
+
+	public boolean isAudio() {
+		return this.audio;
+	}
+
+	public int getMode() {
+		return this.mode;
+	}
+
+	public int getForm() {
+		return this.form;
+	}
+
+	public int getMinute() {
+		return (this.mode == 0) ? 0 : (this.buffer[12] & 0xFF);
+	}
+
+	public int getSecond() {
+		return (this.mode == 0) ? 0 : (this.buffer[13] & 0xFF);
+	}
+
+	public int getFrame() {
+		return (this.mode == 0) ? 0 : (this.buffer[14] & 0xFF);
+	}
+
+	public boolean hasSubHeader() {
+		return (this.mode == 2) && (this.form != 0);
+	}
+
+	public int getFileNumber() {
+		return this.buffer[16] & 0xFF;
+	}
+
+	public int getChannelNumber() {
+		return this.buffer[17] & 0xFF;
+	}
+
+	public int getSubMode() {
+		return this.buffer[18] & 0xFF;
+	}
+
+	public int getCodingInfo() {
+		return this.buffer[19] & 0xFF;
+	}
+
+	public int getUserDataOffset() {
+		return this.dataOffset;
+	}
+
+	public int getUserDataLength() {
+		return this.dataLength;
+	}
+
+	/**
+	 * Returns a read only view of the user data. The same view is handed out for
+	 * every sector with the same layout and is only valid until the next decode.
+	 */
+	public ByteBuffer getUserData() {
+		final ByteBuffer result;
+
+		if (this.mode == 0) {
+			result = this.rawView;
+		} else if (this.mode == 1) {
+			result = this.mode1View;
+		} else if (this.form == 0) {
+			result = this.mode2Form0View;
+		} else if (this.form == 1) {
+			result = this.mode2Form1View;
+		} else {
+			result = this.mode2Form2View;
+		}
+
+		result.clear();
+
+		return result;
+	}
+
+	public boolean hasEdc() {
+		return this.edcOffset != -1;
+	}
+
+	public int getEdcOffset() {
+		return this.edcOffset;
+	}
+
+	public int getEdc() {
+		return hasEdc() ? Util.read32LE(this.buffer, this.edcOffset) : 0;
+	}
+
+	public boolean hasEcc() {
+		return this.eccOffset != -1;
+	}
+
+	public int getEccOffset() {
+		return this.eccOffset;
+	}
+
+	public int getEccLength() {
+		return hasEcc() ? (CD.SECTOR_SIZE - this.eccOffset) : 0;
+	}
+
+}
@@ -0,0 +1,156 @@
+package com.github.rnveach.sector;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import com.github.rnveach.utils.Util;
+
+/**
+ * This tracks which sectors of the volume are in use so files can be moved to
+ * a free run of sectors. The system area, volume descriptors, path tables and
+ * the data of every directory and file are in use, anything else inside the
+ * volume is free. When no free run is long enough, space is taken from the end
+ * of the image and the volume grows to cover it, unless the image has other
+ * tracks after the volume.
+ */
+public final class SectorAllocator {
+
+	private static final int VOLUME_DESCRIPTOR_START = 16;
+	private static final int VOLUME_DESCRIPTOR_TERMINATOR = 0xFF;
+
+	private final BitSet used = new BitSet();
+
+	private final int originalVolumeSize;
+
+	private final int imageSectorCount;
+
+	private int volumeSize;
+
+	private SectorAllocator(int volumeSize, int imageSectorCount) {
+		this.originalVolumeSize = volumeSize;
+		this.imageSectorCount = imageSectorCount;
+		this.volumeSize = volumeSize;
+	}
+
+	/**
+	 * Creates an allocator for a new volume of the size given with nothing in use.
+	 */
+	public static SectorAllocator create(int volumeSize) {
+		return new SectorAllocator(volumeSize, volumeSize);
+	}
+
+	public static SectorAllocator build(CD cd, DiscIndex index) throws IOException {
+		cd.seek(VOLUME_DESCRIPTOR_START);
+		cd.readSector();
+
+		final byte[] primary = cd.getCurrentData();
+		final SectorAllocator result = new SectorAllocator(Util.read32LE(primary, 80), cd.getSectorCount());
+
+		int descriptor = VOLUME_DESCRIPTOR_START;
+
+		while ((cd.getCurrentData()[0] & 0xFF) != VOLUME_DESCRIPTOR_TERMINATOR) {
+			if (++descriptor >= result.volumeSize) {
+				throw new IllegalStateException("Volume descriptors have no terminator");
+			}
+
+			cd.readSector();
+		}
+
+		result.reserve(0, descriptor + 1);
+
+		final int pathTableSectors = (Util.read32LE(primary, 132) + 2047) / 2048;
+
+		result.reserve(Util.read32LE(primary, 140), pathTableSectors);
+		result.reserve(Util.read32LE(primary, 144), pathTableSectors);
+		result.reserve(Util.read32BE(primary, 148), pathTableSectors);
+		result.reserve(Util.read32BE(primary, 152), pathTableSectors);
+
+		for (int entry = 0; entry < index.getEntryCount(); entry++) {
+			result.reserve(index.getSector(entry), index.getSectorCount(entry));
+		}
+
+		// anything past the volume, such as other tracks, isn't ours to use
+		if (result.imageSectorCount > result.volumeSize) {
+			result.reserve(result.volumeSize, result.imageSectorCount - result.volumeSize);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Marks the sectors as in use. Optional path tables are stored as sector 0,
+	 * which is always in use, so they need no special case.
+	 */
+	public void reserve(int firstSector, int sectorCount) {
+		if (sectorCount > 0) {
+			this.used.set(firstSector, firstSector + sectorCount);
+		}
+	}
+
+	public void free(int firstSector, int sectorCount) {
+		if (sectorCount > 0) {
+			this.used.clear(firstSector, firstSector + sectorCount);
+		}
+	}
+
+	/**
+	 * Returns the first sector of the lowest free run that holds the sectors and
+	 * marks it as in use, growing the volume past the end of the image if no run
+	 * is long enough. The volume can't grow when the image has sectors after it,
+	 * as they belong to other tracks.
+	 */
+	public int allocate(int sectorCount) {
+		if (sectorCount <= 0) {
+			throw new IllegalArgumentException("Can't allocate " + sectorCount + " sectors");
+		}
+
+		int start = this.used.nextClearBit(0);
+
+		while ((start + sectorCount) <= this.volumeSize) {
+			final int end = this.used.nextSetBit(start);
+
+			if ((end == -1) || ((end - start) >= sectorCount)) {
+				reserve(start, sectorCount);
+
+				return start;
+			}
+
+			start = this.used.nextClearBit(end);
+		}
+
+		if (this.imageSectorCount > this.originalVolumeSize) {
+			throw new IllegalStateException("No free run of " + sectorCount
+					+ " sectors in the volume, and it can't grow over the "
+					+ (this.imageSectorCount - this.originalVolumeSize) + " sectors after it");
+		}
+
+		// nothing fits, so take the space after everything else
+		final int result = this.volumeSize;
+
+		this.volumeSize = result + sectorCount;
+
+		reserve(result, sectorCount);
+
+		return result;
+	}
+
+	public boolean isUsed(int sector) {
+		return this.used.get(sector);
+	}
+
+	public int getVolumeSize() {
+		return this.volumeSize;
+	}
+
+	public boolean isVolumeGrown() {
+		return (this.volumeSize != this.originalVolumeSize);
+	}
+
+	/**
+	 * Returns the number of sectors the image needs to hold the volume.
+	 */
+	public int getRequiredSectorCount() {
+		return Math.max(this.volumeSize, this.imageSectorCount);
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.github.rnveach.sector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This is the raw storage behind a {@link CD}. Each call works on whole
+ * {@link CD#SECTOR_SIZE} byte sectors addressed by their sector number.
+ */
+public interface SectorReader extends Closeable {
+
+	int getSectorCount() throws IOException;
+
+	void read(int sectorNumber, byte[] buffer, int offset) throws IOException;
+
+	/**
+	 * Reads consecutive sectors into the buffer one after another. Readers that
+	 * can do this in a single call should override it.
+	 */
+	default void read(int firstSector, int sectorCount, byte[] buffer, int offset) throws IOException {
+		for (int i = 0; i < sectorCount; i++) {
+			read(firstSector + i, buffer, offset + (i * CD.SECTOR_SIZE));
+		}
+	}
+
+	/**
+	 * Reads the length given from the sector, starting at the offset in it,
+	 * straight into the buffer. Readers that can do this without reading the whole
+	 * sector should override it.
+	 */
+	default void readPart(int sectorNumber, int sectorOffset, int length, ByteBuffer destination)
+			throws IOException {
+		final byte[] buffer = new byte[CD.SECTOR_SIZE];
+
+		read(sectorNumber, buffer, 0);
+
+		destination.put(buffer, sectorOffset, length);
+	}
+
+	void write(int sectorNumber, byte[] buffer, int offset) throws IOException;
+
+	/**
+	 * Writes consecutive sectors from the buffer. Readers that can do this in a
+	 * single call should override it.
+	 */
+	default void write(int firstSector, int sectorCount, byte[] buffer, int offset) throws IOException {
+		for (int i = 0; i < sectorCount; i++) {
+			write(firstSector + i, buffer, offset + (i * CD.SECTOR_SIZE));
+		}
+	}
+
+	/**
+	 * Returns true if the sector belongs to a CD-DA track, which is plain audio
+	 * with no sync or header.
+	 */
+	default boolean isAudio(int sectorNumber) {
+		return false;
+	}
+
+	/**
+	 * Creates a reader over the same storage that can be used independently of
+	 * this one, such as from another thread.
+	 */
+	SectorReader duplicate();
+
+}
@@ -0,0 +1,104 @@
+package com.github.rnveach.sector;
+
+/**
+ * This is one track of a {@link DiscLayout}. Sector numbers are counted from
+ * the start of the disc, and the pregap belongs to the track it comes before.
+ */
+public final class Track {
+
+	public enum Type {
+		AUDIO(2352, 0), //
+		MODE1_2048(2048, 1), //
+		MODE1_2352(2352, 1), //
+		MODE2_2336(2336, 2), //
+		MODE2_2352(2352, 2);
+
+		private final int sectorSize;
+		private final int mode;
+
+		Type(int sectorSize, int mode) {
+			this.sectorSize = sectorSize;
+			this.mode = mode;
+		}
+
+		public int getSectorSize() {
+			return this.sectorSize;
+		}
+
+		public int getMode() {
+			return this.mode;
+		}
+
+		public static Type fromCue(String name) {
+			switch (name.toUpperCase()) {
+			case "AUDIO":
+				return AUDIO;
+			case "MODE1/2048":
+				return MODE1_2048;
+			case "MODE1/2352":
+				return MODE1_2352;
+			case "MODE2/2336":
+				return MODE2_2336;
+			case "MODE2/2352":
+				return MODE2_2352;
+			default:
+				throw new IllegalStateException("Unsupported track type: " + name);
+			}
+		}
+	}
+
+	private final int number;
+	private final Type type;
+	private final int firstSector;
+	private final int startSector;
+	private final int sectorCount;
+
+	public Track(int number, Type type, int firstSector, int startSector, int sectorCount) {
+		this.number = number;
+		this.type = type;
+		this.firstSector = firstSector;
+		this.startSector = startSector;
+		this.sectorCount = sectorCount;
+	}
+
+	public int getNumber() {
+		return this.number;
+	}
+
+	public Type getType() {
+		return this.type;
+	}
+
+	public boolean isAudio() {
+		return (this.type == Type.AUDIO);
+	}
+
+	/**
+	 * Returns the first sector of the track, including its pregap.
+	 */
+	public int getFirstSector() {
+		return this.firstSector;
+	}
+
+	/**
+	 * Returns the sector of index 1, where the track itself starts.
+	 */
+	public int getStartSector() {
+		return this.startSector;
+	}
+
+	public int getLastSector() {
+		return (this.firstSector + this.sectorCount) - 1;
+	}
+
+	public int getSectorCount() {
+		return this.sectorCount;
+	}
+
+	@Override
+	public String toString() {
+		return "Track " + this.number + " " + this.type + "|Sectors:" + this.firstSector + "-" + getLastSector()
+				+ " (start " + this.startSector + ")";
+	}
+
+}
@@ -18,6 +18,15 @@ public final class Util {
 		return fileName;
 	}
 
+	public static String getNormalFileName(String name) {
+		final int semicolon = name.lastIndexOf(';');
+		if (semicolon != -1) {
+			return name.substring(0, semicolon);
+		}
+
+		return name;
+	}
+
 	public static String readStringDataFromInput(String line, String lineText) {
 		if (!line.startsWith(lineText + ":")) {
 			throw new IllegalStateException("Unexpected input, expected '" + lineText + "' in: " + line);
@@ -69,6 +78,10 @@ public final class Util {
 		buffer[start + 1] = (byte) ((value >> 8) & 0xFF);
 	}
 
+	public static byte toBcd(int value) {
+		return (byte) (((value / 10) << 4) | (value % 10));
+	}
+
 	public static int read24LE(byte[] buffer, int start) {
 		final int b1 = buffer[start + 0] & 0xFF;
 		final int b2 = buffer[start + 1] & 0xFF;
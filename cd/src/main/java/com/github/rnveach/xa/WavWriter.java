@@ -0,0 +1,113 @@
+package com.github.rnveach.xa;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * This writes 16 bit PCM samples to a WAV file. The header is written with
+ * empty sizes first and filled in when the file is closed.
+ */
+public final class WavWriter implements Closeable {
+
+	private static final int HEADER_SIZE = 44;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+
+	private final FileOutputStream stream;
+
+	private final FileChannel channel;
+
+	private final int sampleRate;
+
+	private final int channels;
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private long dataSize;
+
+	public WavWriter(File file, int sampleRate, int channels) throws IOException {
+		this.file = file;
+		this.stream = new FileOutputStream(file);
+		this.channel = this.stream.getChannel();
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+
+		this.channel.write(createHeader());
+	}
+
+	public void write(short[] samples, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			if (!this.buffer.hasRemaining()) {
+				flush();
+			}
+
+			this.buffer.putShort(samples[i]);
+		}
+
+		this.dataSize += count * 2L;
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+
+		this.buffer.clear();
+	}
+
+	private ByteBuffer createHeader() {
+		final ByteBuffer result = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		final int blockAlign = this.channels * 2;
+
+		result.putInt(0x46464952); // RIFF
+		result.putInt((int) (36 + this.dataSize));
+		result.putInt(0x45564157); // WAVE
+		result.putInt(0x20746D66); // fmt
+		result.putInt(16);
+		result.putShort((short) 1);
+		result.putShort((short) this.channels);
+		result.putInt(this.sampleRate);
+		result.putInt(this.sampleRate * blockAlign);
+		result.putShort((short) blockAlign);
+		result.putShort((short) 16);
+		result.putInt(0x61746164); // data
+		result.putInt((int) this.dataSize);
+
+		result.flip();
+
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+
+			final ByteBuffer header = createHeader();
+
+			while (header.hasRemaining()) {
+				this.channel.write(header, header.position());
+			}
+		} finally {
+			this.stream.close();
+		}
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	public long getDataSize() {
+		return this.dataSize;
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.github.rnveach.xa;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.SectorReader;
+
+/**
+ * This decodes every XA audio stream of an image to WAV files in one
+ * sequential pass. Sectors are sent to the stream of their file and channel
+ * number as they are read, so interleaved streams are all written at the same
+ * time. A stream ends at a sector flagged as the end of the record or file, or
+ * when its coding changes, and the next sector of that file and channel starts
+ * a new WAV.
+ */
+public final class XaAudioExtractor {
+
+	private static final int SECTORS_PER_READ = 64;
+
+	private static final int USER_DATA_OFFSET = 24;
+
+	private XaAudioExtractor() {
+	}
+
+	/**
+	 * Writes the streams between the first and last sector, inclusive, into the
+	 * folder and returns the files written. Files are named after the file and
+	 * channel number and the sector the stream starts at.
+	 */
+	public static List<File> extract(SectorReader reader, int firstSector, int lastSector, File outputFolder)
+			throws IOException {
+		final byte[] buffer = new byte[SECTORS_PER_READ * CD.SECTOR_SIZE];
+		final short[] samples = new short[XaDecoder.MAX_SAMPLES];
+		final XaDecoder decoder = new XaDecoder();
+		final List<File> result = new ArrayList<>();
+		final List<WavWriter> writers = new ArrayList<>();
+		final List<Integer> codings = new ArrayList<>();
+
+		// stream number by file and channel, or -1 when nothing is playing
+		final int[] playing = new int[0x10000];
+
+		Arrays.fill(playing, -1);
+
+		try {
+			for (int readStart = firstSector; readStart <= lastSector; readStart += SECTORS_PER_READ) {
+				final int sectors = Math.min(SECTORS_PER_READ, (lastSector - readStart) + 1);
+
+				reader.read(readStart, sectors, buffer, 0);
+
+				for (int i = 0; i < sectors; i++) {
+					final int offset = i * CD.SECTOR_SIZE;
+
+					if (!XaScanner.isAudio(buffer, offset)) {
+						continue;
+					}
+
+					final int key = ((buffer[offset + 16] & 0xFF) << 8) | (buffer[offset + 17] & 0xFF);
+					final int subMode = buffer[offset + 18] & 0xFF;
+					final int codingInfo = buffer[offset + 19] & 0xFF;
+					int stream = playing[key];
+
+					if ((stream != -1) && (codings.get(stream) != codingInfo)) {
+						writers.get(stream).close();
+						stream = -1;
+					}
+
+					if (stream == -1) {
+						stream = decoder.addStream();
+						playing[key] = stream;
+
+						final File file = new File(outputFolder, String.format("F%03d_C%02d_%06d.wav", key >> 8,
+								key & 0xFF, readStart + i));
+
+						writers.add(new WavWriter(file, XaDecoder.getSampleRate(codingInfo),
+								XaDecoder.isStereo(codingInfo) ? 2 : 1));
+						codings.add(codingInfo);
+						result.add(file);
+					}
+
+					writers.get(stream).write(samples,
+							decoder.decode(stream, buffer, offset + USER_DATA_OFFSET, codingInfo, samples));
+
+					if ((subMode & 0x81) != 0) {
+						writers.get(stream).close();
+						playing[key] = -1;
+					}
+				}
+			}
+		} finally {
+			for (final int stream : playing) {
+				if (stream != -1) {
+					writers.get(stream).close();
+				}
+			}
+		}
+
+		return result;
+	}
+
+}
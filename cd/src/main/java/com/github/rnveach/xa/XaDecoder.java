@@ -0,0 +1,135 @@
+package com.github.rnveach.xa;
+
+import java.util.Arrays;
+
+/**
+ * This decodes the XA ADPCM audio of form 2 sectors into 16 bit samples. The
+ * two previous samples of every channel of every stream are kept in one
+ * primitive array so any number of interleaved streams can be decoded at once.
+ *
+ * A sector holds 18 sound groups of 128 bytes. Each group starts with 16 bytes
+ * of parameters followed by 28 words of sample data, split into 8 sound units
+ * of 4 bit samples or 4 sound units of 8 bit samples.
+ */
+public final class XaDecoder {
+
+	public static final int SOUND_GROUPS = 18;
+	public static final int SOUND_GROUP_SIZE = 128;
+	public static final int SAMPLES_PER_UNIT = 28;
+
+	/** The most samples a sector can decode to, for 4 bit audio. */
+	public static final int MAX_SAMPLES = SOUND_GROUPS * 8 * SAMPLES_PER_UNIT;
+
+	private static final int[] FILTER_POSITIVE = { 0, 60, 115, 98 };
+	private static final int[] FILTER_NEGATIVE = { 0, 0, -52, -55 };
+
+	// previous and the one before that, for left then right
+	private static final int HISTORY_PER_STREAM = 4;
+
+	private int[] history = new int[HISTORY_PER_STREAM * 16];
+
+	private int streamCount;
+
+	/**
+	 * Adds a stream starting in silence and returns its number.
+	 */
+	public int addStream() {
+		final int result = this.streamCount++;
+
+		if ((this.streamCount * HISTORY_PER_STREAM) > this.history.length) {
+			this.history = Arrays.copyOf(this.history, this.history.length * 2);
+		}
+
+		Arrays.fill(this.history, result * HISTORY_PER_STREAM, this.streamCount * HISTORY_PER_STREAM, 0);
+
+		return result;
+	}
+
+	public static boolean isStereo(int codingInfo) {
+		return ((codingInfo & 0x03) == 1);
+	}
+
+	public static int getSampleRate(int codingInfo) {
+		return (((codingInfo >> 2) & 0x03) == 1) ? 18900 : 37800;
+	}
+
+	public static boolean isEightBit(int codingInfo) {
+		return (((codingInfo >> 4) & 0x03) == 1);
+	}
+
+	/**
+	 * Decodes the sound groups starting at the offset into the output, with stereo
+	 * samples interleaved left then right. Returns the number of samples written.
+	 */
+	public int decode(int stream, byte[] buffer, int offset, int codingInfo, short[] output) {
+		final boolean stereo = isStereo(codingInfo);
+		final boolean eightBit = isEightBit(codingInfo);
+		final int units = eightBit ? 4 : 8;
+		final int historyStart = stream * HISTORY_PER_STREAM;
+		int outputPosition = 0;
+
+		for (int group = 0; group < SOUND_GROUPS; group++) {
+			final int groupOffset = offset + (group * SOUND_GROUP_SIZE);
+
+			for (int unit = 0; unit < units; unit++) {
+				final int parameters = buffer[groupOffset + 4 + unit];
+				final int filter = (parameters >> 4) & 0x03;
+				final int positive = FILTER_POSITIVE[filter];
+				final int negative = FILTER_NEGATIVE[filter];
+				final int channel = stereo ? (unit & 1) : 0;
+				final int historyPosition = historyStart + (channel * 2);
+				int shift = parameters & 0x0F;
+				int previous = this.history[historyPosition];
+				int beforePrevious = this.history[historyPosition + 1];
+				int position;
+				int step;
+
+				if (stereo) {
+					position = outputPosition + ((unit >> 1) * SAMPLES_PER_UNIT * 2) + channel;
+					step = 2;
+				} else {
+					position = outputPosition + (unit * SAMPLES_PER_UNIT);
+					step = 1;
+				}
+
+				// the hardware treats the reserved shifts like 9
+				if (shift > (eightBit ? 8 : 12)) {
+					shift = 9;
+				}
+
+				for (int sample = 0; sample < SAMPLES_PER_UNIT; sample++) {
+					final int dataOffset = groupOffset + 16 + (sample * 4);
+					final int raw;
+
+					if (eightBit) {
+						raw = (short) (buffer[dataOffset + unit] << 8);
+					} else {
+						raw = (short) (((buffer[dataOffset + (unit >> 1)] >> ((unit & 1) * 4)) & 0x0F) << 12);
+					}
+
+					int value = (raw >> shift) + (((previous * positive) + (beforePrevious * negative) + 32) >> 6);
+
+					if (value > Short.MAX_VALUE) {
+						value = Short.MAX_VALUE;
+					} else if (value < Short.MIN_VALUE) {
+						value = Short.MIN_VALUE;
+					}
+
+					output[position] = (short) value;
+					position += step;
+
+					beforePrevious = previous;
+					previous = value;
+				}
+
+				this.history[historyPosition] = previous;
+				this.history[historyPosition + 1] = beforePrevious;
+			}
+
+			outputPosition += units * SAMPLES_PER_UNIT;
+		}
+
+		return outputPosition;
+	}
+
+}
@@ -0,0 +1,252 @@
+package com.github.rnveach.xa;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.SectorReader;
+
+/**
+ * This finds the XA audio streams of an image. The image is split into chunks
+ * that are scanned in parallel without knowing what was playing before them, so
+ * a chunk only remembers which of its streams could be the continuation of an
+ * earlier one and which were still playing at its end. Chunks are then joined
+ * in order.
+ *
+ * https://github.com/libyal/libodraw/blob/main/documentation/Optical%20disc%20RAW%20format.asciidoc
+ */
+public final class XaScanner {
+
+	private static final int SECTORS_PER_TASK = 4096;
+
+	private static final int SECTORS_PER_READ = 64;
+
+	private static final int SUB_MODE_END_OF_RECORD = 0x01;
+	private static final int SUB_MODE_AUDIO = 0x04;
+	private static final int SUB_MODE_FORM_2 = 0x20;
+	private static final int SUB_MODE_END_OF_FILE = 0x80;
+
+	private XaScanner() {
+	}
+
+	public static List<XaStream> scan(SectorReader reader) throws IOException {
+		return scan(reader, 0, reader.getSectorCount() - 1);
+	}
+
+	/**
+	 * Returns the streams between the first and last sector, inclusive, ordered by
+	 * their first sector.
+	 */
+	public static List<XaStream> scan(SectorReader reader, int firstSector, int lastSector) throws IOException {
+		if ((firstSector < 0) || (lastSector >= reader.getSectorCount())) {
+			throw new IllegalArgumentException("Sector range " + firstSector + "-" + lastSector
+					+ " is outside the image of " + reader.getSectorCount() + " sectors");
+		}
+		if (lastSector < firstSector) {
+			return new ArrayList<>();
+		}
+
+		final List<List<Piece>> chunks;
+
+		try {
+			chunks = ForkJoinPool.commonPool().invoke(new ScanTask(reader, firstSector, lastSector + 1));
+		} catch (final UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+
+		return join(chunks);
+	}
+
+	private static List<XaStream> join(List<List<Piece>> chunks) {
+		final List<XaStream> result = new ArrayList<>();
+		final Map<Integer, Piece> playing = new HashMap<>();
+
+		for (final List<Piece> chunk : chunks) {
+			for (final Piece piece : chunk) {
+				final Piece earlier = piece.first ? playing.remove(piece.key) : null;
+				final int start = (earlier == null) ? piece.start : earlier.start;
+
+				if (piece.ended) {
+					result.add(piece.toStream(start));
+				} else {
+					piece.start = start;
+
+					playing.put(piece.key, piece);
+				}
+			}
+		}
+
+		for (final Piece piece : playing.values()) {
+			result.add(piece.toStream(piece.start));
+		}
+
+		result.sort(Comparator.comparingInt(XaStream::getFirstSector).thenComparingInt(XaStream::getFileNumber)
+				.thenComparingInt(XaStream::getChannelNumber));
+
+		return result;
+	}
+
+	/**
+	 * Splits the streams into groups that play at the same time, where a group
+	 * starts when a stream starts with nothing else playing and ends when the
+	 * last of them ends. The streams must be ordered by their first sector.
+	 */
+	public static List<List<XaStream>> group(List<XaStream> streams) {
+		final List<List<XaStream>> result = new ArrayList<>();
+		List<XaStream> current = null;
+		int currentEnd = -1;
+
+		for (final XaStream stream : streams) {
+			if ((current == null) || (stream.getFirstSector() > currentEnd)) {
+				current = new ArrayList<>();
+				result.add(current);
+			}
+
+			current.add(stream);
+			currentEnd = Math.max(currentEnd, stream.getLastSector());
+		}
+
+		return result;
+	}
+
+	private static List<Piece> scanRange(SectorReader reader, int startSector, int endSector) throws IOException {
+		final byte[] buffer = new byte[SECTORS_PER_READ * CD.SECTOR_SIZE];
+		final List<Piece> result = new ArrayList<>();
+		final BitSet seen = new BitSet();
+		final BitSet playing = new BitSet();
+		final Map<Integer, Piece> pieces = new HashMap<>();
+
+		for (int readStart = startSector; readStart < endSector; readStart += SECTORS_PER_READ) {
+			final int sectors = Math.min(SECTORS_PER_READ, endSector - readStart);
+
+			reader.read(readStart, sectors, buffer, 0);
+
+			for (int i = 0; i < sectors; i++) {
+				final int offset = i * CD.SECTOR_SIZE;
+
+				if (!isAudio(buffer, offset)) {
+					continue;
+				}
+
+				final int sectorNumber = readStart + i;
+				final int key = ((buffer[offset + 16] & 0xFF) << 8) | (buffer[offset + 17] & 0xFF);
+				Piece piece;
+
+				if (playing.get(key)) {
+					piece = pieces.get(key);
+				} else {
+					piece = new Piece(key, sectorNumber, !seen.get(key));
+
+					seen.set(key);
+					playing.set(key);
+					pieces.put(key, piece);
+					result.add(piece);
+				}
+
+				piece.last = sectorNumber;
+
+				if ((buffer[offset + 18] & (SUB_MODE_END_OF_RECORD | SUB_MODE_END_OF_FILE)) != 0) {
+					piece.ended = true;
+
+					playing.clear(key);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	static boolean isAudio(byte[] buffer, int offset) {
+		if (!Arrays.equals(buffer, offset, offset + CD.SYNC.length, CD.SYNC, 0, CD.SYNC.length)
+				|| (buffer[offset + 15] != 2)) {
+			return false;
+		}
+
+		// form 2 needs both copies of the sub header to agree
+		for (int i = 16; i < 20; i++) {
+			if (buffer[offset + i] != buffer[offset + i + 4]) {
+				return false;
+			}
+		}
+
+		final int subMode = buffer[offset + 18];
+
+		return ((subMode & SUB_MODE_FORM_2) != 0) && ((subMode & SUB_MODE_AUDIO) != 0);
+	}
+
+	private static final class Piece {
+
+		private final int key;
+		private int start;
+		private int last;
+		private boolean ended;
+
+		// the first piece of a key in a chunk may continue a stream from before it
+		private final boolean first;
+
+		private Piece(int key, int start, boolean first) {
+			this.key = key;
+			this.start = start;
+			this.first = first;
+		}
+
+		private XaStream toStream(int firstSector) {
+			return new XaStream(this.key >> 8, this.key & 0xFF, firstSector, this.last, this.ended);
+		}
+
+	}
+
+	private static final class ScanTask extends RecursiveTask<List<List<Piece>>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient SectorReader reader;
+		private final int startSector;
+		private final int endSector;
+
+		private ScanTask(SectorReader reader, int startSector, int endSector) {
+			this.reader = reader;
+			this.startSector = startSector;
+			this.endSector = endSector;
+		}
+
+		@Override
+		protected List<List<Piece>> compute() {
+			if ((this.endSector - this.startSector) <= SECTORS_PER_TASK) {
+				final List<List<Piece>> result = new ArrayList<>();
+
+				try {
+					result.add(scanRange(this.reader.duplicate(), this.startSector, this.endSector));
+				} catch (final IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+
+				return result;
+			}
+
+			final int middle = (this.startSector + this.endSector) >>> 1;
+			final ScanTask left = new ScanTask(this.reader, this.startSector, middle);
+			final ScanTask right = new ScanTask(this.reader, middle, this.endSector);
+
+			left.fork();
+
+			final List<List<Piece>> rightResult = right.compute();
+			final List<List<Piece>> result = left.join();
+
+			result.addAll(rightResult);
+
+			return result;
+		}
+
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.github.rnveach.xa;
+
+/**
+ * This is the run of XA audio sectors of one file and channel, from its first
+ * sector to the sector flagged as the end of the record or file, inclusive.
+ * Streams that reach the end of the scanned sectors without such a flag are not
+ * ended and finish at their last audio sector.
+ */
+public final class XaStream {
+
+	private final int fileNumber;
+	private final int channelNumber;
+	private final int firstSector;
+	private final int lastSector;
+	private final boolean ended;
+
+	public XaStream(int fileNumber, int channelNumber, int firstSector, int lastSector, boolean ended) {
+		this.fileNumber = fileNumber;
+		this.channelNumber = channelNumber;
+		this.firstSector = firstSector;
+		this.lastSector = lastSector;
+		this.ended = ended;
+	}
+
+	public int getFileNumber() {
+		return this.fileNumber;
+	}
+
+	public int getChannelNumber() {
+		return this.channelNumber;
+	}
+
+	public int getFirstSector() {
+		return this.firstSector;
+	}
+
+	public int getLastSector() {
+		return this.lastSector;
+	}
+
+	public int getSectorCount() {
+		return (this.lastSector - this.firstSector) + 1;
+	}
+
+	public boolean isEnded() {
+		return this.ended;
+	}
+
+	@Override
+	public String toString() {
+		return "File " + this.fileNumber + " Channel " + this.channelNumber + "|Sectors:" + this.firstSector + "-"
+				+ this.lastSector + (this.ended ? "" : " (no end)");
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.github.rnveach;
+
+import static com.github.rnveach.sector.TestUtils.change;
+import static com.github.rnveach.sector.TestUtils.range;
+import static com.github.rnveach.sector.TestUtils.runMain;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.DiscIndex;
+import com.github.rnveach.sector.ImageGenerator;
+
+public final class DiffImagesTest {
+
+	// sectors are compared in reads of 64
+	private static final int READ_BOUNDARY = 64;
+
+	@TempDir
+	public File folder;
+
+	@Test
+	public void testChanges() throws Exception {
+		final File original = new File(this.folder, "original.bin");
+		final File changed = new File(this.folder, "changed.bin");
+		final ImageGenerator generator = new ImageGenerator();
+
+		generator.setDepth(0);
+		generator.setFilesPerDirectory(1);
+		generator.setFileSize(100 * 2048);
+		generator.write(original, 1);
+
+		Files.copy(original.toPath(), changed.toPath());
+
+		final int first;
+		final int sectorCount;
+
+		try (CD cd = CD.open(original, false)) {
+			final DiscIndex index = DiscIndex.build(cd);
+
+			first = index.getSector(index.find("\\F000.BIN"));
+			sectorCount = cd.getSectorCount();
+		}
+
+		assertWithMessage("File should cross a read").that(first).isLessThan(READ_BOUNDARY - 1);
+
+		try (RandomAccessFile file = new RandomAccessFile(changed, "rw")) {
+			final byte[] sector = new byte[CD.SECTOR_SIZE];
+
+			// the address isn't covered by the Mode 2 EDC/ECC
+			change(file, first + 1, 14, false, sector);
+			// Q parity
+			change(file, first + 3, CD.SECTOR_SIZE - 1, false, sector);
+			change(file, first + 5, 100, false, sector);
+			// the file number in both subheader copies, with the EDC/ECC that covers it
+			change(file, first + 7, 16, false, sector);
+			change(file, first + 7, 20, true, sector);
+			// the end of one read and the start of the next
+			change(file, READ_BOUNDARY - 1, CD.SECTOR_SIZE - 1, false, sector);
+			change(file, READ_BOUNDARY, CD.SECTOR_SIZE - 1, false, sector);
+
+			file.setLength((long) (sectorCount + 3) * CD.SECTOR_SIZE);
+		}
+
+		final List<String> lines = runMain(() -> DiffImages.main(original.getPath(), changed.getPath()));
+
+		assertWithMessage("Unexpected changes").that(lines.subList(0, lines.size() - 1)).containsExactly( //
+				"Changed files:", //
+				"\t\\F000.BIN (1 sectors)", //
+				range(first + 1, first + 1) + "header in \\F000.BIN", //
+				range(first + 3, first + 3) + "EDC/ECC in \\F000.BIN", //
+				range(first + 5, first + 5) + "data in \\F000.BIN", //
+				range(first + 7, first + 7) + "header, EDC/ECC in \\F000.BIN", //
+				range(READ_BOUNDARY - 1, READ_BOUNDARY) + "EDC/ECC in \\F000.BIN", //
+				range(sectorCount, sectorCount + 2) + "only in one image").inOrder();
+		assertWithMessage("Every change should be counted").that(lines.get(lines.size() - 1)).endsWith(
+				"9 changed (1 data, 1 header only, 3 EDC/ECC only, 1 header and EDC/ECC only, 3 only in one image)");
+	}
+
+}
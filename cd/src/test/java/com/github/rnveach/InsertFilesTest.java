@@ -0,0 +1,182 @@
+package com.github.rnveach;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.CdFileChannel;
+import com.github.rnveach.sector.DiscIndex;
+import com.github.rnveach.sector.Edcre;
+import com.github.rnveach.sector.ImageGenerator;
+
+public final class InsertFilesTest {
+
+	// the end of the subheader copies and the start of the Form 2 EDC
+	private static final int RAW_COMPARE_START = 16;
+	private static final int RAW_COMPARE_END = 2348;
+
+	@TempDir
+	public File folder;
+
+	/**
+	 * A file moving out of the root frees sectors that the bigger stream after it
+	 * is then moved into.
+	 */
+	@Test
+	public void testMoveIntoFreedSectors() throws Exception {
+		final Map<String, Integer> intoStream = new LinkedHashMap<>();
+
+		intoStream.put("F000.BIN", 4);
+		intoStream.put("S000.STR", 2);
+
+		verifyInsert("stream", intoStream, "\\S000.STR");
+	}
+
+	/**
+	 * A file moving out of one directory frees sectors that a bigger file of
+	 * another directory is then moved into, so files must be written in the
+	 * order they were placed for each to start from its own old sectors. The
+	 * stream of the root would take the subdirectory file's sectors if the
+	 * subdirectory were placed first, and give it Form 2 sectors to start from.
+	 */
+	@Test
+	public void testMoveBetweenDirectories() throws Exception {
+		final Map<String, Integer> intoSubDirectory = new LinkedHashMap<>();
+
+		intoSubDirectory.put("F000.BIN", 4);
+		intoSubDirectory.put("S000.STR", 3);
+		intoSubDirectory.put("D000\\F000.BIN", 3);
+
+		verifyInsert("sub", intoSubDirectory, "\\D000\\F000.BIN");
+
+		final Map<String, Integer> intoRoot = new LinkedHashMap<>();
+
+		intoRoot.put("S000.STR", 2);
+		intoRoot.put("D000\\F000.BIN", 3);
+
+		verifyInsert("root", intoRoot, null);
+	}
+
+	private void verifyInsert(String name, Map<String, Integer> sectorCounts, String reusingPath)
+			throws Exception {
+		final File image = new File(this.folder, name + ".bin");
+		final File input = new File(this.folder, name);
+		final ImageGenerator generator = new ImageGenerator();
+
+		generator.setDepth(1);
+		generator.setDirectoriesPerLevel(1);
+		generator.setFilesPerDirectory(1);
+		generator.setFileSize(4096);
+		generator.setStreamsPerDirectory(1);
+		generator.setStreamSectors(1);
+
+		final int imageSectorCount = generator.write(image, 1);
+		final Map<String, byte[]> inserted = new LinkedHashMap<>();
+		final Random random = new Random(5);
+
+		try (CD cd = CD.open(image, false)) {
+			final DiscIndex index = DiscIndex.build(cd);
+
+			for (final Map.Entry<String, Integer> file : sectorCounts.entrySet()) {
+				final int entry = index.find("\\" + file.getKey());
+				final byte[] data;
+
+				if (index.isSectorMode(entry)) {
+					final byte[] template = new byte[CD.SECTOR_SIZE];
+
+					cd.getReader().read(index.getSector(entry), template, 0);
+
+					data = new byte[file.getValue() * CD.SECTOR_SIZE];
+
+					for (int i = 0; i < file.getValue(); i++) {
+						final byte[] sector = template.clone();
+
+						for (int j = 24; j < RAW_COMPARE_END; j++) {
+							sector[j] = (byte) random.nextInt();
+						}
+
+						// only the last sector ends the record and file
+						if (i < (file.getValue() - 1)) {
+							sector[18] &= 0x7E;
+							sector[22] &= 0x7E;
+						}
+
+						System.arraycopy(sector, 0, data, i * CD.SECTOR_SIZE, CD.SECTOR_SIZE);
+					}
+				} else {
+					data = new byte[(file.getValue() * 2048) - 100];
+
+					random.nextBytes(data);
+				}
+
+				final File insertFile = new File(input, file.getKey().replace('\\', File.separatorChar));
+
+				insertFile.getParentFile().mkdirs();
+				Files.write(insertFile.toPath(), data);
+				inserted.put(file.getKey(), data);
+			}
+		}
+
+		InsertFiles.main(new String[] { input.getPath(), image.getPath() });
+
+		try (CD cd = CD.open(image, false)) {
+			final DiscIndex index = DiscIndex.build(cd);
+
+			for (final Map.Entry<String, byte[]> file : inserted.entrySet()) {
+				final int entry = index.find("\\" + file.getKey());
+				final byte[] data = file.getValue();
+				final int sectorCount = sectorCounts.get(file.getKey());
+				final byte[] sectors = new byte[sectorCount * CD.SECTOR_SIZE];
+
+				cd.getReader().read(index.getSector(entry), sectorCount, sectors, 0);
+
+				for (int i = 0; i < sectorCount; i++) {
+					final int offset = i * CD.SECTOR_SIZE;
+					final boolean last = (i == (sectorCount - 1));
+
+					assertWithMessage("EDC should be valid in " + file.getKey()).that(Edcre.isEdcValid(sectors, offset))
+							.isTrue();
+					assertWithMessage("End of file should only be on the last sector of " + file.getKey())
+							.that((sectors[offset + 18] & 0x80) == 0x80).isEqualTo(last);
+				}
+
+				if (index.isSectorMode(entry)) {
+					for (int i = 0; i < sectorCount; i++) {
+						final int offset = i * CD.SECTOR_SIZE;
+
+						assertWithMessage("Raw sector should be written in " + file.getKey())
+								.that(Arrays.copyOfRange(sectors, offset + RAW_COMPARE_START,
+										offset + RAW_COMPARE_END))
+								.isEqualTo(Arrays.copyOfRange(data, offset + RAW_COMPARE_START,
+										offset + RAW_COMPARE_END));
+					}
+				} else {
+					final ByteBuffer read = ByteBuffer.allocate(data.length);
+
+					try (CdFileChannel channel = CdFileChannel.open(cd, index, entry)) {
+						channel.read(read, 0);
+					}
+
+					assertWithMessage("Data should be written in " + file.getKey()).that(read.array())
+							.isEqualTo(data);
+				}
+			}
+
+			if (reusingPath != null) {
+				assertWithMessage("File should be moved into freed sectors")
+						.that(index.getSector(index.find(reusingPath))).isLessThan(imageSectorCount);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.github.rnveach;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.Edcre;
+import com.github.rnveach.sector.MemorySectorReader;
+
+public final class RegenerateEdcTest {
+
+	// more than 2 tasks of 1024 sectors
+	private static final int SECTOR_COUNT = 2500;
+
+	private static final int AUDIO_SECTOR = 10;
+
+	@Test
+	public void testRegenerate() throws Exception {
+		final byte[] original = createImage();
+		final byte[] image = original.clone();
+		final MemorySectorReader reader = new MemorySectorReader(image);
+		final int[] corrupted = { 5, 998, 1000, 1249, 1250, 2100, 2101, 2498 };
+
+		reader.setAudio(AUDIO_SECTOR);
+
+		for (final int sector : corrupted) {
+			corrupt(image, sector);
+		}
+
+		final byte[] audio = Arrays.copyOfRange(image, AUDIO_SECTOR * CD.SECTOR_SIZE,
+				(AUDIO_SECTOR + 1) * CD.SECTOR_SIZE);
+
+		// a range that doesn't line up with the tasks
+		assertWithMessage("Unexpected sectors written in range")
+				.that(RegenerateEdc.regenerate(reader, 1000, 2100)).isEqualTo(4);
+		assertWithMessage("Sector before the range should be left alone").that(isSame(image, original, 998))
+				.isFalse();
+		assertWithMessage("Sector after the range should be left alone").that(isSame(image, original, 2101))
+				.isFalse();
+
+		assertWithMessage("Unexpected sectors written").that(RegenerateEdc.regenerate(reader, 0, SECTOR_COUNT - 1))
+				.isEqualTo(4);
+
+		for (int sector = 0; sector < SECTOR_COUNT; sector++) {
+			if (sector != AUDIO_SECTOR) {
+				assertWithMessage("Sector should be restored " + sector).that(isSame(image, original, sector))
+						.isTrue();
+			}
+		}
+
+		assertWithMessage("Audio sector should be left alone")
+				.that(Arrays.copyOfRange(image, AUDIO_SECTOR * CD.SECTOR_SIZE, (AUDIO_SECTOR + 1) * CD.SECTOR_SIZE))
+				.isEqualTo(audio);
+		assertWithMessage("Nothing should be left to write")
+				.that(RegenerateEdc.regenerate(reader, 0, SECTOR_COUNT - 1)).isEqualTo(0);
+
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> RegenerateEdc.regenerate(reader, 0, SECTOR_COUNT));
+	}
+
+	/**
+	 * Cycles through Mode 1, Mode 2 Form 1 and Mode 2 Form 2 sectors of random
+	 * data and empty sectors with no sync.
+	 */
+	private static byte[] createImage() {
+		final byte[] result = new byte[SECTOR_COUNT * CD.SECTOR_SIZE];
+		final Random random = new Random(4);
+
+		for (int sector = 0; sector < SECTOR_COUNT; sector++) {
+			final int offset = sector * CD.SECTOR_SIZE;
+			final int type = sector % 4;
+
+			if (type == 3) {
+				continue;
+			}
+
+			for (int i = 16; i < CD.SECTOR_SIZE; i++) {
+				result[offset + i] = (byte) random.nextInt();
+			}
+
+			System.arraycopy(CD.SYNC, 0, result, offset, CD.SYNC.length);
+
+			if (type == 0) {
+				result[offset + 15] = 1;
+			} else {
+				final int subMode = (type == 1) ? 0x08 : 0x20;
+
+				result[offset + 15] = 2;
+
+				// both copies of the subheader
+				for (int i = 16; i < 24; i += 4) {
+					result[offset + i] = 0;
+					result[offset + i + 1] = 0;
+					result[offset + i + 2] = (byte) subMode;
+					result[offset + i + 3] = 0;
+				}
+			}
+
+			Edcre.generate(result, offset);
+		}
+
+		// the audio sector looks like data with a wrong EDC/ECC
+		corrupt(result, AUDIO_SECTOR);
+
+		return result;
+	}
+
+	/**
+	 * Changes the last byte, which is in the ECC of Form 1 sectors and the EDC of
+	 * Form 2 sectors.
+	 */
+	private static void corrupt(byte[] image, int sector) {
+		image[(sector * CD.SECTOR_SIZE) + CD.SECTOR_SIZE - 1] ^= 0x55;
+	}
+
+	private static boolean isSame(byte[] image, byte[] original, int sector) {
+		final int offset = sector * CD.SECTOR_SIZE;
+
+		return Arrays.equals(image, offset, offset + CD.SECTOR_SIZE, original, offset, offset + CD.SECTOR_SIZE);
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.github.rnveach;
+
+import static com.github.rnveach.sector.TestUtils.change;
+import static com.github.rnveach.sector.TestUtils.range;
+import static com.github.rnveach.sector.TestUtils.runMain;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.DiscIndex;
+import com.github.rnveach.sector.ImageGenerator;
+
+public final class VerifyImageTest {
+
+	@TempDir
+	public File folder;
+
+	@Test
+	public void testProblems() throws Exception {
+		final File image = new File(this.folder, "image.bin");
+		final ImageGenerator generator = new ImageGenerator();
+
+		generator.setDepth(0);
+		generator.setFilesPerDirectory(1);
+		generator.setFileSize(20 * 2048);
+		generator.write(image, 1);
+
+		final int first;
+
+		try (CD cd = CD.open(image, false)) {
+			final DiscIndex index = DiscIndex.build(cd);
+
+			first = index.getSector(index.find("\\F000.BIN"));
+		}
+
+		try (RandomAccessFile file = new RandomAccessFile(image, "rw")) {
+			final byte[] sector = new byte[CD.SECTOR_SIZE];
+
+			// next to each other with the same problem
+			change(file, first, 14, false, sector);
+			change(file, first + 1, 14, false, sector);
+			// sync
+			change(file, first + 3, 1, false, sector);
+			// second copy of the subheader
+			change(file, first + 5, 20, false, sector);
+			// data, covered by both
+			change(file, first + 7, 100, false, sector);
+			// Q parity only
+			change(file, first + 9, CD.SECTOR_SIZE - 1, false, sector);
+			change(file, first + 11, 15, false, sector);
+
+			Arrays.fill(sector, (byte) 0);
+			sector[2000] = 1;
+			file.seek((long) (first + 13) * CD.SECTOR_SIZE);
+			file.write(sector);
+		}
+
+		final List<String> lines = runMain(() -> VerifyImage.main(image.getPath()));
+
+		assertWithMessage("Every bad sector should be counted").that(lines.get(lines.size() - 1)).endsWith(", 8 bad");
+		assertWithMessage("Unexpected problems").that(lines.subList(0, lines.size() - 1)).containsExactly( //
+				range(first, first + 1) + "wrong MSF in \\F000.BIN", //
+				range(first + 3, first + 3) + "no sync in \\F000.BIN", //
+				range(first + 5, first + 5) + "sub header copies differ in \\F000.BIN", //
+				range(first + 7, first + 7) + "bad EDC, bad ECC in \\F000.BIN", //
+				range(first + 9, first + 9) + "bad ECC in \\F000.BIN", //
+				range(first + 11, first + 11) + "unknown mode in \\F000.BIN", //
+				range(first + 13, first + 13) + "empty sector has data in \\F000.BIN").inOrder();
+	}
+
+}
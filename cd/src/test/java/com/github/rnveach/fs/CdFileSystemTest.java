@@ -0,0 +1,140 @@
+package com.github.rnveach.fs;
+
+import static com.github.rnveach.sector.TestUtils.random;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.rnveach.sector.ImageBuilder;
+
+public final class CdFileSystemTest {
+
+	@TempDir
+	public File folder;
+
+	@Test
+	public void testReadWithoutExtracting() throws Exception {
+		final byte[] a = random(1, 3000);
+		final byte[] b = random(2, 5000);
+		final File image = build(a, b);
+		final URI uri = URI.create(CdFileSystemProvider.SCHEME + ":" + image.toURI() + "!/");
+
+		try (FileSystem fileSystem = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+			final List<String> paths;
+
+			try (Stream<Path> walk = Files.walk(fileSystem.getPath("/"))) {
+				paths = walk.map(Path::toString).collect(Collectors.toList());
+			}
+
+			assertWithMessage("Unexpected paths").that(paths).containsExactly("/", "/A.BIN", "/SUB", "/SUB/B.BIN")
+					.inOrder();
+
+			final Path pathB = fileSystem.getPath("/SUB", "B.BIN");
+
+			assertWithMessage("Unexpected size").that(Files.size(pathB)).isEqualTo(5000);
+			assertWithMessage("Should be a directory").that(Files.isDirectory(pathB.getParent())).isTrue();
+			assertWithMessage("Unexpected data").that(Files.readAllBytes(fileSystem.getPath("/A.BIN")))
+					.isEqualTo(a);
+			assertWithMessage("Path should be found from its URI")
+					.that(Files.readAllBytes(Path.of(pathB.toUri()))).isEqualTo(b);
+
+			try (InputStream stream = Files.newInputStream(pathB)) {
+				assertWithMessage("Unexpected stream data").that(stream.readAllBytes()).isEqualTo(b);
+			}
+
+			try (SeekableByteChannel channel = Files.newByteChannel(pathB)) {
+				final ByteBuffer buffer = ByteBuffer.allocate(100);
+
+				channel.position(2000);
+				channel.read(buffer);
+
+				assertWithMessage("Read should cross into the next sector").that(buffer.array())
+						.isEqualTo(Arrays.copyOfRange(b, 2000, 2100));
+			}
+
+			Assertions.assertThrows(NoSuchFileException.class,
+					() -> Files.readAllBytes(fileSystem.getPath("/MISSING.BIN")));
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		final File image = build(random(1, 3000), random(2, 5000));
+		final URI uri = URI.create(CdFileSystemProvider.SCHEME + ":" + image.toURI() + "!/");
+		final FileSystem fileSystem = FileSystems.newFileSystem(uri, Collections.emptyMap());
+		final Path path = fileSystem.getPath("/A.BIN");
+		final SeekableByteChannel closedFirst = Files.newByteChannel(path);
+		final SeekableByteChannel channel = Files.newByteChannel(path);
+
+		closedFirst.close();
+		channel.read(ByteBuffer.allocate(100));
+		fileSystem.close();
+
+		assertWithMessage("Channel should be closed with the file system").that(channel.isOpen()).isFalse();
+		Assertions.assertThrows(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(100)));
+		Assertions.assertThrows(ClosedFileSystemException.class, () -> Files.newByteChannel(path));
+
+		// closing either again does nothing
+		channel.close();
+		fileSystem.close();
+	}
+
+	@Test
+	public void testNotImage() throws Exception {
+		final Path file = new File(this.folder, "random.bin").toPath();
+
+		Files.write(file, random(3, 100 * 1024));
+
+		Assertions.assertThrows(UnsupportedOperationException.class,
+				() -> new CdFileSystemProvider().newFileSystem(file, Collections.emptyMap()));
+		// every other provider declines it too
+		Assertions.assertThrows(ProviderNotFoundException.class,
+				() -> FileSystems.newFileSystem(file, (ClassLoader) null));
+	}
+
+	private File build(byte[] a, byte[] b) throws Exception {
+		final File input = new File(this.folder, "in");
+
+		new File(input, "SUB").mkdirs();
+		Files.write(new File(input, "A.BIN").toPath(), a);
+		Files.write(new File(input, "SUB" + File.separator + "B.BIN").toPath(), b);
+		Files.write(new File(input, ImageBuilder.MANIFEST).toPath(), String.join("\r\n", //
+				"Directory: ", "\tSector: 22", "\tSize: 2048", "", //
+				"Directory Entry #2", "\tName: A.BIN", "\tSector: 23", "\tSize: 3000", "", //
+				"Directory Entry #3", "\tName: SUB", "\tSector: 25", "\tSize: 2048", "", //
+				"Directory: \\SUB", "\tSector: 25", "\tSize: 2048", "", //
+				"Directory Entry #2", "\tName: B.BIN", "\tSector: 26", "\tSize: 5000", "").getBytes(
+						StandardCharsets.UTF_8));
+
+		final ImageBuilder builder = ImageBuilder.load(input);
+		final File result = new File(this.folder, "out.bin");
+
+		builder.layout();
+		builder.write(result, 1);
+
+		return result;
+	}
+
+}
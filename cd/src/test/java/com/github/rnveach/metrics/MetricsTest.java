@@ -0,0 +1,80 @@
+package com.github.rnveach.metrics;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public final class MetricsTest {
+
+	@Test
+	public void testRegistry() {
+		final Metrics metrics = new Metrics();
+
+		metrics.counter("sectors").add(3);
+		metrics.counter("sectors").increment();
+		metrics.timer("copy").record(10);
+		metrics.timer("copy").record(30);
+
+		assertWithMessage("Same name should give the same counter").that(metrics.counter("sectors").getValue())
+				.isEqualTo(4);
+		assertWithMessage("Unexpected timer count").that(metrics.timer("copy").getCount()).isEqualTo(2);
+		assertWithMessage("Unexpected timer total").that(metrics.timer("copy").getTotalNanos()).isEqualTo(40);
+		assertWithMessage("Unexpected timer max").that(metrics.timer("copy").getMaxNanos()).isEqualTo(30);
+	}
+
+	@Test
+	public void testHistogram() {
+		final Histogram histogram = new Metrics().histogram("sizes");
+
+		assertWithMessage("Empty histogram should be 0").that(histogram.getPercentile(0.5)).isEqualTo(0);
+
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		assertWithMessage("Unexpected count").that(histogram.getCount()).isEqualTo(100);
+		assertWithMessage("Unexpected min").that(histogram.getMin()).isEqualTo(1);
+		assertWithMessage("Unexpected max").that(histogram.getMax()).isEqualTo(100);
+		assertWithMessage("Unexpected mean").that(histogram.getMean()).isEqualTo(50.5);
+		// 50 is in the bucket of 32 to 63
+		assertWithMessage("Unexpected median").that(histogram.getPercentile(0.5)).isEqualTo(63);
+		assertWithMessage("Percentile should be within the max").that(histogram.getPercentile(0.99))
+				.isEqualTo(100);
+	}
+
+	@Test
+	public void testRanking() {
+		final Ranking ranking = new Metrics().ranking("slowest");
+
+		for (int i = 0; i < 20; i++) {
+			ranking.record("file" + i, i);
+		}
+
+		final List<Ranking.Entry> entries = ranking.getEntries();
+
+		assertWithMessage("Unexpected size").that(entries.size()).isEqualTo(Metrics.DEFAULT_RANKING_SIZE);
+		assertWithMessage("Slowest should be first").that(entries.get(0).getName()).isEqualTo("file19");
+		assertWithMessage("Unexpected last").that(entries.get(9).getNanos()).isEqualTo(10);
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		final Metrics metrics = new Metrics();
+		final StringWriter writer = new StringWriter();
+
+		metrics.counter("cd.seeks").add(2);
+		metrics.ranking("slowest").record("\\DIR\\\"A\".BIN", 5);
+		metrics.writeJson(writer);
+
+		final String json = writer.toString();
+
+		assertWithMessage("Counter should be written").that(json).contains("\"cd.seeks\": 2");
+		assertWithMessage("Names should be escaped").that(json)
+				.contains("{ \"name\": \"\\\\DIR\\\\\\\"A\\\".BIN\", \"nanos\": 5 }");
+		assertWithMessage("Empty groups should be written").that(json).contains("\"timers\": {\n\t}");
+	}
+
+}
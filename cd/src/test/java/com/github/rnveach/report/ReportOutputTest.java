@@ -0,0 +1,48 @@
+package com.github.rnveach.report;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.rnveach.utils.Util;
+
+public final class ReportOutputTest {
+
+	@Test
+	public void testNumbers() throws IOException {
+		final long[] numbers = { 0, 1, 9, 10, 255, 2352, -1, 12345678901L, Long.MIN_VALUE, Long.MAX_VALUE };
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		final StringBuilder expected = new StringBuilder();
+
+		// a tiny buffer so the output is flushed in the middle of numbers
+		try (ReportOutput output = new ReportOutput(Channels.newChannel(stream), true, 24)) {
+			for (final long number : numbers) {
+				output.print(number).print(' ').printHex(number).print(' ').printHex((int) number, 4).println();
+
+				expected.append(number).append(' ').append(Util.hex(number)).append(' ')
+						.append(Util.hexRaw(((int) number) & 0xFFFF, 4)).append(System.lineSeparator());
+			}
+		}
+
+		assertWithMessage("Unexpected output").that(new String(stream.toByteArray(), StandardCharsets.US_ASCII))
+				.isEqualTo(expected.toString());
+	}
+
+	@Test
+	public void testLittleEndian() throws IOException {
+		final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+		try (ReportOutput output = new ReportOutput(Channels.newChannel(stream), true, 5)) {
+			output.writeIntLE(0x12345678).writeShortLE(0xABCD).writeByte(0x1FF);
+		}
+
+		assertWithMessage("Unexpected output").that(stream.toByteArray())
+				.isEqualTo(new byte[] { 0x78, 0x56, 0x34, 0x12, (byte) 0xCD, (byte) 0xAB, (byte) 0xFF });
+	}
+
+}
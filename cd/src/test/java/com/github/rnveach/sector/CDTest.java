@@ -0,0 +1,137 @@
+package com.github.rnveach.sector;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.rnveach.metrics.Metrics;
+
+public final class CDTest {
+
+	@TempDir
+	public File folder;
+
+	@Test
+	public void testCache() throws Exception {
+		final byte[] image = new byte[2 * CD.SECTOR_SIZE];
+
+		for (int i = 0; i < 2; i++) {
+			System.arraycopy(CD.SYNC, 0, image, i * CD.SECTOR_SIZE, CD.SYNC.length);
+			image[(i * CD.SECTOR_SIZE) + 15] = 1;
+		}
+
+		final byte[] data = new byte[2048];
+		final byte[] read = new byte[2048];
+
+		new Random(2).nextBytes(data);
+
+		final File file = new File(this.folder, "insert.bin");
+
+		Files.write(file.toPath(), data);
+
+		final CD cd = new CD(new MemorySectorReader(image));
+
+		cd.setCacheSize(1);
+		cd.readSectorData(1, read, 0);
+		cd.seek(0);
+		cd.readSectorData(1, read, 0);
+
+		assertWithMessage("Unexpected hits").that(cd.getCacheHits()).isEqualTo(1);
+		assertWithMessage("Unexpected misses").that(cd.getCacheMisses()).isEqualTo(1);
+
+		cd.seek(1);
+		cd.readSectorData(1, read, 0);
+		cd.seek(0);
+		cd.readSectorData(1, read, 0);
+
+		assertWithMessage("Least recently used sector should be dropped").that(cd.getCacheMisses()).isEqualTo(3);
+
+		cd.seek(0);
+		cd.overlayWithFile(file, false);
+		cd.seek(0);
+		cd.readSectorData(1, read, 0);
+
+		assertWithMessage("Written sector should be read again").that(cd.getCacheMisses()).isEqualTo(4);
+		assertWithMessage("Written data should be read").that(read).isEqualTo(data);
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		final byte[] image = new byte[4 * CD.SECTOR_SIZE];
+
+		for (int i = 0; i < 4; i++) {
+			System.arraycopy(CD.SYNC, 0, image, i * CD.SECTOR_SIZE, CD.SYNC.length);
+			image[(i * CD.SECTOR_SIZE) + 15] = 1;
+		}
+
+		final Metrics metrics = new Metrics();
+		final CD cd = new CD(new MemorySectorReader(image));
+		final byte[] data = new byte[2 * 2048];
+
+		cd.setMetrics(metrics);
+		cd.readSector();
+		// already at the next sector
+		cd.seek(1);
+		cd.readSectorData(2, data, 0);
+		cd.seek(0);
+
+		final CD duplicate = cd.duplicate();
+
+		duplicate.writeSectorData(2, data, 0);
+
+		assertWithMessage("Unexpected sectors read").that(metrics.counter("cd.sectors.read").getValue())
+				.isEqualTo(3);
+		assertWithMessage("Duplicates should count together").that(metrics.counter("cd.sectors.written").getValue())
+				.isEqualTo(2);
+		assertWithMessage("Unexpected seeks").that(metrics.counter("cd.seeks").getValue()).isEqualTo(1);
+	}
+
+	@Test
+	public void testOverlayOnlyChanged() throws Exception {
+		final byte[] image = new byte[4 * CD.SECTOR_SIZE];
+
+		for (int i = 0; i < 4; i++) {
+			System.arraycopy(CD.SYNC, 0, image, i * CD.SECTOR_SIZE, CD.SYNC.length);
+			image[(i * CD.SECTOR_SIZE) + 15] = 1;
+		}
+
+		final byte[] data = new byte[3 * 2048];
+
+		new Random(1).nextBytes(data);
+
+		for (int i = 0; i < 3; i++) {
+			System.arraycopy(data, i * 2048, image, (i * CD.SECTOR_SIZE) + 16, 2048);
+		}
+
+		// a stale EDC is only fixed when the sector is written
+		data[2048 + 100]++;
+
+		final File file = new File(this.folder, "insert.bin");
+
+		Files.write(file.toPath(), data);
+
+		final MemorySectorReader reader = new MemorySectorReader(image);
+		final CD cd = new CD(reader);
+
+		assertWithMessage("Only the changed sector should be written")
+				.that(cd.overlayWithFile(file, false, true)).isEqualTo(1);
+		assertWithMessage("Unchanged sector should be left alone").that(Edcre.isEdcValid(image, 0)).isFalse();
+		assertWithMessage("Changed sector should be regenerated").that(Edcre.isEdcValid(image, CD.SECTOR_SIZE))
+				.isTrue();
+		assertWithMessage("Changed data should be written")
+				.that(Arrays.copyOfRange(image, CD.SECTOR_SIZE + 16, CD.SECTOR_SIZE + 16 + 2048))
+				.isEqualTo(Arrays.copyOfRange(data, 2048, 4096));
+
+		cd.seek(0);
+
+		assertWithMessage("Every sector should be written").that(cd.overlayWithFile(file, false)).isEqualTo(3);
+		assertWithMessage("Rewritten sector should be regenerated").that(Edcre.isEdcValid(image, 0)).isTrue();
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.github.rnveach.sector;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.rnveach.utils.Util;
+
+public final class CdDirectoryListingTest {
+
+	private static final int FILE_COUNT = 50;
+
+	@Test
+	public void testListing() throws Exception {
+		final byte[] image = new byte[3 * CD.SECTOR_SIZE];
+		final List<String> names = new ArrayList<>();
+		int sector = 0;
+		int position = 0;
+
+		for (int i = 0; i < 3; i++) {
+			System.arraycopy(CD.SYNC, 0, image, i * CD.SECTOR_SIZE, CD.SYNC.length);
+			image[(i * CD.SECTOR_SIZE) + 15] = 1;
+		}
+
+		for (int i = -2; i < FILE_COUNT; i++) {
+			// the directory itself and its parent are named 0 and 1
+			final String name = (i < 0) ? String.valueOf((char) (i + 2)) : String.format("FILE%02d.BIN;1", i);
+			final int length = 33 + name.length() + ((name.length() % 2) == 0 ? 1 : 0);
+
+			// records don't cross sectors, the rest of the sector stays zero
+			if ((position + length) > 2048) {
+				sector++;
+				position = 0;
+			}
+
+			final int offset = (sector * CD.SECTOR_SIZE) + 16 + position;
+
+			image[offset] = (byte) length;
+			Util.write32LE(image, offset + 2, 100 + i);
+			Util.write32BE(image, offset + 6, 100 + i);
+			Util.write32LE(image, offset + 10, 1000 + i);
+			Util.write32BE(image, offset + 14, 1000 + i);
+			image[offset + 25] = (byte) ((i < 0) ? 0x02 : 0);
+			image[offset + 32] = (byte) name.length();
+
+			for (int j = 0; j < name.length(); j++) {
+				image[offset + 33 + j] = (byte) name.charAt(j);
+			}
+
+			if (i >= 0) {
+				names.add(name);
+			}
+
+			position += length;
+		}
+
+		assertWithMessage("Records should reach the second sector").that(sector).isEqualTo(1);
+
+		final CdDirectoryListing listing = new CdDirectoryListing(new CD(new MemorySectorReader(image)), 0, 4096);
+		final List<String> read = new ArrayList<>();
+		int lastPosition = -1;
+
+		while (listing.hasNext()) {
+			listing.nextEntry();
+
+			if (listing.getEntryName().isEmpty()) {
+				assertWithMessage("Unexpected directory flag").that(listing.isEntryDirectory()).isTrue();
+				continue;
+			}
+
+			final int index = read.size();
+
+			assertWithMessage("Unexpected sector").that(listing.getEntrySector()).isEqualTo(100 + index);
+			assertWithMessage("Unexpected length").that(listing.getEntryLength()).isEqualTo(1000 + index);
+
+			read.add(listing.getEntryName());
+			lastPosition = listing.getEntryPosition();
+		}
+
+		final int last = lastPosition;
+
+		assertWithMessage("Every record should be read in order").that(read).isEqualTo(names);
+		assertWithMessage("Last record should be in the second sector").that(last).isAtLeast(2048);
+
+		final byte[] data = listing.getData();
+
+		assertWithMessage("Update should change the record")
+				.that(listing.updateEntry(last, "FILE49.BIN", 149, 300, 5000)).isTrue();
+		assertWithMessage("Unexpected little endian sector").that(Util.read32LE(data, last + 2))
+				.isEqualTo(300);
+		assertWithMessage("Unexpected big endian sector").that(Util.read32BE(data, last + 6)).isEqualTo(300);
+		assertWithMessage("Unexpected little endian size").that(Util.read32LE(data, last + 10))
+				.isEqualTo(5000);
+		assertWithMessage("Unexpected big endian size").that(Util.read32BE(data, last + 14))
+				.isEqualTo(5000);
+		assertWithMessage("Same values shouldn't change the record")
+				.that(listing.updateEntry(last, "FILE49.BIN", 300, 300, 5000)).isFalse();
+
+		Assertions.assertThrows(IllegalStateException.class,
+				() -> listing.updateEntry(last, "FILE49.BIN", 149, 400, 5000));
+		Assertions.assertThrows(IllegalStateException.class,
+				() -> listing.updateEntry(last, "FILE48.BIN", 300, 400, 5000));
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.github.rnveach.sector;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class CdFileChannelTest {
+
+	private static final int FIRST_SECTOR = 5;
+
+	private static final int SIZE = (10 * 2048) - 100;
+
+	@TempDir
+	public File folder;
+
+	@Test
+	public void testPositionalReads() throws Exception {
+		final byte[] image = new byte[20 * CD.SECTOR_SIZE];
+		final byte[] data = new byte[SIZE];
+
+		new Random(1).nextBytes(image);
+		new Random(2).nextBytes(data);
+
+		for (int i = 0; i < 20; i++) {
+			image[(i * CD.SECTOR_SIZE) + 15] = 2;
+		}
+		for (int i = 0; i < SIZE; i += 2048) {
+			System.arraycopy(data, i, image, ((FIRST_SECTOR + (i / 2048)) * CD.SECTOR_SIZE) + 24,
+					Math.min(2048, SIZE - i));
+		}
+
+		final File file = new File(this.folder, "image.bin");
+
+		Files.write(file.toPath(), image);
+
+		try (CD cd = CD.open(file, false); CdFileChannel channel = new CdFileChannel(cd.getReader(), FIRST_SECTOR,
+				SIZE, false)) {
+			assertPositionalReads(channel, data);
+
+			final ByteBuffer buffer = ByteBuffer.allocate(SIZE + 10);
+
+			channel.position(0);
+
+			assertWithMessage("Unexpected read length").that(channel.read(buffer)).isEqualTo(SIZE);
+			assertWithMessage("Unexpected end").that(channel.read(buffer)).isEqualTo(-1);
+			assertWithMessage("Unexpected data").that(Arrays.copyOf(buffer.array(), SIZE)).isEqualTo(data);
+		}
+
+		try (RandomAccessFile reader = new RandomAccessFile(file, "r");
+				CdFileChannel channel = new CdFileChannel(new FileSectorReader(reader), FIRST_SECTOR, SIZE,
+						false)) {
+			assertPositionalReads(channel, data);
+		}
+
+		try (CdFileChannel channel = new CdFileChannel(new MemorySectorReader(image), FIRST_SECTOR,
+				3L * CD.SECTOR_SIZE, true)) {
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(CD.SECTOR_SIZE);
+			final byte[] read = new byte[CD.SECTOR_SIZE];
+
+			channel.read(buffer, CD.SECTOR_SIZE + 10);
+			buffer.flip().get(read);
+
+			assertWithMessage("Raw sectors should be read whole").that(read).isEqualTo(Arrays.copyOfRange(image,
+					((FIRST_SECTOR + 1) * CD.SECTOR_SIZE) + 10, ((FIRST_SECTOR + 2) * CD.SECTOR_SIZE) + 10));
+		}
+	}
+
+	private static void assertPositionalReads(CdFileChannel channel, byte[] data) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			final List<Future<Void>> results = new ArrayList<>();
+
+			for (int thread = 0; thread < 4; thread++) {
+				final Random random = new Random(thread);
+
+				results.add(executor.submit(() -> {
+					for (int i = 0; i < 200; i++) {
+						final int position = random.nextInt(SIZE);
+						final ByteBuffer buffer = ByteBuffer.allocate(random.nextInt(5000) + 1);
+						final int read = channel.read(buffer, position);
+
+						assertWithMessage("Unexpected read length at " + position).that(read)
+								.isEqualTo(Math.min(buffer.capacity(), SIZE - position));
+						assertWithMessage("Unexpected data at " + position)
+								.that(Arrays.copyOf(buffer.array(), read))
+								.isEqualTo(Arrays.copyOfRange(data, position, position + read));
+					}
+
+					return null;
+				}));
+			}
+
+			for (final Future<Void> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
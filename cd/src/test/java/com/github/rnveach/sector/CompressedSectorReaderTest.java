@@ -0,0 +1,85 @@
+package com.github.rnveach.sector;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class CompressedSectorReaderTest {
+
+	private static final int SECTOR_COUNT = 100;
+
+	@TempDir
+	public File folder;
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		final MemorySectorReader source = createSource();
+		final File file = new File(this.folder, "image" + CompressedSectorReader.EXTENSION);
+
+		CompressedSectorReader.compress(source, file, 7);
+
+		assertWithMessage("Image should be compressed").that(file.length())
+				.isLessThan((long) SECTOR_COUNT * CD.SECTOR_SIZE);
+
+		try (CompressedSectorReader reader = CompressedSectorReader.open(file, 2)) {
+			assertWithMessage("Unexpected sector count").that(reader.getSectorCount()).isEqualTo(SECTOR_COUNT);
+
+			final byte[] all = new byte[SECTOR_COUNT * CD.SECTOR_SIZE];
+
+			reader.read(0, SECTOR_COUNT, all, 0);
+
+			assertWithMessage("Bulk read should match").that(all).isEqualTo(source.getImage());
+
+			// out of order so blocks are dropped from the cache and read again
+			final byte[] sector = new byte[CD.SECTOR_SIZE];
+			final SectorReader duplicate = reader.duplicate();
+
+			for (final int sectorNumber : new int[] { 99, 0, 50, 6, 7, 98, 1, 0 }) {
+				duplicate.read(sectorNumber, sector, 0);
+
+				assertWithMessage("Unexpected sector " + sectorNumber).that(sector)
+						.isEqualTo(Arrays.copyOfRange(source.getImage(), sectorNumber * CD.SECTOR_SIZE,
+								(sectorNumber + 1) * CD.SECTOR_SIZE));
+			}
+
+			assertWithMessage("Sector 40 is audio").that(reader.isAudio(40)).isTrue();
+			assertWithMessage("Sector 39 isn't audio").that(reader.isAudio(39)).isFalse();
+
+			Assertions.assertThrows(IllegalStateException.class, () -> reader.write(0, sector, 0));
+			Assertions.assertThrows(IllegalStateException.class, () -> reader.read(SECTOR_COUNT, sector, 0));
+		}
+	}
+
+	private static MemorySectorReader createSource() {
+		final byte[] image = new byte[SECTOR_COUNT * CD.SECTOR_SIZE];
+		final Random random = new Random(1);
+
+		// the first blocks are random and won't compress, so they are stored as they
+		// are
+		for (int i = 0; i < SECTOR_COUNT; i++) {
+			if ((i >= 14) && ((i % 3) != 0)) {
+				continue;
+			}
+
+			final byte[] sector = new byte[CD.SECTOR_SIZE];
+
+			random.nextBytes(sector);
+			System.arraycopy(sector, 0, image, i * CD.SECTOR_SIZE, CD.SECTOR_SIZE);
+		}
+
+		final MemorySectorReader result = new MemorySectorReader(image);
+
+		for (int i = 40; i < 60; i++) {
+			result.setAudio(i);
+		}
+
+		return result;
+	}
+
+}
@@ -0,0 +1,149 @@
+package com.github.rnveach.sector;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class DiscIndexTest {
+
+	@TempDir
+	public File folder;
+
+	private File image;
+
+	private File sidecar;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		final ImageGenerator generator = new ImageGenerator();
+
+		generator.setDepth(1);
+		generator.setDirectoriesPerLevel(1);
+		generator.setFilesPerDirectory(2);
+		generator.setFileSize(5000);
+		generator.setStreamsPerDirectory(0);
+
+		this.image = new File(this.folder, "image.bin");
+		this.sidecar = DiscIndex.getSidecar(this.image);
+
+		generator.write(this.image, 1);
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		final DiscIndex built;
+
+		try (CD cd = CD.open(this.image, false)) {
+			built = DiscIndex.load(cd, this.image);
+		}
+
+		assertWithMessage("Index should be saved").that(this.sidecar.isFile()).isTrue();
+
+		final DiscIndex loaded = loadSaved();
+
+		assertWithMessage("Unexpected entry count").that(loaded.getEntryCount()).isEqualTo(built.getEntryCount());
+
+		for (int entry = 0; entry < built.getEntryCount(); entry++) {
+			assertWithMessage("Unexpected path").that(loaded.getPath(entry)).isEqualTo(built.getPath(entry));
+			assertWithMessage("Unexpected sector").that(loaded.getSector(entry)).isEqualTo(built.getSector(entry));
+			assertWithMessage("Unexpected size").that(loaded.getSize(entry)).isEqualTo(built.getSize(entry));
+			assertWithMessage("Unexpected parent").that(loaded.getParent(entry)).isEqualTo(built.getParent(entry));
+			assertWithMessage("Unexpected record position").that(loaded.getRecordPosition(entry))
+					.isEqualTo(built.getRecordPosition(entry));
+		}
+
+		assertWithMessage("Temporary files should be gone").that(this.folder.list()).asList()
+				.containsExactly(this.image.getName(), this.sidecar.getName());
+	}
+
+	@Test
+	public void testStaleRebuild() throws Exception {
+		try (CD cd = CD.open(this.image, false)) {
+			DiscIndex.load(cd, this.image);
+		}
+
+		assertWithMessage("Time should change").that(this.image.setLastModified(this.image.lastModified() - 10_000))
+				.isTrue();
+
+		try (CD cd = CD.open(this.image, false)) {
+			assertWithMessage("Stale index should be rebuilt").that(DiscIndex.load(cd, this.image).find("\\D000"))
+					.isNotEqualTo(-1);
+		}
+
+		assertWithMessage("Rebuilt index should be saved").that(loadSaved().find("\\D000")).isNotEqualTo(-1);
+	}
+
+	@Test
+	public void testCorruptRebuild() throws Exception {
+		try (CD cd = CD.open(this.image, false)) {
+			DiscIndex.load(cd, this.image);
+		}
+
+		final long modified = this.image.lastModified();
+
+		try (RandomAccessFile file = new RandomAccessFile(this.sidecar, "rw")) {
+			// the header is left valid
+			file.setLength(file.length() / 2);
+		}
+
+		assertWithMessage("Image should be unchanged").that(this.image.lastModified()).isEqualTo(modified);
+
+		try (CD cd = CD.open(this.image, false)) {
+			assertWithMessage("Corrupt index should be rebuilt")
+					.that(DiscIndex.load(cd, this.image).find("\\D000\\F001.BIN")).isNotEqualTo(-1);
+		}
+
+		assertWithMessage("Rebuilt index should be saved").that(loadSaved().find("\\D000\\F001.BIN"))
+				.isNotEqualTo(-1);
+	}
+
+	@Test
+	public void testFind() throws Exception {
+		final DiscIndex index;
+
+		try (CD cd = CD.open(this.image, false)) {
+			index = DiscIndex.build(cd);
+		}
+
+		final int directory = index.find("\\D000");
+		final int file = index.find("/D000/F001.BIN");
+
+		assertWithMessage("Root should be found").that(index.find("")).isEqualTo(0);
+		assertWithMessage("Directory should be found").that(index.find("D000\\")).isEqualTo(directory);
+		assertWithMessage("Unexpected directory").that(index.isDirectory(directory)).isTrue();
+		assertWithMessage("Unexpected parent").that(index.getParent(file)).isEqualTo(directory);
+		assertWithMessage("Unexpected name").that(index.getName(file)).isEqualTo("F001.BIN");
+		assertWithMessage("Missing path shouldn't be found").that(index.find("\\D000\\F002.BIN")).isEqualTo(-1);
+
+		final int first = index.find("F000.BIN");
+		final int second = index.find("\\F001.BIN");
+		final int sector = index.getSector(first);
+
+		assertWithMessage("Unexpected sector count").that(index.getSectorCount(first)).isEqualTo(3);
+		assertWithMessage("First sector should be found").that(index.findBySector(sector)).isEqualTo(first);
+		assertWithMessage("Last sector should be found").that(index.findBySector(sector + 2)).isEqualTo(first);
+		assertWithMessage("Next file should be found").that(index.findBySector(index.getSector(second)))
+				.isEqualTo(second);
+		assertWithMessage("System area belongs to nothing").that(index.findBySector(0)).isEqualTo(-1);
+		assertWithMessage("Past the end belongs to nothing").that(index.findBySector(1_000_000)).isEqualTo(-1);
+		assertWithMessage("Range should give both entries in order")
+				.that(index.findBySectors(sector + 1, index.getSector(second) + 1))
+				.isEqualTo(Arrays.asList(first, second));
+		assertWithMessage("Range in the system area gives nothing").that(index.findBySectors(0, 16)).isEmpty();
+	}
+
+	/**
+	 * Loads with an image that has no sectors, which only works from the saved
+	 * index.
+	 */
+	private DiscIndex loadSaved() throws Exception {
+		return DiscIndex.load(new CD(new MemorySectorReader(new byte[0])), this.image);
+	}
+
+}
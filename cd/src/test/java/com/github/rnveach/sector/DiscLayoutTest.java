@@ -0,0 +1,139 @@
+package com.github.rnveach.sector;
+
+import static com.github.rnveach.sector.TestUtils.random;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class DiscLayoutTest {
+
+	@TempDir
+	public File folder;
+
+	@Test
+	public void testTracks() throws Exception {
+		final byte[] data = random(1, 30 * CD.SECTOR_SIZE);
+		final byte[] audio = random(2, 200 * CD.SECTOR_SIZE);
+		final byte[] mode1 = random(3, 10 * 2048);
+		final File cue = createCue(data, audio, mode1);
+
+		try (DiscLayout layout = DiscLayout.open(cue, false)) {
+			final List<Track> tracks = layout.getTracks();
+
+			assertWithMessage("Unexpected track count").that(tracks).hasSize(3);
+			assertTrack(tracks.get(0), 1, Track.Type.MODE2_2352, 0, 0, 30);
+			assertTrack(tracks.get(1), 2, Track.Type.AUDIO, 30, 180, 200);
+			assertTrack(tracks.get(2), 3, Track.Type.MODE1_2048, 230, 305, 85);
+
+			assertWithMessage("Unexpected sector count").that(layout.getSectorCount()).isEqualTo(315);
+			assertWithMessage("Data isn't audio").that(layout.isAudio(29)).isFalse();
+			assertWithMessage("Audio pregap is audio").that(layout.isAudio(30)).isTrue();
+			assertWithMessage("Generated pregap isn't audio").that(layout.isAudio(230)).isFalse();
+			assertWithMessage("Unexpected track").that(layout.getTrack(250).getNumber()).isEqualTo(3);
+
+			final byte[] buffer = new byte[CD.SECTOR_SIZE];
+
+			layout.read(40, buffer, 0);
+
+			assertWithMessage("Audio should be read as stored").that(buffer)
+					.isEqualTo(Arrays.copyOfRange(audio, 10 * CD.SECTOR_SIZE, 11 * CD.SECTOR_SIZE));
+
+			layout.read(307, buffer, 0);
+
+			assertWithMessage("Mode 1 data should be after the header")
+					.that(Arrays.copyOfRange(buffer, 16, 16 + 2048))
+					.isEqualTo(Arrays.copyOfRange(mode1, 2 * 2048, 3 * 2048));
+			assertWithMessage("Unexpected minute").that(buffer[12]).isEqualTo((byte) 0x00);
+			assertWithMessage("Unexpected second").that(buffer[13]).isEqualTo((byte) 0x06);
+			assertWithMessage("Unexpected frame").that(buffer[14]).isEqualTo((byte) 0x07);
+			assertWithMessage("Mode 1 EDC should be generated").that(Edcre.isEdcValid(buffer, 0)).isTrue();
+			assertWithMessage("Mode 1 ECC should be generated").that(Edcre.isEccValid(buffer, 0)).isTrue();
+
+			layout.read(231, buffer, 0);
+
+			assertWithMessage("Pregap should be an empty mode 1 sector").that(buffer[15]).isEqualTo((byte) 1);
+			assertWithMessage("Pregap ECC should be generated").that(Edcre.isEccValid(buffer, 0)).isTrue();
+		}
+	}
+
+	@Test
+	public void testBulkReadAcrossTracks() throws Exception {
+		final File cue = createCue(random(4, 30 * CD.SECTOR_SIZE), random(5, 200 * CD.SECTOR_SIZE),
+				random(6, 10 * 2048));
+
+		try (DiscLayout layout = DiscLayout.open(cue, false)) {
+			final int sectors = layout.getSectorCount() - 20;
+			final byte[] bulk = new byte[sectors * CD.SECTOR_SIZE];
+			final byte[] single = new byte[sectors * CD.SECTOR_SIZE];
+
+			layout.read(20, sectors, bulk, 0);
+
+			for (int i = 0; i < sectors; i++) {
+				layout.duplicate().read(20 + i, single, i * CD.SECTOR_SIZE);
+			}
+
+			assertWithMessage("Bulk and single reads should match").that(bulk).isEqualTo(single);
+		}
+	}
+
+	@Test
+	public void testWrite() throws Exception {
+		final File cue = createCue(random(7, 30 * CD.SECTOR_SIZE), random(8, 200 * CD.SECTOR_SIZE),
+				random(9, 10 * 2048));
+		final byte[] sector = random(10, CD.SECTOR_SIZE);
+
+		try (DiscLayout layout = DiscLayout.open(cue, true)) {
+			layout.write(35, sector, 0);
+
+			Assertions.assertThrows(IllegalStateException.class, () -> layout.write(240, sector, 0));
+		}
+
+		final byte[] audio = Files.readAllBytes(new File(this.folder, "audio.bin").toPath());
+
+		assertWithMessage("Sector should be written into the second file")
+				.that(Arrays.copyOfRange(audio, 5 * CD.SECTOR_SIZE, 6 * CD.SECTOR_SIZE)).isEqualTo(sector);
+	}
+
+	private File createCue(byte[] data, byte[] audio, byte[] mode1) throws Exception {
+		Files.write(new File(this.folder, "data track.bin").toPath(), data);
+		Files.write(new File(this.folder, "audio.bin").toPath(), audio);
+		Files.write(new File(this.folder, "mode1.iso").toPath(), mode1);
+
+		final File result = new File(this.folder, "disc.cue");
+
+		Files.write(result.toPath(), String.join("\n", //
+				"REM test disc", //
+				"FILE \"data track.bin\" BINARY", //
+				"  TRACK 01 MODE2/2352", //
+				"    INDEX 01 00:00:00", //
+				"FILE audio.bin BINARY", //
+				"  TRACK 02 AUDIO", //
+				"    INDEX 00 00:00:00", //
+				"    INDEX 01 00:02:00", //
+				"FILE \"mode1.iso\" BINARY", //
+				"  TRACK 03 MODE1/2048", //
+				"    PREGAP 00:01:00", //
+				"    INDEX 01 00:00:00", //
+				"") //
+				.getBytes(StandardCharsets.UTF_8));
+
+		return result;
+	}
+
+	private static void assertTrack(Track track, int number, Track.Type type, int first, int start, int count) {
+		assertWithMessage("Unexpected number").that(track.getNumber()).isEqualTo(number);
+		assertWithMessage("Unexpected type").that(track.getType()).isEqualTo(type);
+		assertWithMessage("Unexpected first sector").that(track.getFirstSector()).isEqualTo(first);
+		assertWithMessage("Unexpected start sector").that(track.getStartSector()).isEqualTo(start);
+		assertWithMessage("Unexpected sector count").that(track.getSectorCount()).isEqualTo(count);
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.github.rnveach.sector;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.rnveach.utils.Util;
+
+public final class EcmCodecTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		final byte[] image = new byte[8 * CD.SECTOR_SIZE];
+		final Random random = new Random(1);
+
+		createSector(image, 0, 1, 0x00, random);
+		createSector(image, 1, 2, 0x08, random);
+		createSector(image, 2, 2, 0x64, random);
+		createSector(image, 3, 2, 0x64, random);
+		Util.write32LE(image, (3 * CD.SECTOR_SIZE) + 2348, 0);
+		// 4 is left empty
+		for (int i = 5 * CD.SECTOR_SIZE; i < (6 * CD.SECTOR_SIZE); i++) {
+			image[i] = (byte) random.nextInt();
+		}
+		// valid, but at the wrong address
+		createSector(image, 6, 1, 0x00, random);
+		image[(6 * CD.SECTOR_SIZE) + 14]++;
+		Edcre.generate(image, 6 * CD.SECTOR_SIZE);
+		// a broken EDC
+		createSector(image, 7, 2, 0x08, random);
+		image[(7 * CD.SECTOR_SIZE) + 2072]++;
+
+		final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+
+		EcmCodec.encode(new MemorySectorReader(image.clone()), encoded);
+
+		// header, types, then mode 1, form 1, form 2 twice and 3 raw sectors
+		assertWithMessage("Unexpected encoded size").that(encoded.size())
+				.isEqualTo(12 + 8 + 2048 + 2052 + 2328 + 2328 + (3 * CD.SECTOR_SIZE));
+
+		final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+
+		assertWithMessage("Unexpected sector count")
+				.that(EcmCodec.decode(new ByteArrayInputStream(encoded.toByteArray()), decoded)).isEqualTo(8);
+		assertWithMessage("Decoded image should match").that(decoded.toByteArray()).isEqualTo(image);
+	}
+
+	private static void createSector(byte[] image, int sectorNumber, int mode, int subMode, Random random) {
+		final int offset = sectorNumber * CD.SECTOR_SIZE;
+		final int address = sectorNumber + 150;
+
+		for (int i = offset + 16; i < (offset + CD.SECTOR_SIZE); i++) {
+			image[i] = (byte) random.nextInt();
+		}
+
+		System.arraycopy(CD.SYNC, 0, image, offset, CD.SYNC.length);
+		image[offset + 12] = Util.toBcd(address / 75 / 60);
+		image[offset + 13] = Util.toBcd((address / 75) % 60);
+		image[offset + 14] = Util.toBcd(address % 75);
+		image[offset + 15] = (byte) mode;
+
+		if (mode == 2) {
+			for (int i = 0; i < 8; i += 4) {
+				image[offset + 16 + i] = 1;
+				image[offset + 17 + i] = 0;
+				image[offset + 18 + i] = (byte) subMode;
+				image[offset + 19 + i] = 0;
+			}
+		}
+
+		Edcre.generate(image, offset);
+	}
+
+}
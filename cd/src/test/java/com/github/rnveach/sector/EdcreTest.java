@@ -0,0 +1,200 @@
+package com.github.rnveach.sector;
+
+import static com.github.rnveach.sector.TestUtils.random;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+
+import org.junit.jupiter.api.Test;
+
+public final class EdcreTest {
+
+	@Test
+	public void testEdcMatchesBitwiseCrc() {
+		final byte[] data = random(1, 2352);
+
+		for (final int length : new int[] { 0, 1, 7, 8, 9, 2048, 2056, 2332, 2351 }) {
+			assertWithMessage("Unexpected EDC for length " + length)
+					.that(Edcre.computeEdc(0, data, 1, length)).isEqualTo(bitwiseEdc(data, 1, length));
+		}
+	}
+
+	@Test
+	public void testMode1() {
+		final byte[] sector = createSector(1, 0x00, 2);
+
+		Edcre.generate(sector, 0);
+
+		assertValid(sector);
+
+		// mode 1 parity includes the header
+		sector[14] ^= 1;
+
+		assertWithMessage("Header change should break the EDC").that(Edcre.isEdcValid(sector, 0)).isFalse();
+		assertWithMessage("Header change should break the ECC").that(Edcre.isEccValid(sector, 0)).isFalse();
+	}
+
+	@Test
+	public void testMode2Form1() {
+		final byte[] sector = createSector(2, 0x08, 3);
+
+		Edcre.generate(sector, 0);
+
+		assertValid(sector);
+
+		// mode 2 parity is done without the header
+		sector[14] ^= 1;
+
+		assertValid(sector);
+		assertWithMessage("Header must be left as is").that(sector[14]).isEqualTo((byte) 1);
+
+		sector[1000] ^= 0x40;
+
+		assertWithMessage("Data change should break the EDC").that(Edcre.isEdcValid(sector, 0)).isFalse();
+		assertWithMessage("Data change should break the ECC").that(Edcre.isEccValid(sector, 0)).isFalse();
+	}
+
+	@Test
+	public void testMode2Form2() {
+		final byte[] sector = createSector(2, 0x24, 4);
+
+		assertWithMessage("Form 2 without an EDC is valid").that(Edcre.isEdcValid(sector, 0)).isTrue();
+
+		final byte[] original = sector.clone();
+
+		Edcre.generate(sector, 0);
+
+		assertValid(sector);
+
+		for (int i = 0; i < 2348; i++) {
+			assertWithMessage("Form 2 should only write the EDC, found change at " + i).that(sector[i])
+					.isEqualTo(original[i]);
+		}
+
+		sector[2000] ^= 1;
+
+		assertWithMessage("Data change should break the EDC").that(Edcre.isEdcValid(sector, 0)).isFalse();
+	}
+
+	/**
+	 * Sectors at 00:02:16 filled with the bytes 0 to 255 over and over, with the
+	 * EDC and a few P and Q parity bytes worked out separately from the lookup
+	 * tables of ECM.
+	 */
+	@Test
+	public void testKnownAnswers() {
+		final byte[] mode1 = createCountingSector(1, 0x00);
+		final byte[] form1 = createCountingSector(2, 0x08);
+		final byte[] form2 = createCountingSector(2, 0x20);
+
+		Edcre.generate(mode1, 0);
+		Edcre.generate(form1, 0);
+		Edcre.generate(form2, 0);
+
+		assertBytes("Mode 1 EDC", mode1, 2064, 0x5E, 0x93, 0x51, 0x92);
+		assertBytes("Mode 1 P", mode1, 2076, 0x42, 0x13, 0x28, 0x94);
+		assertBytes("Mode 1 P", mode1, 2247, 0xC4);
+		assertBytes("Mode 1 Q", mode1, 2248, 0x46, 0xE9, 0x44, 0x86);
+		assertBytes("Mode 1 Q", mode1, 2351, 0x23);
+
+		assertBytes("Form 1 EDC", form1, 2072, 0xE9, 0x0C, 0xD0, 0x59);
+		assertBytes("Form 1 P", form1, 2076, 0x59, 0xFF, 0x7F, 0xD9);
+		assertBytes("Form 1 P", form1, 2247, 0xB1);
+		assertBytes("Form 1 Q", form1, 2248, 0x13, 0xFD, 0x68, 0xAA);
+		assertBytes("Form 1 Q", form1, 2351, 0x87);
+
+		assertBytes("Form 2 EDC", form2, 2348, 0xBC, 0x8D, 0xD9, 0x95);
+	}
+
+	@Test
+	public void testOffsetInBuffer() {
+		final byte[] sector = createSector(2, 0x08, 5);
+		final byte[] buffer = new byte[CD.SECTOR_SIZE * 3];
+
+		System.arraycopy(sector, 0, buffer, CD.SECTOR_SIZE, CD.SECTOR_SIZE);
+
+		Edcre.generate(sector, 0);
+		Edcre.generate(buffer, CD.SECTOR_SIZE);
+
+		for (int i = 0; i < CD.SECTOR_SIZE; i++) {
+			assertWithMessage("Unexpected byte at " + i).that(buffer[CD.SECTOR_SIZE + i]).isEqualTo(sector[i]);
+		}
+
+		assertWithMessage("Surrounding sectors must not change").that(buffer[0]).isEqualTo((byte) 0);
+		assertWithMessage("Surrounding sectors must not change").that(buffer[(CD.SECTOR_SIZE * 2) + 20])
+				.isEqualTo((byte) 0);
+	}
+
+	private static void assertValid(byte[] sector) {
+		assertWithMessage("EDC should be valid").that(Edcre.isEdcValid(sector, 0)).isTrue();
+		assertWithMessage("ECC should be valid").that(Edcre.isEccValid(sector, 0)).isTrue();
+	}
+
+	private static void assertBytes(String name, byte[] sector, int offset, int... expected) {
+		for (int i = 0; i < expected.length; i++) {
+			assertWithMessage("Unexpected " + name + " byte at " + (offset + i)).that(sector[offset + i] & 0xFF)
+					.isEqualTo(expected[i]);
+		}
+	}
+
+	private static byte[] createCountingSector(int mode, int subMode) {
+		final byte[] result = new byte[CD.SECTOR_SIZE];
+		final int dataStart = (mode == 2) ? 24 : 16;
+		final int dataSize = (subMode == 0x20) ? 2324 : 2048;
+
+		System.arraycopy(CD.SYNC, 0, result, 0, CD.SYNC.length);
+
+		result[13] = 2;
+		result[14] = 0x16;
+		result[15] = (byte) mode;
+		result[18] = (byte) subMode;
+		result[22] = (byte) subMode;
+
+		for (int i = 0; i < dataSize; i++) {
+			result[dataStart + i] = (byte) i;
+		}
+
+		return result;
+	}
+
+	private static byte[] createSector(int mode, int subMode, long seed) {
+		final byte[] result = random(seed, CD.SECTOR_SIZE);
+
+		System.arraycopy(CD.SYNC, 0, result, 0, CD.SYNC.length);
+
+		result[12] = 0;
+		result[13] = 2;
+		result[14] = 0;
+		result[15] = (byte) mode;
+
+		if (mode == 2) {
+			for (int i = 0; i < 2; i++) {
+				result[16 + (i * 4)] = 0;
+				result[17 + (i * 4)] = 0;
+				result[18 + (i * 4)] = (byte) subMode;
+				result[19 + (i * 4)] = 0;
+			}
+		}
+
+		// the generator should fill in all of these
+		for (int i = 2064; i < CD.SECTOR_SIZE; i++) {
+			result[i] = 0;
+		}
+
+		return result;
+	}
+
+	private static int bitwiseEdc(byte[] data, int offset, int length) {
+		int result = 0;
+
+		for (int i = 0; i < length; i++) {
+			result ^= data[offset + i] & 0xFF;
+
+			for (int bit = 0; bit < 8; bit++) {
+				result = ((result & 1) != 0) ? ((result >>> 1) ^ 0xD8018001) : (result >>> 1);
+			}
+		}
+
+		return result;
+	}
+
+}
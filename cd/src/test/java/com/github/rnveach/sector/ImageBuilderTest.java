@@ -0,0 +1,81 @@
+package com.github.rnveach.sector;
+
+import static com.github.rnveach.sector.TestUtils.random;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class ImageBuilderTest {
+
+	@TempDir
+	public File folder;
+
+	@Test
+	public void testBuild() throws Exception {
+		final byte[] a = random(1, 3000);
+		final byte[] b = random(2, 5000);
+
+		Files.write(new File(this.folder, "A.BIN").toPath(), a);
+		new File(this.folder, "SUB").mkdir();
+		Files.write(new File(this.folder, "SUB" + File.separator + "B.BIN").toPath(), b);
+		Files.write(new File(this.folder, ImageBuilder.MANIFEST).toPath(), String.join("\r\n", //
+				"Directory: ", "\tSector: 22", "\tSize: 2048", "", //
+				"Directory Entry #2", "\tName: A.BIN", "\tSector: 23", "\tSize: 3000", "", //
+				"Directory Entry #3", "\tName: SUB", "\tSector: 25", "\tSize: 2048", "", //
+				"Directory: \\SUB", "\tSector: 25", "\tSize: 2048", "", //
+				"Directory Entry #2", "\tName: B.BIN", "\tSector: 26", "\tSize: 100", "").getBytes(
+						StandardCharsets.UTF_8));
+
+		final ImageBuilder builder = ImageBuilder.load(this.folder);
+		final File image = new File(this.folder, "out.bin");
+
+		builder.layout();
+		builder.write(image, 2);
+
+		assertWithMessage("Only the grown file should move").that(builder.getMovedPaths())
+				.containsExactly("\\SUB\\B.BIN");
+
+		try (CD cd = CD.open(image, false)) {
+			final DiscIndex index = DiscIndex.build(cd);
+			final int entryA = index.find("\\A.BIN");
+			final int entryB = index.find("\\SUB\\B.BIN");
+
+			assertWithMessage("Unexpected sector count").that(cd.getSectorCount())
+					.isEqualTo(builder.getSectorCount());
+			assertWithMessage("Root should keep its sector").that(index.getSector(0)).isEqualTo(22);
+			assertWithMessage("File that fits should keep its sector").that(index.getSector(entryA)).isEqualTo(23);
+			assertWithMessage("Grown file should take the free space at the end").that(index.getSector(entryB))
+					.isEqualTo(26);
+			assertWithMessage("Unexpected size").that(index.getSize(entryB)).isEqualTo(5000);
+			assertWithMessage("Unexpected data").that(read(cd, index, entryA)).isEqualTo(a);
+			assertWithMessage("Unexpected data").that(read(cd, index, entryB)).isEqualTo(b);
+
+			final byte[] buffer = new byte[CD.SECTOR_SIZE];
+
+			for (int sector = 0; sector < cd.getSectorCount(); sector++) {
+				cd.getReader().read(sector, buffer, 0);
+
+				assertWithMessage("EDC should be generated for " + sector).that(Edcre.isEdcValid(buffer, 0))
+						.isTrue();
+				assertWithMessage("ECC should be generated for " + sector).that(Edcre.isEccValid(buffer, 0))
+						.isTrue();
+			}
+		}
+	}
+
+	private static byte[] read(CD cd, DiscIndex index, int entry) throws Exception {
+		final byte[] result = new byte[index.getSectorCount(entry) * 2048];
+
+		cd.seek(index.getSector(entry));
+		cd.readSectorData(index.getSectorCount(entry), result, 0);
+
+		return Arrays.copyOf(result, index.getSize(entry));
+	}
+
+}
@@ -0,0 +1,92 @@
+package com.github.rnveach.sector;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.rnveach.utils.Util;
+import com.github.rnveach.xa.XaScanner;
+import com.github.rnveach.xa.XaStream;
+
+public final class ImageGeneratorTest {
+
+	@TempDir
+	public File folder;
+
+	@Test
+	public void testGenerate() throws Exception {
+		final ImageGenerator generator = new ImageGenerator();
+		final File image = new File(this.folder, "image.bin");
+		final File again = new File(this.folder, "again.bin");
+
+		generator.setDepth(2);
+		generator.setDirectoriesPerLevel(2);
+		generator.setFilesPerDirectory(3);
+		generator.setFileSize(5000);
+		generator.setStreamsPerDirectory(1);
+		generator.setStreamSectors(64);
+		generator.setChannels(4);
+		generator.setAudioInterval(2);
+
+		final int sectorCount = generator.write(image, 2);
+
+		generator.write(again, 1);
+
+		assertWithMessage("Same settings should give the same image").that(Files.readAllBytes(again.toPath()))
+				.isEqualTo(Files.readAllBytes(image.toPath()));
+
+		try (CD cd = CD.open(image, false)) {
+			final DiscIndex index = DiscIndex.build(cd);
+			final int file = index.find("\\D001\\D000\\F002.BIN");
+			final int stream = index.find("\\D001\\D000\\S000.STR");
+
+			assertWithMessage("Unexpected sector count").that(cd.getSectorCount()).isEqualTo(sectorCount);
+			// 7 directories with 3 files and a stream each, and 6 of them below the root
+			assertWithMessage("Unexpected entry count").that(index.getEntryCount()).isEqualTo(1 + 6 + (7 * 4));
+			assertWithMessage("Unexpected size").that(index.getSize(file)).isEqualTo(5000);
+			assertWithMessage("Data file shouldn't be sector mode").that(index.isSectorMode(file)).isFalse();
+			assertWithMessage("Stream should be sector mode").that(index.isSectorMode(stream)).isTrue();
+
+			final byte[] buffer = new byte[CD.SECTOR_SIZE];
+			int form2Sectors = 0;
+
+			for (int sector = 0; sector < sectorCount; sector++) {
+				cd.getReader().read(sector, buffer, 0);
+
+				assertWithMessage("EDC should be valid for " + sector).that(Edcre.isEdcValid(buffer, 0)).isTrue();
+				assertWithMessage("ECC should be valid for " + sector).that(Edcre.isEccValid(buffer, 0)).isTrue();
+
+				// Form 2 also passes with an EDC of zero, so it is checked here
+				if (Edcre.getType(buffer, 0) == 3) {
+					final int edc = Util.read32LE(buffer, 2348);
+
+					assertWithMessage("Form 2 EDC should be set for " + sector).that(edc).isNotEqualTo(0);
+					assertWithMessage("Form 2 EDC should match for " + sector).that(edc)
+							.isEqualTo(Edcre.computeEdc(0, buffer, 16, 2332));
+
+					form2Sectors++;
+				}
+			}
+
+			// every other one of the 64 sectors of each of the 7 streams
+			assertWithMessage("Unexpected Form 2 sectors").that(form2Sectors).isEqualTo(7 * 32);
+
+			int channels = 0;
+
+			for (final XaStream xa : XaScanner.scan(cd.getReader())) {
+				assertWithMessage("Stream should end").that(xa.isEnded()).isTrue();
+				// 8 sectors each, with the other channels and the video between them
+				assertWithMessage("Channels should interleave").that(xa.getSectorCount()).isEqualTo(57);
+
+				channels++;
+			}
+
+			assertWithMessage("Every stream should have 4 channels").that(channels).isEqualTo(7 * 4);
+		}
+	}
+
+}
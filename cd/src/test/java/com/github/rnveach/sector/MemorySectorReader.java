@@ -0,0 +1,55 @@
+package com.github.rnveach.sector;
+
+import java.util.BitSet;
+
+/**
+ * This is an image held in memory for tests.
+ */
+public final class MemorySectorReader implements SectorReader {
+
+	private final byte[] image;
+
+	private final BitSet audio = new BitSet();
+
+	public MemorySectorReader(byte[] image) {
+		this.image = image;
+	}
+
+	public void setAudio(int sectorNumber) {
+		this.audio.set(sectorNumber);
+	}
+
+	public byte[] getImage() {
+		return this.image;
+	}
+
+	@Override
+	public int getSectorCount() {
+		return this.image.length / CD.SECTOR_SIZE;
+	}
+
+	@Override
+	public boolean isAudio(int sectorNumber) {
+		return this.audio.get(sectorNumber);
+	}
+
+	@Override
+	public void read(int sectorNumber, byte[] buffer, int offset) {
+		System.arraycopy(this.image, sectorNumber * CD.SECTOR_SIZE, buffer, offset, CD.SECTOR_SIZE);
+	}
+
+	@Override
+	public void write(int sectorNumber, byte[] buffer, int offset) {
+		System.arraycopy(buffer, offset, this.image, sectorNumber * CD.SECTOR_SIZE, CD.SECTOR_SIZE);
+	}
+
+	@Override
+	public SectorReader duplicate() {
+		return this;
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
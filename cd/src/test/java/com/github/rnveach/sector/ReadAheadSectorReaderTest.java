@@ -0,0 +1,53 @@
+package com.github.rnveach.sector;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public final class ReadAheadSectorReaderTest {
+
+	@Test
+	public void testReads() throws Exception {
+		final byte[] image = new byte[300 * CD.SECTOR_SIZE];
+		final byte[] buffer = new byte[40 * CD.SECTOR_SIZE];
+
+		new Random(1).nextBytes(image);
+
+		try (ReadAheadSectorReader reader = new ReadAheadSectorReader(new MemorySectorReader(image), 64)) {
+			for (int sector = 0; sector < 300; sector++) {
+				reader.read(sector, buffer, 0);
+
+				assertWithMessage("Unexpected sequential sector " + sector)
+						.that(Arrays.copyOf(buffer, CD.SECTOR_SIZE)).isEqualTo(getSector(image, sector));
+			}
+
+			for (final int sector : new int[] { 5, 299, 100, 101, 50 }) {
+				reader.read(sector, buffer, 0);
+
+				assertWithMessage("Unexpected sector " + sector).that(Arrays.copyOf(buffer, CD.SECTOR_SIZE))
+						.isEqualTo(getSector(image, sector));
+			}
+
+			reader.read(60, 40, buffer, 0);
+
+			assertWithMessage("Unexpected bulk read").that(buffer)
+					.isEqualTo(Arrays.copyOfRange(image, 60 * CD.SECTOR_SIZE, 100 * CD.SECTOR_SIZE));
+
+			final byte[] replacement = new byte[CD.SECTOR_SIZE];
+
+			reader.write(101, replacement, 0);
+			reader.read(101, buffer, 0);
+
+			assertWithMessage("Written sector shouldn't be read from before the write")
+					.that(Arrays.copyOf(buffer, CD.SECTOR_SIZE)).isEqualTo(replacement);
+		}
+	}
+
+	private static byte[] getSector(byte[] image, int sector) {
+		return Arrays.copyOfRange(image, sector * CD.SECTOR_SIZE, (sector + 1) * CD.SECTOR_SIZE);
+	}
+
+}
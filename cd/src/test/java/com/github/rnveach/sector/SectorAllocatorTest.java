@@ -0,0 +1,104 @@
+package com.github.rnveach.sector;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.github.rnveach.utils.Util;
+
+public final class SectorAllocatorTest {
+
+	private static final int VOLUME_SIZE = 30;
+
+	@Test
+	public void testAllocate() throws Exception {
+		final CD cd = new CD(new MemorySectorReader(createImage(VOLUME_SIZE)));
+		final SectorAllocator allocator = SectorAllocator.build(cd, DiscIndex.build(cd));
+
+		assertWithMessage("Path tables should be in use").that(allocator.isUsed(19)).isTrue();
+		assertWithMessage("Gap should be free").that(allocator.isUsed(23)).isFalse();
+		assertWithMessage("Unexpected gap allocation").that(allocator.allocate(2)).isEqualTo(23);
+		assertWithMessage("Unexpected trailing allocation").that(allocator.allocate(3)).isEqualTo(26);
+
+		allocator.free(21, 2);
+
+		assertWithMessage("Unexpected freed allocation").that(allocator.allocate(1)).isEqualTo(21);
+		assertWithMessage("Volume shouldn't grow yet").that(allocator.isVolumeGrown()).isFalse();
+		assertWithMessage("Unexpected grown allocation").that(allocator.allocate(4)).isEqualTo(30);
+		assertWithMessage("Unexpected volume size").that(allocator.getVolumeSize()).isEqualTo(34);
+		assertWithMessage("Image should need to grow").that(allocator.getRequiredSectorCount()).isEqualTo(34);
+	}
+
+	/**
+	 * Sectors after the volume, such as an audio track, can't be given out and
+	 * keep the volume from growing.
+	 */
+	@Test
+	public void testAllocateBeforeOtherTracks() throws Exception {
+		final CD cd = new CD(new MemorySectorReader(createImage(VOLUME_SIZE + 2)));
+		final SectorAllocator allocator = SectorAllocator.build(cd, DiscIndex.build(cd));
+
+		assertWithMessage("Other tracks should be in use").that(allocator.isUsed(VOLUME_SIZE)).isTrue();
+		assertWithMessage("Unexpected trailing allocation").that(allocator.allocate(4)).isEqualTo(26);
+
+		final IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class,
+				() -> allocator.allocate(3));
+
+		assertWithMessage("Unexpected message").that(ex.getMessage()).isEqualTo(
+				"No free run of 3 sectors in the volume, and it can't grow over the 2 sectors after it");
+		assertWithMessage("Volume shouldn't grow").that(allocator.isVolumeGrown()).isFalse();
+		assertWithMessage("Image shouldn't need to grow").that(allocator.getRequiredSectorCount())
+				.isEqualTo(VOLUME_SIZE + 2);
+	}
+
+	/**
+	 * Creates an image with a volume of 30 sectors, path tables at 18 and 19, the
+	 * root directory at 20 and files at 21 to 22 and 25.
+	 */
+	private static byte[] createImage(int sectorCount) {
+		final byte[] image = new byte[sectorCount * CD.SECTOR_SIZE];
+
+		for (int i = 0; i < sectorCount; i++) {
+			System.arraycopy(CD.SYNC, 0, image, i * CD.SECTOR_SIZE, CD.SYNC.length);
+			image[(i * CD.SECTOR_SIZE) + 15] = 1;
+		}
+
+		final int primary = (16 * CD.SECTOR_SIZE) + 16;
+
+		image[primary] = 1;
+		Util.write32LE(image, primary + 80, VOLUME_SIZE);
+		Util.write32LE(image, primary + 132, 10);
+		Util.write32LE(image, primary + 140, 18);
+		Util.write32BE(image, primary + 148, 19);
+		writeRecord(image, primary + 156, 20, 2048, 0x02, "\0");
+		image[(17 * CD.SECTOR_SIZE) + 16] = (byte) 0xFF;
+
+		final int root = (20 * CD.SECTOR_SIZE) + 16;
+
+		writeRecord(image, root, 20, 2048, 0x02, "\0");
+		writeRecord(image, root + 34, 20, 2048, 0x02, "\1");
+		writeRecord(image, root + 68, 21, 4096, 0, "A.BIN;1");
+		writeRecord(image, root + 108, 25, 2048, 0, "B.BIN;1");
+
+		return image;
+	}
+
+	private static void writeRecord(byte[] image, int offset, int sector, int size, int flags, String name) {
+		final int length = 33 + name.length() + ((name.length() + 1) % 2);
+
+		image[offset] = (byte) length;
+		Util.write32LE(image, offset + 2, sector);
+		Util.write32BE(image, offset + 6, sector);
+		Util.write32LE(image, offset + 10, size);
+		Util.write32BE(image, offset + 14, size);
+		image[offset + 25] = (byte) flags;
+		image[offset + 28] = 1;
+		image[offset + 32] = (byte) name.length();
+
+		for (int i = 0; i < name.length(); i++) {
+			image[offset + 33 + i] = (byte) name.charAt(i);
+		}
+	}
+
+}
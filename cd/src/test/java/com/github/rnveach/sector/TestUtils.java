@@ -0,0 +1,78 @@
+package com.github.rnveach.sector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This holds the helpers shared by the tests.
+ */
+public final class TestUtils {
+
+	private TestUtils() {
+	}
+
+	public static byte[] random(long seed, int length) {
+		final byte[] result = new byte[length];
+
+		new Random(seed).nextBytes(result);
+
+		return result;
+	}
+
+	/**
+	 * Flips a bit of the byte at the offset of the sector, regenerating its EDC/ECC
+	 * afterwards if asked to. The buffer must hold a whole sector.
+	 */
+	public static void change(RandomAccessFile file, int sectorNumber, int offset, boolean regenerate,
+			byte[] sector) throws Exception {
+		file.seek((long) sectorNumber * CD.SECTOR_SIZE);
+		file.readFully(sector);
+
+		sector[offset] ^= 0x10;
+
+		if (regenerate) {
+			Edcre.generate(sector, 0);
+		}
+
+		file.seek((long) sectorNumber * CD.SECTOR_SIZE);
+		file.write(sector);
+	}
+
+	/**
+	 * Returns the start of a line the tools print for a range of sectors.
+	 */
+	public static String range(int start, int end) {
+		return "Sectors " + start + "-" + end + " (" + ((end - start) + 1) + "): ";
+	}
+
+	/**
+	 * Runs the tool and returns the lines it printed.
+	 */
+	public static List<String> runMain(Tool tool) throws Exception {
+		final PrintStream standardOut = System.out;
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+
+		try {
+			tool.run();
+		} finally {
+			System.setOut(standardOut);
+		}
+
+		return Arrays.asList(output.toString(StandardCharsets.UTF_8).split("\\R"));
+	}
+
+	@FunctionalInterface
+	public interface Tool {
+
+		void run() throws Exception;
+
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.github.rnveach.xa;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import org.junit.jupiter.api.Test;
+
+public final class XaDecoderTest {
+
+	@Test
+	public void testMono4Bit() {
+		final byte[] data = new byte[XaDecoder.SOUND_GROUPS * XaDecoder.SOUND_GROUP_SIZE];
+		final short[] output = new short[XaDecoder.MAX_SAMPLES];
+		final XaDecoder decoder = new XaDecoder();
+
+		// unit 0 has no shift and no filter
+		data[4] = 0x00;
+		data[16] = 0x01;
+		data[20] = 0x0F;
+		// unit 1 shifts by 12 and uses the first filter
+		data[5] = 0x1C;
+		data[16] |= 0x70;
+
+		final int count = decoder.decode(decoder.addStream(), data, 0, 0x00, output);
+
+		assertWithMessage("Unexpected sample count").that(count).isEqualTo(4032);
+		assertWithMessage("Unexpected sample 0").that(output[0]).isEqualTo((short) 4096);
+		assertWithMessage("Unexpected sample 1").that(output[1]).isEqualTo((short) -4096);
+		// filter 0 keeps nothing of the previous samples
+		assertWithMessage("Unexpected sample 2").that(output[2]).isEqualTo((short) 0);
+		assertWithMessage("Unexpected unit 1 sample 0").that(output[28]).isEqualTo((short) 7);
+		// 7 * 60 / 64, rounded
+		assertWithMessage("Unexpected unit 1 sample 1").that(output[29]).isEqualTo((short) 7);
+	}
+
+	@Test
+	public void testStereoInterleaving() {
+		final byte[] data = new byte[XaDecoder.SOUND_GROUPS * XaDecoder.SOUND_GROUP_SIZE];
+		final short[] output = new short[XaDecoder.MAX_SAMPLES];
+		final XaDecoder decoder = new XaDecoder();
+
+		data[16] = 0x21;
+		data[20] = 0x43;
+
+		final int count = decoder.decode(decoder.addStream(), data, 0, 0x01, output);
+
+		assertWithMessage("Unexpected sample count").that(count).isEqualTo(4032);
+		assertWithMessage("Unexpected left 0").that(output[0]).isEqualTo((short) 0x1000);
+		assertWithMessage("Unexpected right 0").that(output[1]).isEqualTo((short) 0x2000);
+		assertWithMessage("Unexpected left 1").that(output[2]).isEqualTo((short) 0x3000);
+		assertWithMessage("Unexpected right 1").that(output[3]).isEqualTo((short) 0x4000);
+	}
+
+	@Test
+	public void testMono8BitAndStreamsAreSeparate() {
+		final byte[] data = new byte[XaDecoder.SOUND_GROUPS * XaDecoder.SOUND_GROUP_SIZE];
+		final short[] output = new short[XaDecoder.MAX_SAMPLES];
+		final XaDecoder decoder = new XaDecoder();
+		final int first = decoder.addStream();
+		final int second = decoder.addStream();
+
+		// the second filter on a constant keeps the history from the previous sector
+		data[4] = 0x24;
+		for (int i = 0; i < 28; i++) {
+			data[16 + (i * 4)] = 0x10;
+		}
+
+		assertWithMessage("Unexpected sample count").that(decoder.decode(first, data, 0, 0x10, output))
+				.isEqualTo(2016);
+
+		final short firstEnd = output[27];
+
+		decoder.decode(second, data, 0, 0x10, output);
+
+		assertWithMessage("Streams should not share history").that(output[27]).isEqualTo(firstEnd);
+		assertWithMessage("Unexpected sample 0").that(output[0]).isEqualTo((short) 0x100);
+	}
+
+}
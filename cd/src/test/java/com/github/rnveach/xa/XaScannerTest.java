@@ -0,0 +1,80 @@
+package com.github.rnveach.xa;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.rnveach.sector.CD;
+import com.github.rnveach.sector.MemorySectorReader;
+
+public final class XaScannerTest {
+
+	private static final int SECTOR_COUNT = 20000;
+
+	@Test
+	public void testStreamsAcrossChunks() throws Exception {
+		final byte[] image = new byte[SECTOR_COUNT * CD.SECTOR_SIZE];
+
+		// two interleaved channels crossing several chunks, ended by both flags
+		for (int sector = 1000; sector <= 9001; sector++) {
+			setAudio(image, sector, 1, sector % 2, (sector >= 9000) ? ((sector == 9000) ? 0x01 : 0x80) : 0);
+		}
+		// a single sector stream
+		setAudio(image, 12000, 2, 0, 0x80);
+		// a stream that never ends
+		for (int sector = 15000; sector < SECTOR_COUNT; sector += 8) {
+			setAudio(image, sector, 1, 7, 0);
+		}
+
+		final List<XaStream> streams = XaScanner.scan(new MemorySectorReader(image));
+
+		assertWithMessage("Unexpected stream count").that(streams).hasSize(4);
+		assertStream(streams.get(0), 1, 0, 1000, 9000, true);
+		assertStream(streams.get(1), 1, 1, 1001, 9001, true);
+		assertStream(streams.get(2), 2, 0, 12000, 12000, true);
+		assertStream(streams.get(3), 1, 7, 15000, 19992, false);
+
+		final List<List<XaStream>> groups = XaScanner.group(streams);
+
+		assertWithMessage("Unexpected group count").that(groups).hasSize(3);
+		assertWithMessage("Unexpected first group size").that(groups.get(0)).hasSize(2);
+	}
+
+	@Test
+	public void testRange() throws Exception {
+		final byte[] image = new byte[100 * CD.SECTOR_SIZE];
+
+		for (int sector = 10; sector < 20; sector++) {
+			setAudio(image, sector, 1, 0, (sector == 19) ? 0x80 : 0);
+		}
+
+		final List<XaStream> streams = XaScanner.scan(new MemorySectorReader(image), 15, 50);
+
+		assertWithMessage("Unexpected stream count").that(streams).hasSize(1);
+		assertStream(streams.get(0), 1, 0, 15, 19, true);
+	}
+
+	private static void assertStream(XaStream stream, int file, int channel, int first, int last, boolean ended) {
+		assertWithMessage("Unexpected file").that(stream.getFileNumber()).isEqualTo(file);
+		assertWithMessage("Unexpected channel").that(stream.getChannelNumber()).isEqualTo(channel);
+		assertWithMessage("Unexpected first sector").that(stream.getFirstSector()).isEqualTo(first);
+		assertWithMessage("Unexpected last sector").that(stream.getLastSector()).isEqualTo(last);
+		assertWithMessage("Unexpected end").that(stream.isEnded()).isEqualTo(ended);
+	}
+
+	private static void setAudio(byte[] image, int sector, int file, int channel, int endFlags) {
+		final int offset = sector * CD.SECTOR_SIZE;
+
+		System.arraycopy(CD.SYNC, 0, image, offset, CD.SYNC.length);
+		image[offset + 15] = 2;
+
+		for (int i = 0; i < 8; i += 4) {
+			image[offset + 16 + i] = (byte) file;
+			image[offset + 17 + i] = (byte) channel;
+			image[offset + 18 + i] = (byte) (0x64 | endFlags);
+		}
+	}
+
+}